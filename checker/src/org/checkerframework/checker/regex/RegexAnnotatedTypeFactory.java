@@ -7,6 +7,7 @@ import com.sun.source.tree.LiteralTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.Tree;
 import java.lang.annotation.Annotation;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -39,6 +40,7 @@ import org.checkerframework.framework.util.AnnotationBuilder;
 import org.checkerframework.framework.util.GraphQualifierHierarchy;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGraphFactory;
 import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.TreeUtils;
 
 /**
@@ -103,6 +105,13 @@ public class RegexAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
     protected final AnnotationMirror REGEX, REGEXBOTTOM, PARTIALREGEX, POLYREGEX;
     protected final ExecutableElement regexValueElement;
 
+    /** The number of strings whose group counts are cached by {@link #getRegexGroupCount}. */
+    private static final int GROUP_COUNT_CACHE_SIZE = 300;
+
+    /** The results of {@link #getRegexGroupCount}, by string. */
+    private final Map<String, Integer> regexGroupCounts =
+            CollectionUtils.createLRUCache(GROUP_COUNT_CACHE_SIZE);
+
     // TODO use? private TypeMirror[] legalReferenceTypes;
 
     public RegexAnnotatedTypeFactory(BaseTypeChecker checker) {
@@ -244,18 +253,22 @@ public class RegexAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
     }
 
     /**
-     * This method is a copy of RegexUtil.isRegex. We cannot directly use RegexUtil, because it uses
-     * type annotations which cannot be used in IDEs (yet).
+     * Returns the number of groups in s, or -1 if s is not a regular expression. Unlike
+     * RegexUtil.isRegex followed by {@link #getGroupCount(String)}, this compiles s at most once,
+     * and the result is cached: the same literals and concatenations are annotated every time
+     * their trees are visited, including in every iteration of flow analysis.
      */
-    @SuppressWarnings("purity") // the checker cannot prove that the method is pure, but it is
-    /*@org.checkerframework.dataflow.qual.Pure*/
-    private static boolean isRegex(String s) {
-        try {
-            Pattern.compile(s);
-        } catch (PatternSyntaxException e) {
-            return false;
+    private int getRegexGroupCount(String s) {
+        Integer groupCount = regexGroupCounts.get(s);
+        if (groupCount == null) {
+            try {
+                groupCount = Pattern.compile(s).matcher("").groupCount();
+            } catch (PatternSyntaxException e) {
+                groupCount = -1;
+            }
+            regexGroupCounts.put(s, groupCount);
         }
-        return true;
+        return groupCount;
     }
 
     private class RegexPropagationAnnotator extends PropagationTreeAnnotator {
@@ -292,8 +305,8 @@ public class RegexAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                     regex = Character.toString((Character) tree.getValue());
                 }
                 if (regex != null) {
-                    if (isRegex(regex)) {
-                        int groupCount = getGroupCount(regex);
+                    int groupCount = getRegexGroupCount(regex);
+                    if (groupCount >= 0) {
                         type.addAnnotation(createRegexAnnotation(groupCount));
                     } else {
                         type.addAnnotation(createPartialRegexAnnotation(regex));
@@ -333,8 +346,8 @@ public class RegexAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                     String lRegex = getPartialRegexValue(lExpr);
                     String rRegex = getPartialRegexValue(rExpr);
                     String concat = lRegex + rRegex;
-                    if (isRegex(concat)) {
-                        int groupCount = getGroupCount(concat);
+                    int groupCount = getRegexGroupCount(concat);
+                    if (groupCount >= 0) {
                         type.addAnnotation(createRegexAnnotation(groupCount));
                     } else {
                         type.addAnnotation(createPartialRegexAnnotation(concat));
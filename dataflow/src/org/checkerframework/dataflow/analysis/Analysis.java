@@ -10,14 +10,13 @@ import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.PriorityQueue;
 import java.util.Set;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
@@ -67,16 +66,17 @@ public class Analysis<
     /** Instance of the types utility. */
     protected final Types types;
 
-    /** Then stores before every basic block (assumed to be 'no information' if not present). */
-    protected IdentityHashMap<Block, S> thenStores;
-
-    /** Else stores before every basic block (assumed to be 'no information' if not present). */
-    protected IdentityHashMap<Block, S> elseStores;
-
     /**
-     * The transfer inputs before every basic block (assumed to be 'no information' if not present).
+     * Then stores before every basic block (null means 'no information'), by block index (see
+     * {@link ControlFlowGraph#assignIndices()}).
      */
-    protected IdentityHashMap<Block, TransferInput<A, S>> inputs;
+    protected ArrayList<S> thenStores;
+
+    /** Else stores before every basic block (null means 'no information'), by block index. */
+    protected ArrayList<S> elseStores;
+
+    /** The transfer inputs before every basic block (null means 'no information'), by index. */
+    protected ArrayList<TransferInput<A, S>> inputs;
 
     /** The stores after every return statement. */
     protected IdentityHashMap<ReturnNode, TransferResult<A, S>> storesAtReturnStatements;
@@ -84,8 +84,18 @@ public class Analysis<
     /** The worklist used for the fix-point iteration. */
     protected Worklist worklist;
 
-    /** Abstract values of nodes. */
-    protected IdentityHashMap<Node, A> nodeValues;
+    /** The number of blocks that the last fix-point iteration took from the worklist. */
+    protected int worklistIterations;
+
+    /**
+     * The index of the block that is currently handled in the analysis, or -1 if the analysis is
+     * not running. A store that flows from it to a block with a smaller or equal index flows along
+     * a loop back edge, see {@link #addStoreBefore}.
+     */
+    protected int currentBlockIndex = -1;
+
+    /** Abstract values of nodes (null means 'no information'), by node index. */
+    protected ArrayList<A> nodeValues;
 
     /** Map from (effectively final) local variable elements to their abstract value. */
     public HashMap<Element, A> finalLocalValues;
@@ -159,9 +169,12 @@ public class Analysis<
         isRunning = true;
 
         init(cfg);
+        worklistIterations = 0;
 
         while (!worklist.isEmpty()) {
             Block b = worklist.poll();
+            worklistIterations++;
+            currentBlockIndex = b.getIndex();
 
             switch (b.getType()) {
                 case REGULAR_BLOCK:
@@ -277,6 +290,7 @@ public class Analysis<
             }
         }
 
+        currentBlockIndex = -1;
         assert isRunning == true;
         isRunning = false;
     }
@@ -358,8 +372,8 @@ public class Analysis<
         boolean nodeValueChanged = false;
 
         if (newVal != null) {
-            A oldVal = nodeValues.get(node);
-            nodeValues.put(node, newVal);
+            assert cfg.contains(node) : "node not in the control flow graph: " + node;
+            A oldVal = nodeValues.set(node.getNodeIndex(), newVal);
             nodeValueChanged = !Objects.equals(oldVal, newVal);
         }
 
@@ -404,12 +418,12 @@ public class Analysis<
     /** Initialize the analysis with a new control flow graph. */
     protected void init(ControlFlowGraph cfg) {
         this.cfg = cfg;
-        thenStores = new IdentityHashMap<>();
-        elseStores = new IdentityHashMap<>();
-        inputs = new IdentityHashMap<>();
+        thenStores = Analysis.<S>newIndexedList(cfg.getBlockCount());
+        elseStores = Analysis.<S>newIndexedList(cfg.getBlockCount());
+        inputs = Analysis.<TransferInput<A, S>>newIndexedList(cfg.getBlockCount());
         storesAtReturnStatements = new IdentityHashMap<>();
         worklist = new Worklist(cfg);
-        nodeValues = new IdentityHashMap<>();
+        nodeValues = Analysis.<A>newIndexedList(cfg.getNodeCount());
         finalLocalValues = new HashMap<>();
         worklist.add(cfg.getEntryBlock());
 
@@ -438,17 +452,29 @@ public class Analysis<
             // nothing to do
         }
         S initialStore = transferFunction.initialStore(underlyingAST, parameters);
-        Block entry = cfg.getEntryBlock();
-        thenStores.put(entry, initialStore);
-        elseStores.put(entry, initialStore);
-        inputs.put(entry, new TransferInput<>(null, this, initialStore));
+        int entry = cfg.getEntryBlock().getIndex();
+        thenStores.set(entry, initialStore);
+        elseStores.set(entry, initialStore);
+        inputs.set(entry, new TransferInput<>(null, this, initialStore));
+    }
+
+    /** @return a list of the given size that contains only null */
+    private static <T> ArrayList<T> newIndexedList(int size) {
+        return new ArrayList<>(Collections.<T>nCopies(size, null));
+    }
+
+    /**
+     * @return the index of {@code b}, which must be a reachable block of the control flow graph
+     */
+    private int indexOf(Block b) {
+        assert cfg.contains(b) : "block not in the control flow graph: " + b;
+        return b.getIndex();
     }
 
     /**
      * Add a basic block to the worklist. If {@code b} is already present, the method does nothing.
      */
     protected void addToWorklist(Block b) {
-        // TODO: use a more efficient way to check if b is already present
         if (!worklist.contains(b)) {
             worklist.add(b);
         }
@@ -456,10 +482,16 @@ public class Analysis<
 
     /**
      * Add a store before the basic block {@code b} by merging with the existing stores for that
-     * location.
+     * location. If the store flows along a back edge of a loop and is a {@link WideningStore}, it
+     * is merged with {@link WideningStore#widenedUpperBound}, so that the analysis of the loop
+     * reaches a fixed point even if a value at the loop header could grow in every iteration.
      */
     protected void addStoreBefore(
             Block b, Node node, S s, Store.Kind kind, boolean addBlockToWorklist) {
+        int index = indexOf(b);
+        // Blocks are numbered in depth-first order, so only an edge to a loop header can lead to a
+        // block whose index is not larger.
+        boolean shouldWiden = currentBlockIndex >= index;
         S thenStore = getStoreBefore(b, Store.Kind.THEN);
         S elseStore = getStoreBefore(b, Store.Kind.ELSE);
 
@@ -467,11 +499,13 @@ public class Analysis<
             case THEN:
                 {
                     // Update the then store
-                    S newThenStore = (thenStore != null) ? thenStore.leastUpperBound(s) : s;
+                    S newThenStore = mergeStores(s, thenStore, shouldWiden);
                     if (!newThenStore.equals(thenStore)) {
-                        thenStores.put(b, newThenStore);
+                        thenStores.set(index, newThenStore);
                         if (elseStore != null) {
-                            inputs.put(b, new TransferInput<>(node, this, newThenStore, elseStore));
+                            inputs.set(
+                                    index,
+                                    new TransferInput<>(node, this, newThenStore, elseStore));
                             addBlockToWorklist = true;
                         }
                     }
@@ -480,11 +514,13 @@ public class Analysis<
             case ELSE:
                 {
                     // Update the else store
-                    S newElseStore = (elseStore != null) ? elseStore.leastUpperBound(s) : s;
+                    S newElseStore = mergeStores(s, elseStore, shouldWiden);
                     if (!newElseStore.equals(elseStore)) {
-                        elseStores.put(b, newElseStore);
+                        elseStores.set(index, newElseStore);
                         if (thenStore != null) {
-                            inputs.put(b, new TransferInput<>(node, this, thenStore, newElseStore));
+                            inputs.set(
+                                    index,
+                                    new TransferInput<>(node, this, thenStore, newElseStore));
                             addBlockToWorklist = true;
                         }
                     }
@@ -493,30 +529,32 @@ public class Analysis<
             case BOTH:
                 if (thenStore == elseStore) {
                     // Currently there is only one regular store
-                    S newStore = (thenStore != null) ? thenStore.leastUpperBound(s) : s;
+                    S newStore = mergeStores(s, thenStore, shouldWiden);
                     if (!newStore.equals(thenStore)) {
-                        thenStores.put(b, newStore);
-                        elseStores.put(b, newStore);
-                        inputs.put(b, new TransferInput<>(node, this, newStore));
+                        thenStores.set(index, newStore);
+                        elseStores.set(index, newStore);
+                        inputs.set(index, new TransferInput<>(node, this, newStore));
                         addBlockToWorklist = true;
                     }
                 } else {
                     boolean storeChanged = false;
 
-                    S newThenStore = (thenStore != null) ? thenStore.leastUpperBound(s) : s;
+                    S newThenStore = mergeStores(s, thenStore, shouldWiden);
                     if (!newThenStore.equals(thenStore)) {
-                        thenStores.put(b, newThenStore);
+                        thenStores.set(index, newThenStore);
                         storeChanged = true;
                     }
 
-                    S newElseStore = (elseStore != null) ? elseStore.leastUpperBound(s) : s;
+                    S newElseStore = mergeStores(s, elseStore, shouldWiden);
                     if (!newElseStore.equals(elseStore)) {
-                        elseStores.put(b, newElseStore);
+                        elseStores.set(index, newElseStore);
                         storeChanged = true;
                     }
 
                     if (storeChanged) {
-                        inputs.put(b, new TransferInput<>(node, this, newThenStore, newElseStore));
+                        inputs.set(
+                                index,
+                                new TransferInput<>(node, this, newThenStore, newElseStore));
                         addBlockToWorklist = true;
                     }
                 }
@@ -527,34 +565,43 @@ public class Analysis<
         }
     }
 
+    /**
+     * Merges a new store into the previous store at a location.
+     *
+     * @param newStore the store that flows to the location
+     * @param previousStore the store at the location so far, or null if there is none
+     * @param shouldWiden whether newStore flows along a back edge of a loop
+     * @return the least upper bound or, if shouldWiden is true and the stores are {@link
+     *     WideningStore}s, the widened upper bound of the stores
+     */
+    @SuppressWarnings("unchecked") // a store of type S that is a WideningStore widens to S
+    private S mergeStores(S newStore, /*@Nullable*/ S previousStore, boolean shouldWiden) {
+        if (previousStore == null) {
+            return newStore;
+        } else if (shouldWiden && newStore instanceof WideningStore) {
+            return ((WideningStore<S>) newStore).widenedUpperBound(previousStore);
+        } else {
+            return previousStore.leastUpperBound(newStore);
+        }
+    }
+
     /**
      * A worklist is a priority queue of blocks in which the order is given by depth-first ordering
-     * to place non-loop predecessors ahead of successors.
+     * to place non-loop predecessors ahead of successors. The indices of the blocks in the control
+     * flow graph follow the depth-first order, so the worklist is a bit set of block indices, and
+     * the next block is the one with the smallest index.
      */
     protected static class Worklist {
 
-        /** Map all blocks in the CFG to their depth-first order. */
-        protected IdentityHashMap<Block, Integer> depthFirstOrder;
+        /** The control flow graph that contains the blocks. */
+        protected final ControlFlowGraph cfg;
 
-        /** Comparator to allow priority queue to order blocks by their depth-first order. */
-        public class DFOComparator implements Comparator<Block> {
-            @Override
-            public int compare(Block b1, Block b2) {
-                return depthFirstOrder.get(b1) - depthFirstOrder.get(b2);
-            }
-        }
-
-        /** The backing priority queue. */
-        protected PriorityQueue<Block> queue;
+        /** The indices of the blocks in the worklist. */
+        protected final BitSet queue;
 
         public Worklist(ControlFlowGraph cfg) {
-            depthFirstOrder = new IdentityHashMap<>();
-            int count = 1;
-            for (Block b : cfg.getDepthFirstOrderedBlocks()) {
-                depthFirstOrder.put(b, count++);
-            }
-
-            queue = new PriorityQueue<Block>(11, new DFOComparator());
+            this.cfg = cfg;
+            this.queue = new BitSet(cfg.getBlockCount());
         }
 
         public boolean isEmpty() {
@@ -562,20 +609,30 @@ public class Analysis<
         }
 
         public boolean contains(Block block) {
-            return queue.contains(block);
+            return cfg.contains(block) && queue.get(block.getIndex());
         }
 
         public void add(Block block) {
-            queue.add(block);
+            assert cfg.contains(block) : "block not in the control flow graph: " + block;
+            queue.set(block.getIndex());
         }
 
-        public Block poll() {
-            return queue.poll();
+        public /*@Nullable*/ Block poll() {
+            int index = queue.nextSetBit(0);
+            if (index < 0) {
+                return null;
+            }
+            queue.clear(index);
+            return cfg.getBlock(index);
         }
 
         @Override
         public String toString() {
-            return "Worklist(" + queue + ")";
+            List<Block> blocks = new ArrayList<>();
+            for (int i = queue.nextSetBit(0); i >= 0; i = queue.nextSetBit(i + 1)) {
+                blocks.add(cfg.getBlock(i));
+            }
+            return "Worklist(" + blocks + ")";
         }
     }
 
@@ -592,7 +649,7 @@ public class Analysis<
      *     b}.
      */
     protected /*@Nullable*/ TransferInput<A, S> getInputBefore(Block b) {
-        return inputs.get(b);
+        return cfg.contains(b) ? inputs.get(b.getIndex()) : null;
     }
 
     /** @return the store corresponding to the location right before the basic block {@code b}. */
@@ -609,11 +666,11 @@ public class Analysis<
     }
 
     /**
-     * Read the {@link Store} for a particular basic block from a map of stores (or {@code null} if
-     * none exists yet).
+     * Read the {@link Store} for a particular basic block from a list of stores indexed by block
+     * (or {@code null} if none exists yet).
      */
-    protected static <S> /*@Nullable*/ S readFromStore(Map<Block, S> stores, Block b) {
-        return stores.get(b);
+    protected /*@Nullable*/ S readFromStore(List<S> stores, Block b) {
+        return cfg.contains(b) ? stores.get(b.getIndex()) : null;
     }
 
     /** Is the analysis currently running? */
@@ -621,6 +678,14 @@ public class Analysis<
         return isRunning;
     }
 
+    /**
+     * @return the number of blocks that the last call of {@link #performAnalysis} took from the
+     *     worklist, which is at least the number of reachable blocks
+     */
+    public int getWorklistIterations() {
+        return worklistIterations;
+    }
+
     /**
      * @return the abstract value for {@link Node} {@code n}, or {@code null} if no information is
      *     available. Note that if the analysis has not finished yet, this value might not represent
@@ -642,9 +707,14 @@ public class Analysis<
                             || currentNode.getTransitiveOperands().contains(n)))) {
                 return null;
             }
-            return nodeValues.get(n);
+            return getNodeValue(n);
         }
-        return nodeValues.get(n);
+        return getNodeValue(n);
+    }
+
+    /** @return the abstract value of {@code n}, or null if there is none */
+    private /*@Nullable*/ A getNodeValue(Node n) {
+        return cfg.contains(n) ? nodeValues.get(n.getNodeIndex()) : null;
     }
 
     /**
@@ -697,7 +767,19 @@ public class Analysis<
     public AnalysisResult<A, S> getResult() {
         assert !isRunning;
         IdentityHashMap<Tree, Node> treeLookup = cfg.getTreeLookup();
-        return new AnalysisResult<>(nodeValues, inputs, treeLookup, finalLocalValues);
+        IdentityHashMap<Node, A> nodeValueMap = new IdentityHashMap<>();
+        for (int i = 0; i < nodeValues.size(); i++) {
+            if (nodeValues.get(i) != null) {
+                nodeValueMap.put(cfg.getNode(i), nodeValues.get(i));
+            }
+        }
+        IdentityHashMap<Block, TransferInput<A, S>> inputMap = new IdentityHashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (inputs.get(i) != null) {
+                inputMap.put(cfg.getBlock(i), inputs.get(i));
+            }
+        }
+        return new AnalysisResult<>(nodeValueMap, inputMap, treeLookup, finalLocalValues);
     }
 
     /**
@@ -705,9 +787,9 @@ public class Analysis<
      *     method cannot exit through the regular exit block).
      */
     public /*@Nullable*/ S getRegularExitStore() {
-        SpecialBlock regularExitBlock = cfg.getRegularExitBlock();
-        if (inputs.containsKey(regularExitBlock)) {
-            S regularExitStore = inputs.get(regularExitBlock).getRegularStore();
+        TransferInput<A, S> regularExitInput = getInputBefore(cfg.getRegularExitBlock());
+        if (regularExitInput != null) {
+            S regularExitStore = regularExitInput.getRegularStore();
             return regularExitStore;
         } else {
             return null;
@@ -715,7 +797,7 @@ public class Analysis<
     }
 
     public S getExceptionalExitStore() {
-        S exceptionalExitStore = inputs.get(cfg.getExceptionalExitBlock()).getRegularStore();
+        S exceptionalExitStore = getInputBefore(cfg.getExceptionalExitBlock()).getRegularStore();
         return exceptionalExitStore;
     }
 }
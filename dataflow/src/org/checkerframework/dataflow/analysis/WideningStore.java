@@ -0,0 +1,24 @@
+package org.checkerframework.dataflow.analysis;
+
+/**
+ * A store whose abstract values may have infinite ascending chains, so that the analysis of a loop
+ * must widen them to reach a fixed point. {@link Analysis} merges a store that flows along a back
+ * edge of a loop with {@link #widenedUpperBound} if the store implements this interface, and with
+ * {@link Store#leastUpperBound} otherwise.
+ *
+ * @param <S> the type of the store, as in {@link Store}
+ */
+public interface WideningStore<S extends Store<S>> extends Store<S> {
+
+    /**
+     * Compute an upper bound of this store and {@code previous}, the store that was before a loop
+     * header so far, when this store flows to it along a back edge of the loop. The result may be
+     * larger than the least upper bound, but a chain of widened upper bounds must reach a fixed
+     * point after a finite number of steps, even if the abstract values have infinite ascending
+     * chains.
+     *
+     * <p>This method must fulfill the same contract as {@link #leastUpperBound}, except that it
+     * need not be commutative.
+     */
+    S widenedUpperBound(S previous);
+}
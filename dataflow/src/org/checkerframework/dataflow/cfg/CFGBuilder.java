@@ -755,6 +755,7 @@ public class CFGBuilder {
                 }
             }
 
+            cfg.assignIndices();
             return cfg;
         }
 
@@ -7,6 +7,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
@@ -17,8 +18,10 @@ import java.util.Queue;
 import java.util.Set;
 import org.checkerframework.dataflow.cfg.block.Block;
 import org.checkerframework.dataflow.cfg.block.Block.BlockType;
+import org.checkerframework.dataflow.cfg.block.BlockImpl;
 import org.checkerframework.dataflow.cfg.block.ConditionalBlock;
 import org.checkerframework.dataflow.cfg.block.ExceptionBlock;
+import org.checkerframework.dataflow.cfg.block.RegularBlock;
 import org.checkerframework.dataflow.cfg.block.SingleSuccessorBlock;
 import org.checkerframework.dataflow.cfg.block.SpecialBlock;
 import org.checkerframework.dataflow.cfg.block.SpecialBlockImpl;
@@ -61,6 +64,18 @@ public class ControlFlowGraph {
      */
     protected final List<ReturnNode> returnNodes;
 
+    /**
+     * The reachable blocks, by their index. The indices follow the depth-first order of {@link
+     * #getDepthFirstOrderedBlocks()}. Null until {@link #assignIndices()} has been called.
+     */
+    protected /*@Nullable*/ Block[] blocks;
+
+    /**
+     * The nodes in the reachable blocks, by their index. Null until {@link #assignIndices()} has
+     * been called.
+     */
+    protected /*@Nullable*/ Node[] nodes;
+
     public ControlFlowGraph(
             SpecialBlock entryBlock,
             SpecialBlockImpl regularExitBlock,
@@ -88,6 +103,83 @@ public class ControlFlowGraph {
         }
     }
 
+    /**
+     * Gives the reachable blocks of this control flow graph, and the nodes in them, dense indices
+     * starting at 0. This allows clients such as the {@link
+     * org.checkerframework.dataflow.analysis.Analysis} to keep information about blocks and nodes
+     * in arrays instead of maps. The blocks are numbered in depth-first order, so that a block
+     * that is not a loop header has a larger index than its predecessors.
+     *
+     * <p>Called by the {@link CFGBuilder} once the graph is complete; must be called again if the
+     * graph is changed afterwards.
+     */
+    public void assignIndices() {
+        // A block may occur several times in the depth-first order; its last occurrence counts.
+        List<Block> order = getDepthFirstOrderedBlocks();
+        Set<Block> seen = new HashSet<>();
+        List<Block> distinct = new ArrayList<>(order.size());
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Block b = order.get(i);
+            if (seen.add(b)) {
+                distinct.add(b);
+            }
+        }
+        Collections.reverse(distinct);
+
+        blocks = distinct.toArray(new Block[distinct.size()]);
+        List<Node> nodeList = new ArrayList<>();
+        for (int i = 0; i < blocks.length; i++) {
+            ((BlockImpl) blocks[i]).setIndex(i);
+            if (blocks[i].getType() == BlockType.REGULAR_BLOCK) {
+                nodeList.addAll(((RegularBlock) blocks[i]).getContents());
+            } else if (blocks[i].getType() == BlockType.EXCEPTION_BLOCK) {
+                nodeList.add(((ExceptionBlock) blocks[i]).getNode());
+            }
+        }
+        nodes = nodeList.toArray(new Node[nodeList.size()]);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setNodeIndex(i);
+        }
+    }
+
+    /** @return the number of reachable blocks, see {@link #assignIndices()} */
+    public int getBlockCount() {
+        return blocks.length;
+    }
+
+    /** @return the reachable block with the given index, see {@link #assignIndices()} */
+    public Block getBlock(int index) {
+        return blocks[index];
+    }
+
+    /** @return the number of nodes in reachable blocks, see {@link #assignIndices()} */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /** @return the node with the given index, see {@link #assignIndices()} */
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @return true if {@code b} is a reachable block of this control flow graph, so that {@code
+     *     b.getIndex()} is its index in this graph
+     */
+    public boolean contains(Block b) {
+        int index = b.getIndex();
+        return index >= 0 && index < blocks.length && blocks[index] == b;
+    }
+
+    /**
+     * @return true if {@code n} is a node in a reachable block of this control flow graph, so that
+     *     {@code n.getNodeIndex()} is its index in this graph
+     */
+    public boolean contains(Node n) {
+        int index = n.getNodeIndex();
+        return index >= 0 && index < nodes.length && nodes[index] == n;
+    }
+
     /** @return the entry block of the control flow graph. */
     public SpecialBlock getEntryBlock() {
         return entryBlock;
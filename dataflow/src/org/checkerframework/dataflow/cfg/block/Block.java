@@ -28,4 +28,10 @@ public interface Block {
 
     /** @return the unique identifier of this block */
     long getId();
+
+    /**
+     * @return the index of this block in its control flow graph, or -1 if it has none (see {@link
+     *     org.checkerframework.dataflow.cfg.ControlFlowGraph#getBlock(int)})
+     */
+    int getIndex();
 }
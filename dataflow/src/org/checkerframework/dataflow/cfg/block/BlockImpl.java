@@ -17,6 +17,9 @@ public abstract class BlockImpl implements Block {
     /** The last ID that has already been used. */
     protected static long lastId = 0;
 
+    /** The index of this block in its control flow graph, or -1. */
+    protected int index = -1;
+
     /** The type of this basic block. */
     protected BlockType type;
 
@@ -37,6 +40,16 @@ public abstract class BlockImpl implements Block {
         return id;
     }
 
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    /** Set the index of this block in its control flow graph. */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     @Override
     public BlockType getType() {
         return type;
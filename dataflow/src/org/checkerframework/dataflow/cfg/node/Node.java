@@ -35,6 +35,12 @@ public abstract class Node {
     /** The basic block this node belongs to (see invariant about this field above). */
     protected /*@Nullable*/ Block block;
 
+    /**
+     * The index of this node in the control flow graph of its block, or -1 (see {@link
+     * org.checkerframework.dataflow.cfg.ControlFlowGraph#getNode(int)}).
+     */
+    protected int nodeIndex = -1;
+
     /** Is this node an l-value? */
     protected boolean lvalue = false;
 
@@ -71,6 +77,16 @@ public abstract class Node {
         block = b;
     }
 
+    /** @return the index of this node in the control flow graph of its block, or -1 */
+    public int getNodeIndex() {
+        return nodeIndex;
+    }
+
+    /** Set the index of this node in the control flow graph of its block. */
+    public void setNodeIndex(int nodeIndex) {
+        this.nodeIndex = nodeIndex;
+    }
+
     /**
      * Returns the {@link Tree} in the abstract syntax tree, or {@code null} if no corresponding
      * tree exists. For instance, this is the case for an {@link ImplicitThisLiteralNode}.
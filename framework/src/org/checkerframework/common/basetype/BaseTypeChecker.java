@@ -25,9 +25,13 @@ import org.checkerframework.dataflow.cfg.CFGVisualizer;
 import org.checkerframework.framework.qual.SubtypeOf;
 import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.type.DefaultTypeHierarchy;
 import org.checkerframework.framework.type.GenericAnnotatedTypeFactory;
+import org.checkerframework.framework.type.PersistentElementCache;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.TypeHierarchy;
+import org.checkerframework.framework.util.typeinference.DefaultTypeArgumentInference;
+import org.checkerframework.framework.util.typeinference.TypeArgumentInference;
 import org.checkerframework.javacutil.AbstractTypeProcessor;
 import org.checkerframework.javacutil.AnnotationProvider;
 import org.checkerframework.javacutil.ErrorReporter;
@@ -449,6 +453,13 @@ public abstract class BaseTypeChecker extends SourceChecker implements BaseTypeC
             checker.typeProcessingOver();
         }
 
+        if (getVisitor() != null) {
+            PersistentElementCache persistentCache = getTypeFactory().getPersistentElementCache();
+            if (persistentCache != null) {
+                persistentCache.save();
+            }
+        }
+
         super.typeProcessingOver();
     }
 
@@ -497,17 +508,39 @@ public abstract class BaseTypeChecker extends SourceChecker implements BaseTypeC
 
     @Override
     protected boolean shouldAddShutdownHook() {
-        if (super.shouldAddShutdownHook() || getTypeFactory().getCFGVisualizer() != null) {
+        if (super.shouldAddShutdownHook()
+                || getTypeFactory().getCFGVisualizer() != null
+                || getTypeFactory().getPersistentElementCache() != null) {
             return true;
         }
         for (BaseTypeChecker checker : getSubcheckers()) {
-            if (checker.getTypeFactory().getCFGVisualizer() != null) {
+            if (checker.getTypeFactory().getCFGVisualizer() != null
+                    || checker.getTypeFactory().getPersistentElementCache() != null) {
                 return true;
             }
         }
         return false;
     }
 
+    @Override
+    protected void printStats() {
+        super.printStats();
+        TypeHierarchy typeHierarchy = getTypeFactory().getTypeHierarchy();
+        if (typeHierarchy instanceof DefaultTypeHierarchy) {
+            System.out.println(
+                    getClass().getSimpleName()
+                            + " "
+                            + ((DefaultTypeHierarchy) typeHierarchy).getCacheStatistics());
+        }
+        TypeArgumentInference inference = getTypeFactory().getTypeArgumentInference();
+        if (inference instanceof DefaultTypeArgumentInference) {
+            System.out.println(
+                    getClass().getSimpleName()
+                            + " "
+                            + ((DefaultTypeArgumentInference) inference).getCacheStatistics());
+        }
+    }
+
     @Override
     protected void shutdownHook() {
         super.shutdownHook();
@@ -516,12 +549,22 @@ public abstract class BaseTypeChecker extends SourceChecker implements BaseTypeC
         if (viz != null) {
             viz.shutdown();
         }
+        // typeProcessingOver is not called if the compilation issued errors,
+        // so save the persistent cache here as well.
+        PersistentElementCache persistentCache = getTypeFactory().getPersistentElementCache();
+        if (persistentCache != null) {
+            persistentCache.save();
+        }
 
         for (BaseTypeChecker checker : getSubcheckers()) {
             viz = checker.getTypeFactory().getCFGVisualizer();
             if (viz != null) {
                 viz.shutdown();
             }
+            persistentCache = checker.getTypeFactory().getPersistentElementCache();
+            if (persistentCache != null) {
+                persistentCache.save();
+            }
         }
     }
 }
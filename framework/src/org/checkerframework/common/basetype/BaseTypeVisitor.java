@@ -84,6 +84,9 @@ import org.checkerframework.framework.flow.CFAbstractValue;
 import org.checkerframework.framework.qual.DefaultQualifier;
 import org.checkerframework.framework.qual.FieldIsExpression;
 import org.checkerframework.framework.qual.Unused;
+import org.checkerframework.framework.source.CheckerProfiler;
+import org.checkerframework.framework.source.FlightRecorderEvents;
+import org.checkerframework.framework.source.FlightRecorderEvents.EventKind;
 import org.checkerframework.framework.source.Result;
 import org.checkerframework.framework.source.SourceVisitor;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
@@ -96,6 +99,7 @@ import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedTypeVari
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedUnionType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
 import org.checkerframework.framework.type.AnnotatedTypeParameterBounds;
+import org.checkerframework.framework.type.DefaultTypeHierarchy;
 import org.checkerframework.framework.type.GenericAnnotatedTypeFactory;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.TypeHierarchy;
@@ -109,6 +113,8 @@ import org.checkerframework.framework.util.FlowExpressionParseUtil.FlowExpressio
 import org.checkerframework.framework.util.FlowExpressionParseUtil.FlowExpressionParseException;
 import org.checkerframework.framework.util.PluginUtil;
 import org.checkerframework.framework.util.QualifierPolymorphism;
+import org.checkerframework.framework.util.typeinference.DefaultTypeArgumentInference;
+import org.checkerframework.framework.util.typeinference.TypeArgumentInference;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.ErrorReporter;
@@ -177,6 +183,12 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
     /** An instance of the {@link ContractsUtils} helper class. */
     protected final ContractsUtils contractsUtils;
 
+    /** Measures the checks of each method; null unless the profile option is given. */
+    private final CheckerProfiler profiler;
+
+    /** Emits an event for each class; null unless the flightRecorder option is given. */
+    private final FlightRecorderEvents events;
+
     /**
      * @param checker the type-checker associated with this visitor (for callbacks to {@link
      *     TypeHierarchy#isSubtype})
@@ -191,6 +203,8 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
         this.visitorState = atypeFactory.getVisitorState();
         this.typeValidator = createTypeValidator();
         this.vectorType = atypeFactory.fromElement(elements.getTypeElement("java.util.Vector"));
+        this.profiler = checker.getProfiler();
+        this.events = checker.getFlightRecorderEvents();
     }
 
     protected BaseTypeVisitor(BaseTypeChecker checker, Factory typeFactory) {
@@ -203,6 +217,8 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
         this.visitorState = atypeFactory.getVisitorState();
         this.typeValidator = createTypeValidator();
         this.vectorType = atypeFactory.fromElement(elements.getTypeElement("java.util.Vector"));
+        this.profiler = checker.getProfiler();
+        this.events = checker.getFlightRecorderEvents();
     }
 
     /**
@@ -261,6 +277,14 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
         if (tree != null && getCurrentPath() != null) {
             this.visitorState.setPath(new TreePath(getCurrentPath(), tree));
         }
+        if (profiler != null && tree != null && tree.getKind() == Tree.Kind.METHOD) {
+            profiler.enterMethod((MethodTree) tree);
+            try {
+                return super.scan(tree, p);
+            } finally {
+                profiler.exit();
+            }
+        }
         return super.scan(tree, p);
     }
 
@@ -273,6 +297,9 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
             return null;
         }
 
+        Object event = events == null ? null : events.begin(EventKind.CLASS_CHECK);
+        int[] preCacheCounts = event == null ? null : getCacheCounts();
+
         atypeFactory.preProcessClassTree(node);
 
         AnnotatedDeclaredType preACT = visitorState.getClassType();
@@ -315,9 +342,39 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
             this.visitorState.setMethodReceiver(preAMT);
             this.visitorState.setMethodTree(preMT);
             this.visitorState.setAssignmentContext(preAssCtxt);
+            if (event != null) {
+                int[] cacheCounts = getCacheCounts();
+                events.commit(
+                        event,
+                        checker.getClass().getSimpleName(),
+                        elements.getBinaryName(TreeUtils.elementFromDeclaration(node)).toString(),
+                        cacheCounts[0] - preCacheCounts[0],
+                        cacheCounts[1] - preCacheCounts[1],
+                        cacheCounts[2] - preCacheCounts[2],
+                        cacheCounts[3] - preCacheCounts[3]);
+            }
         }
     }
 
+    /**
+     * Returns the hits and misses of the subtype cache and of the type argument inference cache of
+     * the type factory, for events.
+     */
+    private int[] getCacheCounts() {
+        int[] counts = new int[4];
+        TypeHierarchy typeHierarchy = atypeFactory.getTypeHierarchy();
+        if (typeHierarchy instanceof DefaultTypeHierarchy) {
+            counts[0] = ((DefaultTypeHierarchy) typeHierarchy).getCacheHits();
+            counts[1] = ((DefaultTypeHierarchy) typeHierarchy).getCacheMisses();
+        }
+        TypeArgumentInference inference = atypeFactory.getTypeArgumentInference();
+        if (inference instanceof DefaultTypeArgumentInference) {
+            counts[2] = ((DefaultTypeArgumentInference) inference).getCacheHits();
+            counts[3] = ((DefaultTypeArgumentInference) inference).getCacheMisses();
+        }
+        return counts;
+    }
+
     protected void checkDefaultConstructor(ClassTree node) {}
 
     private static boolean isFieldIsExpressionQualifier(AnnotationMirror anno) {
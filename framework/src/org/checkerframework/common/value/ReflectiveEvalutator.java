@@ -4,14 +4,18 @@ import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.Tree;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Name;
@@ -20,6 +24,7 @@ import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.framework.source.Result;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.TypesUtils;
@@ -28,6 +33,15 @@ public class ReflectiveEvalutator {
     private BaseTypeChecker checker;
     private boolean reportWarnings;
 
+    /**
+     * The methods that have been looked up by {@link #getMethodObject}, so that each method is
+     * only looked up once.
+     */
+    private final Map<ExecutableElement, ResolvedMethod> resolvedMethods = new HashMap<>();
+
+    /** The number of results that are cached for each method in {@link ResolvedMethod#results}. */
+    private static final int RESULT_CACHE_SIZE = 100;
+
     public ReflectiveEvalutator(
             BaseTypeChecker checker, ValueAnnotatedTypeFactory factory, boolean reportWarnings) {
         this.checker = checker;
@@ -44,10 +58,14 @@ public class ReflectiveEvalutator {
      */
     public List<?> evaluteMethodCall(
             List<List<?>> allArgValues, List<?> receiverValues, MethodInvocationTree tree) {
-        Method method = getMethodObject(tree);
-        if (method == null) {
+        ResolvedMethod resolved = getMethodObject(tree);
+        if (resolved.method == null) {
+            if (reportWarnings) {
+                checker.report(resolved.failure, tree);
+            }
             return new ArrayList<>();
         }
+        Method method = resolved.method;
 
         if (receiverValues == null) {
             // Method does not have a receiver
@@ -65,43 +83,134 @@ public class ReflectiveEvalutator {
             listOfArguments = cartesianProduct(allArgValues, allArgValues.size() - 1);
         }
 
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
         List<Object> results = new ArrayList<>();
         for (Object[] arguments : listOfArguments) {
             for (Object receiver : receiverValues) {
+                // The receiver, if any, followed by the arguments
+                Object[] handleArguments;
+                if (isStatic) {
+                    handleArguments = arguments == null ? new Object[0] : arguments;
+                } else {
+                    int argumentCount = arguments == null ? 0 : arguments.length;
+                    handleArguments = new Object[argumentCount + 1];
+                    handleArguments[0] = receiver;
+                    if (arguments != null) {
+                        System.arraycopy(arguments, 0, handleArguments, 1, argumentCount);
+                    }
+                }
+
+                List<Object> key = Arrays.asList(handleArguments);
+                if (resolved.results.containsKey(key)) {
+                    results.add(resolved.results.get(key));
+                    continue;
+                }
                 try {
-                    results.add(method.invoke(receiver, arguments));
-                } catch (InvocationTargetException e) {
+                    resolved.converter.invokeExact(handleArguments);
+                } catch (Throwable e) {
+                    // The values do not have the types of the parameters.
+                    if (reportWarnings) {
+                        checker.report(Result.warning("method.evaluation.failed", method), tree);
+                    }
+                    continue;
+                }
+                Object result;
+                try {
+                    result = (Object) resolved.handle.invokeExact(handleArguments);
+                } catch (Throwable e) {
                     if (reportWarnings) {
                         checker.report(
                                 Result.warning(
-                                        "method.evaluation.exception",
-                                        method,
-                                        e.getTargetException().toString()),
+                                        "method.evaluation.exception", method, e.toString()),
                                 tree);
                     }
                     // Method evaluation will always fail, so don't bother
                     // trying again
                     return new ArrayList<Object>();
-
-                } catch (ReflectiveOperationException e) {
-                    if (reportWarnings) {
-                        checker.report(Result.warning("method.evaluation.failed", method), tree);
-                    }
                 }
+                // Statically executable methods are deterministic, so the result can be reused.
+                resolved.results.put(new ArrayList<>(key), result);
+                results.add(result);
             }
         }
         return results;
     }
 
+    /**
+     * A method that {@link #getMethodObject} looked up, with method handles to invoke it, or the
+     * warning if the method could not be found.
+     */
+    private static class ResolvedMethod {
+        /** The method, or null if it could not be found. */
+        final /*@Nullable*/ Method method;
+
+        /**
+         * Invokes the method. Takes an Object[] of the receiver, if the method is not static, and
+         * the arguments, and returns an Object.
+         */
+        final MethodHandle handle;
+
+        /**
+         * Takes the same Object[] as {@link #handle}, converts its elements to the types of the
+         * parameters of the method, and does nothing else. Values that cannot be passed to the
+         * method are thus told apart from exceptions that the method throws.
+         */
+        final MethodHandle converter;
+
+        /** The warning if the method could not be found. */
+        final Result failure;
+
+        /**
+         * The most recent results of the method, by the receiver and arguments it was invoked with.
+         */
+        final Map<List<Object>, Object> results =
+                CollectionUtils.createLRUCache(RESULT_CACHE_SIZE);
+
+        ResolvedMethod(Method method) throws IllegalAccessException {
+            this.method = method;
+            MethodHandle exact = MethodHandles.lookup().unreflect(method);
+            int parameterCount = exact.type().parameterCount();
+            this.handle =
+                    exact.asType(exact.type().generic())
+                            .asSpreader(Object[].class, parameterCount);
+            MethodHandle noOp =
+                    MethodHandles.dropArguments(
+                            MethodHandles.constant(Object.class, null),
+                            0,
+                            exact.type().parameterList());
+            this.converter =
+                    noOp.asType(exact.type().generic().changeReturnType(void.class))
+                            .asSpreader(Object[].class, parameterCount);
+            this.failure = null;
+        }
+
+        ResolvedMethod(Result failure) {
+            this.method = null;
+            this.handle = null;
+            this.converter = null;
+            this.failure = failure;
+        }
+    }
+
     /**
      * Method for reflectively obtaining a method object so it can (potentially) be statically
-     * executed by the checker for constant propagation
+     * executed by the checker for constant propagation. The result is cached, so the class and
+     * method are only looked up the first time a method is invoked.
      *
-     * @return the Method object corresponding to the method being invoke in tree
+     * @return the method being invoked in tree, or the warning if it cannot be found
      */
-    private Method getMethodObject(MethodInvocationTree tree) {
+    private ResolvedMethod getMethodObject(MethodInvocationTree tree) {
+        ExecutableElement ele = TreeUtils.elementFromUse(tree);
+        ResolvedMethod resolved = resolvedMethods.get(ele);
+        if (resolved == null) {
+            resolved = lookUpMethod(tree, ele);
+            resolvedMethods.put(ele, resolved);
+        }
+        return resolved;
+    }
+
+    private ResolvedMethod lookUpMethod(MethodInvocationTree tree, ExecutableElement ele) {
         try {
-            ExecutableElement ele = TreeUtils.elementFromUse(tree);
             Name clazz =
                     TypesUtils.getQualifiedName((DeclaredType) ele.getEnclosingElement().asType());
             List<Class<?>> paramClzz = getParameterClasses(tree, ele);
@@ -112,32 +221,24 @@ public class ReflectiveEvalutator {
             if (!method.isAccessible()) {
                 method.setAccessible(true);
             }
-            return method;
+            return new ResolvedMethod(method);
         } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
-            if (reportWarnings) {
-                checker.report(
-                        Result.warning(
-                                "class.find.failed",
-                                (TreeUtils.elementFromUse(tree)).getEnclosingElement()),
-                        tree);
-            }
-            return null;
+            return new ResolvedMethod(
+                    Result.warning("class.find.failed", ele.getEnclosingElement()));
 
         } catch (NoSuchMethodException e) {
             // The class we attempted to getMethod from inside the
             // call to getMethodObject.
-            Element classElem = TreeUtils.elementFromUse(tree).getEnclosingElement();
+            Element classElem = ele.getEnclosingElement();
 
             if (classElem == null) {
-                if (reportWarnings) {
-                    checker.report(Result.warning("method.find.failed"), tree);
-                }
+                return new ResolvedMethod(Result.warning("method.find.failed"));
             } else {
-                if (reportWarnings) {
-                    checker.report(Result.warning("method.find.failed.in.class", classElem), tree);
-                }
+                return new ResolvedMethod(
+                        Result.warning("method.find.failed.in.class", classElem));
             }
-            return null;
+        } catch (IllegalAccessException e) {
+            return new ResolvedMethod(Result.warning("method.evaluation.failed", ele));
         }
     }
 
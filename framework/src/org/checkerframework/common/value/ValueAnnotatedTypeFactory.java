@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.lang.model.element.AnnotationMirror;
@@ -27,10 +28,13 @@ import org.checkerframework.common.value.qual.ArrayLen;
 import org.checkerframework.common.value.qual.BoolVal;
 import org.checkerframework.common.value.qual.BottomVal;
 import org.checkerframework.common.value.qual.DoubleVal;
+import org.checkerframework.common.value.qual.IntRange;
 import org.checkerframework.common.value.qual.IntVal;
 import org.checkerframework.common.value.qual.StaticallyExecutable;
 import org.checkerframework.common.value.qual.StringVal;
 import org.checkerframework.common.value.qual.UnknownVal;
+import org.checkerframework.common.value.util.NumberUtils;
+import org.checkerframework.common.value.util.Range;
 import org.checkerframework.framework.flow.CFAbstractAnalysis;
 import org.checkerframework.framework.flow.CFStore;
 import org.checkerframework.framework.flow.CFTransfer;
@@ -50,6 +54,7 @@ import org.checkerframework.framework.util.AnnotationBuilder;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGraphFactory;
 import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.InternalUtils;
 import org.checkerframework.javacutil.TreeUtils;
@@ -75,6 +80,23 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
     /** Helper class that evaluates statically executable methods, constructor, and fields. */
     private final ReflectiveEvalutator evalutator;
 
+    /** The number of annotations whose values are cached by {@link #getIntValueArray} and co. */
+    private static final int VALUE_ARRAY_CACHE_SIZE = 500;
+
+    /**
+     * The sorted values of IntVal annotations without duplicates. Annotations built by this
+     * factory are only equal to themselves, so the values of each result are cached when it is
+     * built and read by the next operation without boxing.
+     */
+    private final Map<AnnotationMirror, long[]> intValueArrays =
+            CollectionUtils.createLRUCache(VALUE_ARRAY_CACHE_SIZE);
+
+    /**
+     * The sorted values of DoubleVal annotations without duplicates; see {@link #intValueArrays}.
+     */
+    private final Map<AnnotationMirror, double[]> doubleValueArrays =
+            CollectionUtils.createLRUCache(VALUE_ARRAY_CACHE_SIZE);
+
     public ValueAnnotatedTypeFactory(BaseTypeChecker checker) {
         super(checker);
 
@@ -116,13 +138,20 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
     /**
      * Creates an annotation of the name given with the set of values given. Issues a checker
-     * warning and return UNKNOWNVAL if values.size &gt; MAX_VALUES
+     * warning and return UNKNOWNVAL if values.size &gt; MAX_VALUES, except that too many values
+     * of an IntVal become an IntRange.
      *
      * @return annotation given by name with values=values, or UNKNOWNVAL
      */
     private AnnotationMirror createAnnotation(String name, Set<?> values) {
 
-        if (values.size() > 0 && values.size() <= MAX_VALUES) {
+        if (name.equals(IntVal.class.getName())) {
+            List<Long> intValues = new ArrayList<Long>(values.size());
+            for (Object value : values) {
+                intValues.add((Long) value);
+            }
+            return createIntValAnnotation(intValues);
+        } else if (values.size() > 0 && values.size() <= MAX_VALUES) {
             AnnotationBuilder builder = new AnnotationBuilder(processingEnv, name);
             List<Object> valuesList = new ArrayList<Object>(values);
             builder.setValue("value", valuesList);
@@ -175,7 +204,9 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         private void replaceWithUnknownValIfTooManyValues(AnnotatedTypeMirror atm) {
             AnnotationMirror anno = atm.getAnnotationInHierarchy(UNKNOWNVAL);
 
-            if (anno != null && anno.getElementValues().size() > 0) {
+            if (anno != null
+                    && anno.getElementValues().size() > 0
+                    && !AnnotationUtils.areSameByClass(anno, IntRange.class)) {
                 List<Object> values =
                         AnnotationUtils.getElementValueArray(anno, "value", Object.class, false);
                 if (values != null && values.size() > MAX_VALUES) {
@@ -199,6 +230,18 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 return a1;
             } else if (isSubtype(a2, a1)) {
                 return a2;
+            } else if (isIntRange(a1) && isIntRange(a2)) {
+                return createIntRangeAnnotation(getRange(a1).intersect(getRange(a2)));
+            } else if ((isIntRange(a1) && isIntVal(a2)) || (isIntVal(a1) && isIntRange(a2))) {
+                AnnotationMirror intAnno = isIntVal(a1) ? a1 : a2;
+                Range range = getRange(isIntRange(a1) ? a1 : a2);
+                List<Long> values = new ArrayList<>();
+                for (Long value : getIntValues(intAnno)) {
+                    if (range.contains(value)) {
+                        values.add(value);
+                    }
+                }
+                return values.isEmpty() ? BOTTOMVAL : createIntValAnnotation(values);
             } else {
                 // If the two are unrelated, then bottom is the GLB.
                 return BOTTOMVAL;
@@ -213,6 +256,9 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
          * both in {DoubleVal, IntVal} then they will be converted upwards: IntVal &rarr; DoubleVal
          * to arrive at a common annotation type.
          *
+         * <p>If either of a1 and a2 is an IntRange and the other is an IntRange or IntVal, the LUB
+         * is the smallest range that contains both.
+         *
          * @return the least upper bound of a1 and a2
          */
         @Override
@@ -224,6 +270,10 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 return a2;
             } else if (isSubtype(a2, a1)) {
                 return a1;
+            } else if ((isIntRange(a1) || isIntRange(a2))
+                    && (isIntRange(a1) || isIntVal(a1))
+                    && (isIntRange(a2) || isIntVal(a2))) {
+                return createIntRangeAnnotation(getRange(a1).union(getRange(a2)));
             }
             // If both are the same type, determine the type and merge:
             else if (AnnotationUtils.areSameIgnoringValues(a1, a2)) {
@@ -273,10 +323,29 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
             }
         }
 
+        /**
+         * Widens the LUB if it is an IntRange that is larger than previousQualifier, with {@link
+         * Range#widen}. Otherwise, a range that grows by a few values in each iteration of a loop
+         * would make the dataflow analysis of the loop take as many iterations as there are
+         * values.
+         */
+        @Override
+        public AnnotationMirror widenedUpperBound(
+                AnnotationMirror newQualifier, AnnotationMirror previousQualifier) {
+            AnnotationMirror lub = leastUpperBound(newQualifier, previousQualifier);
+            if (lub != null
+                    && isIntRange(lub)
+                    && !AnnotationUtils.areSame(lub, previousQualifier)) {
+                return createIntRangeAnnotation(getRange(lub).widen());
+            }
+            return lub;
+        }
+
         /**
          * Computes subtyping as per the subtyping in the qualifier hierarchy structure unless both
          * annotations are Value. In this case, rhs is a subtype of lhs iff lhs contains at least
-         * every element of rhs
+         * every element of rhs. An IntVal or IntRange is a subtype of an IntRange that contains
+         * all its values.
          *
          * @return true if rhs is a subtype of lhs, false otherwise
          */
@@ -289,6 +358,20 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
             } else if (AnnotationUtils.areSameByClass(rhs, UnknownVal.class)
                     || AnnotationUtils.areSameByClass(lhs, BottomVal.class)) {
                 return false;
+            } else if (isIntRange(lhs) && (isIntRange(rhs) || isIntVal(rhs))) {
+                return getRange(lhs).contains(getRange(rhs));
+            } else if (isIntVal(lhs) && isIntRange(rhs)) {
+                Range rhsRange = getRange(rhs);
+                if (rhsRange.isWiderThan(MAX_VALUES)) {
+                    return false;
+                }
+                List<Long> lhsValues = getIntValues(lhs);
+                for (long i = 0; i <= rhsRange.to - rhsRange.from; i++) {
+                    if (!lhsValues.contains(rhsRange.from + i)) {
+                        return false;
+                    }
+                }
+                return true;
             } else if (AnnotationUtils.areSameIgnoringValues(lhs, rhs)) {
                 // Same type, so might be subtype
                 List<Object> lhsValues =
@@ -384,7 +467,8 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
             AnnotationMirror dimType =
                     getAnnotatedType(dimensions.get(0)).getAnnotationInHierarchy(UNKNOWNVAL);
-            if (!AnnotationUtils.areSameIgnoringValues(dimType, UNKNOWNVAL)) {
+            if (!AnnotationUtils.areSameIgnoringValues(dimType, UNKNOWNVAL)
+                    && !isIntRange(dimType)) {
                 List<Long> longLengths = getIntValues(dimType);
 
                 HashSet<Integer> lengths = new HashSet<Integer>(longLengths.size());
@@ -486,6 +570,16 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         public Void visitTypeCast(TypeCastTree tree, AnnotatedTypeMirror type) {
             if (isUnderlyingTypeAValue(type)) {
                 AnnotatedTypeMirror castedAnnotation = getAnnotatedType(tree.getExpression());
+                AnnotationMirror castedAnno =
+                        castedAnnotation.getAnnotationInHierarchy(UNKNOWNVAL);
+                if (castedAnno != null
+                        && isIntRange(castedAnno)
+                        && NumberUtils.isIntegral(type.getUnderlyingType())) {
+                    Range range =
+                            NumberUtils.castRange(type.getUnderlyingType(), getRange(castedAnno));
+                    type.replaceAnnotation(createIntRangeAnnotation(range));
+                    return null;
+                }
                 List<?> values = getValues(castedAnnotation, type.getUnderlyingType());
                 type.replaceAnnotation(
                         resultAnnotationHandler(type.getUnderlyingType(), values, tree));
@@ -801,24 +895,70 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         }
     }
 
+    /**
+     * Returns an IntVal annotation with the given values, or UNKNOWNVAL if there are none. If there
+     * are more than MAX_VALUES values, returns an IntRange annotation from the smallest to the
+     * largest value instead.
+     */
     public AnnotationMirror createIntValAnnotation(List<Long> intValues) {
+        long[] values = new long[intValues.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = intValues.get(i);
+        }
+        return createIntValAnnotation(values);
+    }
+
+    /**
+     * Returns an IntVal annotation with the given values, like {@link
+     * #createIntValAnnotation(List)}. The array is sorted in place and may be kept by this factory,
+     * so the caller must not modify it afterwards.
+     */
+    public AnnotationMirror createIntValAnnotation(long[] intValues) {
         intValues = ValueCheckerUtils.removeDuplicates(intValues);
-        if (intValues.isEmpty() || intValues.size() > MAX_VALUES) {
+        if (intValues.length == 0) {
             return UNKNOWNVAL;
+        } else if (intValues.length > MAX_VALUES) {
+            return createIntRangeAnnotation(
+                    new Range(intValues[0], intValues[intValues.length - 1]));
+        }
+        List<Long> valueList = new ArrayList<>(intValues.length);
+        for (long value : intValues) {
+            valueList.add(value);
         }
         AnnotationBuilder builder = new AnnotationBuilder(processingEnv, IntVal.class);
-        builder.setValue("value", intValues);
-        return builder.build();
+        builder.setValue("value", valueList);
+        AnnotationMirror result = builder.build();
+        intValueArrays.put(result, intValues);
+        return result;
     }
 
     public AnnotationMirror createDoubleValAnnotation(List<Double> doubleValues) {
+        double[] values = new double[doubleValues.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = doubleValues.get(i);
+        }
+        return createDoubleValAnnotation(values);
+    }
+
+    /**
+     * Returns a DoubleVal annotation with the given values, or UNKNOWNVAL if there are none or more
+     * than MAX_VALUES. The array is sorted in place and may be kept by this factory, so the caller
+     * must not modify it afterwards.
+     */
+    public AnnotationMirror createDoubleValAnnotation(double[] doubleValues) {
         doubleValues = ValueCheckerUtils.removeDuplicates(doubleValues);
-        if (doubleValues.isEmpty() || doubleValues.size() > MAX_VALUES) {
+        if (doubleValues.length == 0 || doubleValues.length > MAX_VALUES) {
             return UNKNOWNVAL;
         }
+        List<Double> valueList = new ArrayList<>(doubleValues.length);
+        for (double value : doubleValues) {
+            valueList.add(value);
+        }
         AnnotationBuilder builder = new AnnotationBuilder(processingEnv, DoubleVal.class);
-        builder.setValue("value", doubleValues);
-        return builder.build();
+        builder.setValue("value", valueList);
+        AnnotationMirror result = builder.build();
+        doubleValueArrays.put(result, doubleValues);
+        return result;
     }
 
     public AnnotationMirror createStringAnnotation(List<String> values) {
@@ -853,18 +993,44 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
     public AnnotationMirror createCharAnnotation(List<Character> values) {
         values = ValueCheckerUtils.removeDuplicates(values);
-        if (values.isEmpty() || values.size() > MAX_VALUES) {
+        if (values.isEmpty()) {
             return UNKNOWNVAL;
         }
         List<Long> longValues = new ArrayList<>();
         for (char value : values) {
             longValues.add((long) value);
         }
+        if (values.size() > MAX_VALUES) {
+            return createIntRangeAnnotation(Range.fromValues(longValues));
+        }
         AnnotationBuilder builder = new AnnotationBuilder(processingEnv, IntVal.class);
         builder.setValue("value", longValues);
         return builder.build();
     }
 
+    /**
+     * Returns an annotation for the values of range: BOTTOMVAL if it is empty, UNKNOWNVAL if it
+     * contains every long, an IntVal annotation if it has at most MAX_VALUES values, and otherwise
+     * an IntRange annotation.
+     */
+    public AnnotationMirror createIntRangeAnnotation(Range range) {
+        if (range.isNothing()) {
+            return BOTTOMVAL;
+        } else if (range.isEverything()) {
+            return UNKNOWNVAL;
+        } else if (!range.isWiderThan(MAX_VALUES)) {
+            List<Long> values = new ArrayList<>();
+            for (long i = 0; i <= range.to - range.from; i++) {
+                values.add(range.from + i);
+            }
+            return createIntValAnnotation(values);
+        }
+        AnnotationBuilder builder = new AnnotationBuilder(processingEnv, IntRange.class);
+        builder.setValue("from", range.from);
+        builder.setValue("to", range.to);
+        return builder.build();
+    }
+
     private AnnotationMirror createNumberAnnotationMirror(List<Number> values) {
         if (values.isEmpty()) {
             return UNKNOWNVAL;
@@ -895,10 +1061,67 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         return AnnotationUtils.getElementValueArray(intAnno, "value", Long.class, true);
     }
 
+    /**
+     * Returns the range of an IntRange annotation, or the range from the smallest to the largest
+     * value of an IntVal annotation.
+     */
+    public static Range getRange(AnnotationMirror rangeAnno) {
+        if (isIntVal(rangeAnno)) {
+            return Range.fromValues(getIntValues(rangeAnno));
+        }
+        return new Range(
+                AnnotationUtils.getElementValue(rangeAnno, "from", Long.class, true),
+                AnnotationUtils.getElementValue(rangeAnno, "to", Long.class, true));
+    }
+
+    private static boolean isIntRange(AnnotationMirror anno) {
+        return AnnotationUtils.areSameByClass(anno, IntRange.class);
+    }
+
+    private static boolean isIntVal(AnnotationMirror anno) {
+        return AnnotationUtils.areSameByClass(anno, IntVal.class);
+    }
+
     public static List<Double> getDoubleValues(AnnotationMirror doubleAnno) {
         return AnnotationUtils.getElementValueArray(doubleAnno, "value", Double.class, true);
     }
 
+    /**
+     * Returns the values of an IntVal annotation, sorted and without duplicates. The array is
+     * shared, so the caller must not modify it.
+     */
+    public long[] getIntValueArray(AnnotationMirror intAnno) {
+        long[] values = intValueArrays.get(intAnno);
+        if (values == null) {
+            List<Long> intValues = getIntValues(intAnno);
+            values = new long[intValues.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = intValues.get(i);
+            }
+            values = ValueCheckerUtils.removeDuplicates(values);
+            intValueArrays.put(intAnno, values);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of a DoubleVal annotation, sorted and without duplicates. The array is
+     * shared, so the caller must not modify it.
+     */
+    public double[] getDoubleValueArray(AnnotationMirror doubleAnno) {
+        double[] values = doubleValueArrays.get(doubleAnno);
+        if (values == null) {
+            List<Double> doubleValues = getDoubleValues(doubleAnno);
+            values = new double[doubleValues.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = doubleValues.get(i);
+            }
+            values = ValueCheckerUtils.removeDuplicates(values);
+            doubleValueArrays.put(doubleAnno, values);
+        }
+        return values;
+    }
+
     public static List<Integer> getArrayLength(AnnotationMirror arrayAnno) {
         return AnnotationUtils.getElementValueArray(arrayAnno, "value", Integer.class, true);
     }
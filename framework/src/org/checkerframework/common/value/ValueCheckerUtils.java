@@ -1,6 +1,7 @@
 package org.checkerframework.common.value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -13,6 +14,7 @@ import org.checkerframework.common.value.qual.ArrayLen;
 import org.checkerframework.common.value.qual.BoolVal;
 import org.checkerframework.common.value.qual.BottomVal;
 import org.checkerframework.common.value.qual.DoubleVal;
+import org.checkerframework.common.value.qual.IntRange;
 import org.checkerframework.common.value.qual.IntVal;
 import org.checkerframework.common.value.qual.StringVal;
 import org.checkerframework.common.value.qual.UnknownVal;
@@ -97,6 +99,7 @@ public class ValueCheckerUtils {
         } else if (AnnotationUtils.areSameByClass(anno, BottomVal.class)) {
             values = convertBottomVal(anno, castType);
         } else if (AnnotationUtils.areSameByClass(anno, UnknownVal.class)
+                || AnnotationUtils.areSameByClass(anno, IntRange.class)
                 || AnnotationUtils.areSameByClass(anno, ArrayLen.class)) {
             values = new ArrayList<>();
         }
@@ -194,4 +197,35 @@ public class ValueCheckerUtils {
         Set<T> set = new TreeSet<>(values);
         return new ArrayList<T>(set);
     }
+
+    /**
+     * Sorts values in place and returns them without duplicates, either as values itself or as a
+     * new shorter array.
+     */
+    public static long[] removeDuplicates(long[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[i] != values[count - 1]) {
+                values[count++] = values[i];
+            }
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Sorts values in place and returns them without duplicates, either as values itself or as a
+     * new shorter array. As in {@link #removeDuplicates(List)}, 0.0 and -0.0 are different values
+     * and NaN is a single value.
+     */
+    public static double[] removeDuplicates(double[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || Double.compare(values[i], values[count - 1]) != 0) {
+                values[count++] = values[i];
+            }
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
 }
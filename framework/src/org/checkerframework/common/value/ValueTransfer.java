@@ -1,6 +1,7 @@
 package org.checkerframework.common.value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import javax.lang.model.element.AnnotationMirror;
@@ -9,11 +10,15 @@ import javax.lang.model.type.TypeMirror;
 import org.checkerframework.common.value.qual.BoolVal;
 import org.checkerframework.common.value.qual.BottomVal;
 import org.checkerframework.common.value.qual.DoubleVal;
+import org.checkerframework.common.value.qual.IntRange;
 import org.checkerframework.common.value.qual.IntVal;
 import org.checkerframework.common.value.qual.StringVal;
 import org.checkerframework.common.value.qual.UnknownVal;
-import org.checkerframework.common.value.util.NumberMath;
 import org.checkerframework.common.value.util.NumberUtils;
+import org.checkerframework.common.value.util.Range;
+import org.checkerframework.dataflow.analysis.ConditionalTransferResult;
+import org.checkerframework.dataflow.analysis.FlowExpressions;
+import org.checkerframework.dataflow.analysis.FlowExpressions.Receiver;
 import org.checkerframework.dataflow.analysis.RegularTransferResult;
 import org.checkerframework.dataflow.analysis.TransferInput;
 import org.checkerframework.dataflow.analysis.TransferResult;
@@ -46,7 +51,9 @@ import org.checkerframework.dataflow.cfg.node.StringConcatenateAssignmentNode;
 import org.checkerframework.dataflow.cfg.node.StringConcatenateNode;
 import org.checkerframework.dataflow.cfg.node.StringConversionNode;
 import org.checkerframework.dataflow.cfg.node.UnsignedRightShiftNode;
+import org.checkerframework.dataflow.cfg.node.WideningConversionNode;
 import org.checkerframework.framework.flow.CFAbstractAnalysis;
+import org.checkerframework.framework.flow.CFAbstractStore;
 import org.checkerframework.framework.flow.CFStore;
 import org.checkerframework.framework.flow.CFTransfer;
 import org.checkerframework.framework.flow.CFValue;
@@ -134,33 +141,57 @@ public class ValueTransfer extends CFTransfer {
         return NumberUtils.castNumbers(subNode.getType(), values);
     }
 
-    private AnnotationMirror createStringValAnnotationMirror(List<String> values) {
-        if (values.isEmpty()) {
-            return ((ValueAnnotatedTypeFactory) atypefactory).UNKNOWNVAL;
+    /**
+     * Returns the range of the values of subNode, or null if it does not have an integral type and
+     * an IntVal or IntRange annotation.
+     */
+    private Range getIntRange(Node subNode, TransferInput<CFValue, CFStore> p) {
+        TypeMirror type = subNode.getType();
+        if (!NumberUtils.isIntegral(type)) {
+            return null;
         }
-        return ((ValueAnnotatedTypeFactory) atypefactory).createStringAnnotation(values);
+        CFValue value = p.getValueOfSubNode(subNode);
+        Range typeRange = NumberUtils.castRange(type, Range.EVERYTHING);
+        AnnotationMirror rangeAnno =
+                AnnotationUtils.getAnnotationByClass(value.getAnnotations(), IntRange.class);
+        if (rangeAnno != null) {
+            // The least upper bound widens ranges beyond the values of the type.
+            Range range = ValueAnnotatedTypeFactory.getRange(rangeAnno).intersect(typeRange);
+            return range.isNothing() ? typeRange : range;
+        }
+        AnnotationMirror intAnno =
+                AnnotationUtils.getAnnotationByClass(value.getAnnotations(), IntVal.class);
+        if (intAnno != null) {
+            Range range = Range.fromValues(ValueAnnotatedTypeFactory.getIntValues(intAnno));
+            return NumberUtils.castRange(type, range);
+        }
+        return null;
     }
 
-    private AnnotationMirror createNumberAnnotationMirror(List<Number> values) {
-        if (values.isEmpty()) {
-            return ((ValueAnnotatedTypeFactory) atypefactory).UNKNOWNVAL;
-        }
-        Number first = values.get(0);
-        if (first instanceof Integer || first instanceof Short || first instanceof Long) {
-            List<Long> intValues = new ArrayList<>();
-            for (Number number : values) {
-                intValues.add(number.longValue());
+    /**
+     * Returns true if an operation on the given operands should be computed from their ranges,
+     * which takes constant time: if any of them has an IntRange annotation, and all of them have
+     * integral types and IntVal or IntRange annotations.
+     */
+    private boolean isIntRangeOperation(TransferInput<CFValue, CFStore> p, Node... operands) {
+        boolean anyIntRange = false;
+        for (Node operand : operands) {
+            if (getIntRange(operand, p) == null) {
+                return false;
             }
-            return ((ValueAnnotatedTypeFactory) atypefactory).createIntValAnnotation(intValues);
+            CFValue value = p.getValueOfSubNode(operand);
+            anyIntRange |=
+                    AnnotationUtils.getAnnotationByClass(value.getAnnotations(), IntRange.class)
+                            != null;
         }
-        if (first instanceof Double || first instanceof Float) {
-            List<Double> intValues = new ArrayList<>();
-            for (Number number : values) {
-                intValues.add(number.doubleValue());
-            }
-            return ((ValueAnnotatedTypeFactory) atypefactory).createDoubleValAnnotation(intValues);
+        return anyIntRange;
+    }
+
+    private AnnotationMirror createStringValAnnotationMirror(List<String> values) {
+        if (values.isEmpty()) {
+            return ((ValueAnnotatedTypeFactory) atypefactory).UNKNOWNVAL;
         }
-        throw new UnsupportedOperationException();
+        return ((ValueAnnotatedTypeFactory) atypefactory).createStringAnnotation(values);
     }
 
     private AnnotationMirror createBooleanAnnotationMirror(List<Boolean> values) {
@@ -171,11 +202,30 @@ public class ValueTransfer extends CFTransfer {
     }
 
     private TransferResult<CFValue, CFStore> createNewResult(
-            TransferResult<CFValue, CFStore> result, List<Number> resultValues) {
-        AnnotationMirror stringVal = createNumberAnnotationMirror(resultValues);
+            TransferResult<CFValue, CFStore> result, AnnotationMirror resultAnno) {
         CFValue newResultValue =
                 analysis.createSingleAnnotationValue(
-                        stringVal, result.getResultValue().getUnderlyingType());
+                        resultAnno, result.getResultValue().getUnderlyingType());
+        return new RegularTransferResult<>(newResultValue, result.getRegularStore());
+    }
+
+    /**
+     * Returns a result for resultRange converted to the type of result, which must be integral;
+     * the result is UnknownVal if resultRange contains every value of that type.
+     */
+    private TransferResult<CFValue, CFStore> createNewResult(
+            TransferResult<CFValue, CFStore> result, Range resultRange) {
+        TypeMirror resultType = result.getResultValue().getUnderlyingType();
+        resultRange = NumberUtils.castRange(resultType, resultRange);
+        AnnotationMirror rangeAnno;
+        if (resultRange.equals(NumberUtils.castRange(resultType, Range.EVERYTHING))) {
+            rangeAnno = ((ValueAnnotatedTypeFactory) atypefactory).UNKNOWNVAL;
+        } else {
+            rangeAnno =
+                    ((ValueAnnotatedTypeFactory) atypefactory)
+                            .createIntRangeAnnotation(resultRange);
+        }
+        CFValue newResultValue = analysis.createSingleAnnotationValue(rangeAnno, resultType);
         return new RegularTransferResult<>(newResultValue, result.getRegularStore());
     }
 
@@ -235,205 +285,454 @@ public class ValueTransfer extends CFTransfer {
         BITWISE_XOR;
     }
 
-    private List<Number> calcutateNumericalBinaryOp(
+    /**
+     * Returns the kind of the values of type if it is byte, short, char, int, long, float, or
+     * double, or one of their boxed types, or null otherwise.
+     */
+    private static TypeKind getNumericKind(TypeMirror type) {
+        TypeKind kind = NumberUtils.unBoxPrimative(type);
+        switch (kind) {
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return kind;
+            default:
+                return null;
+        }
+    }
+
+    /** Returns value converted to kind, which is byte, short, char, int, or long. */
+    private static long castIntegral(long value, TypeKind kind) {
+        switch (kind) {
+            case BYTE:
+                return (byte) value;
+            case SHORT:
+                return (short) value;
+            case CHAR:
+                return (char) value;
+            case INT:
+                return (int) value;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Returns the values of subNode, which must have a numeric type (see {@link #getNumericKind}),
+     * converted to that type, or to the type of the operand of a widening conversion, if it is
+     * integral. Returns null if subNode does not have an IntVal annotation. The array must not be
+     * modified.
+     */
+    private long[] getIntegralValueArray(Node subNode, TransferInput<CFValue, CFStore> p) {
+        CFValue value = p.getValueOfSubNode(subNode);
+        AnnotationMirror intAnno =
+                AnnotationUtils.getAnnotationByClass(value.getAnnotations(), IntVal.class);
+        if (intAnno == null) {
+            return null;
+        }
+        long[] values = ((ValueAnnotatedTypeFactory) atypefactory).getIntValueArray(intAnno);
+        // A widening conversion has the values of its operand, which fit in the narrower type.
+        Node typeNode =
+                subNode instanceof WideningConversionNode
+                        ? ((WideningConversionNode) subNode).getOperand()
+                        : subNode;
+        TypeKind kind = getNumericKind(typeNode.getType());
+        if (kind == null) {
+            kind = getNumericKind(subNode.getType());
+        }
+        for (long v : values) {
+            if (v != castIntegral(v, kind)) {
+                // Only a written annotation can have values that do not fit in the type.
+                long[] castValues = new long[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    castValues[i] = castIntegral(values[i], kind);
+                }
+                return castValues;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of subNode, which must have a numeric type (see {@link #getNumericKind}),
+     * converted to kind, which is float or double. Returns null if subNode does not have an IntVal
+     * or DoubleVal annotation, or has an integral type and a DoubleVal annotation. The array must
+     * not be modified.
+     */
+    private double[] getFloatingValueArray(
+            Node subNode, TypeKind kind, TransferInput<CFValue, CFStore> p) {
+        TypeKind nodeKind = getNumericKind(subNode.getType());
+        boolean isFloat = kind == TypeKind.FLOAT || nodeKind == TypeKind.FLOAT;
+        CFValue value = p.getValueOfSubNode(subNode);
+        AnnotationMirror doubleAnno =
+                AnnotationUtils.getAnnotationByClass(value.getAnnotations(), DoubleVal.class);
+        if (doubleAnno != null) {
+            if (nodeKind != TypeKind.FLOAT && nodeKind != TypeKind.DOUBLE) {
+                return null;
+            }
+            double[] values =
+                    ((ValueAnnotatedTypeFactory) atypefactory).getDoubleValueArray(doubleAnno);
+            if (isFloat) {
+                for (double v : values) {
+                    if (v != (float) v && !Double.isNaN(v)) {
+                        double[] floatValues = new double[values.length];
+                        for (int i = 0; i < values.length; i++) {
+                            floatValues[i] = (float) values[i];
+                        }
+                        return floatValues;
+                    }
+                }
+            }
+            return values;
+        }
+        long[] intValues = getIntegralValueArray(subNode, p);
+        if (intValues == null) {
+            return null;
+        }
+        double[] values = new double[intValues.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = isFloat ? (float) intValues[i] : (double) intValues[i];
+        }
+        return values;
+    }
+
+    /**
+     * Returns the annotation for the result of op on the values of leftNode and rightNode, which
+     * has type resultType, or UnknownVal if an operand is not numeric or has no values.
+     * Combinations that throw an ArithmeticException, integral division or remainder by zero,
+     * have no result.
+     */
+    private AnnotationMirror calculateNumericalBinaryOp(
             Node leftNode,
             Node rightNode,
             NumbericalBinaryOps op,
+            TypeMirror resultType,
             TransferInput<CFValue, CFStore> p) {
-        List<? extends Number> lefts = getNumericalValues(leftNode, p);
-        List<? extends Number> rights = getNumericalValues(rightNode, p);
-        List<Number> resultValues = new ArrayList<>();
-        for (Number left : lefts) {
-            NumberMath<?> nmLeft = NumberMath.getNumberMath(left);
-            for (Number right : rights) {
-                switch (op) {
-                    case ADDTION:
-                        resultValues.add(nmLeft.plus(right));
-                        break;
-                    case DIVISION:
-                        resultValues.add(nmLeft.divide(right));
-                        break;
-                    case MULPLICATION:
-                        resultValues.add(nmLeft.times(right));
-                        break;
-                    case REMAINDER:
-                        resultValues.add(nmLeft.remainder(right));
-                        break;
-                    case SUBTRACTION:
-                        resultValues.add(nmLeft.minus(right));
-                        break;
-                    case SHIFT_LEFT:
-                        resultValues.add(nmLeft.shiftLeft(right));
-                        break;
-                    case SIGNED_SHIFT_RIGHT:
-                        resultValues.add(nmLeft.signedSiftRight(right));
-                        break;
-                    case UNSIGNED_SHIFT_RIGHT:
-                        resultValues.add(nmLeft.unsignedSiftRight(right));
-                        break;
-                    case BITWISE_AND:
-                        resultValues.add(nmLeft.bitwiseAnd(right));
-                        break;
-                    case BITWISE_OR:
-                        resultValues.add(nmLeft.bitwiseOr(right));
-                        break;
-                    case BITWISE_XOR:
-                        resultValues.add(nmLeft.bitwiseXor(right));
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
+        ValueAnnotatedTypeFactory factory = (ValueAnnotatedTypeFactory) atypefactory;
+        TypeKind kind = getNumericKind(resultType);
+        if (kind == null
+                || getNumericKind(leftNode.getType()) == null
+                || getNumericKind(rightNode.getType()) == null) {
+            return factory.UNKNOWNVAL;
+        }
+        if (kind != TypeKind.FLOAT && kind != TypeKind.DOUBLE) {
+            long[] lefts = getIntegralValueArray(leftNode, p);
+            long[] rights = getIntegralValueArray(rightNode, p);
+            if (lefts == null || rights == null) {
+                return factory.UNKNOWNVAL;
+            }
+            boolean canThrow =
+                    op == NumbericalBinaryOps.DIVISION || op == NumbericalBinaryOps.REMAINDER;
+            long[] resultValues = new long[lefts.length * rights.length];
+            int count = 0;
+            for (long left : lefts) {
+                for (long right : rights) {
+                    if (canThrow && right == 0) {
+                        continue;
+                    }
+                    resultValues[count++] = calculateIntegralBinaryOp(left, right, op, kind);
                 }
             }
+            return factory.createIntValAnnotation(Arrays.copyOf(resultValues, count));
+        }
+        double[] lefts = getFloatingValueArray(leftNode, kind, p);
+        double[] rights = getFloatingValueArray(rightNode, kind, p);
+        if (lefts == null || rights == null) {
+            return factory.UNKNOWNVAL;
+        }
+        double[] resultValues = new double[lefts.length * rights.length];
+        int count = 0;
+        for (double left : lefts) {
+            for (double right : rights) {
+                double result = calculateFloatingBinaryOp(left, right, op);
+                resultValues[count++] = kind == TypeKind.FLOAT ? (float) result : result;
+            }
+        }
+        return factory.createDoubleValAnnotation(resultValues);
+    }
+
+    /**
+     * Returns the result of op on left and right, whose binary numeric promotion is kind, which is
+     * int or long. The operands must already be converted to their types, and right must not be
+     * zero for division and remainder.
+     */
+    private static long calculateIntegralBinaryOp(
+            long left, long right, NumbericalBinaryOps op, TypeKind kind) {
+        boolean isLong = kind == TypeKind.LONG;
+        long result;
+        switch (op) {
+            case ADDTION:
+                result = left + right;
+                break;
+            case SUBTRACTION:
+                result = left - right;
+                break;
+            case MULPLICATION:
+                result = left * right;
+                break;
+            case DIVISION:
+                result = left / right;
+                break;
+            case REMAINDER:
+                result = left % right;
+                break;
+            case SHIFT_LEFT:
+                result = isLong ? left << right : (int) left << right;
+                break;
+            case SIGNED_SHIFT_RIGHT:
+                result = isLong ? left >> right : (int) left >> right;
+                break;
+            case UNSIGNED_SHIFT_RIGHT:
+                result = isLong ? left >>> right : (int) left >>> right;
+                break;
+            case BITWISE_AND:
+                result = left & right;
+                break;
+            case BITWISE_OR:
+                result = left | right;
+                break;
+            case BITWISE_XOR:
+                result = left ^ right;
+                break;
+            default:
+                throw new UnsupportedOperationException();
+        }
+        return castIntegral(result, kind);
+    }
+
+    /**
+     * Returns the result of op on left and right in double precision. For float operands, the
+     * result rounded to float is the float result: a double has more than twice the precision of
+     * a float, so rounding twice gives the same result as rounding once.
+     */
+    private static double calculateFloatingBinaryOp(
+            double left, double right, NumbericalBinaryOps op) {
+        switch (op) {
+            case ADDTION:
+                return left + right;
+            case SUBTRACTION:
+                return left - right;
+            case MULPLICATION:
+                return left * right;
+            case DIVISION:
+                return left / right;
+            case REMAINDER:
+                return left % right;
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Returns the result of the operation op on leftNode and rightNode. If either operand has an
+     * IntRange annotation, it is computed from the ranges of the operands rather than from the
+     * Cartesian product of their values.
+     */
+    private TransferResult<CFValue, CFStore> createNewResult(
+            TransferResult<CFValue, CFStore> result,
+            Node leftNode,
+            Node rightNode,
+            NumbericalBinaryOps op,
+            TransferInput<CFValue, CFStore> p) {
+        if (NumberUtils.isIntegral(result.getResultValue().getUnderlyingType())
+                && isIntRangeOperation(p, leftNode, rightNode)) {
+            Range left = getIntRange(leftNode, p);
+            Range right = getIntRange(rightNode, p);
+            return createNewResult(result, calculateRangeBinaryOp(left, right, op));
+        }
+        return createNewResult(
+                result,
+                calculateNumericalBinaryOp(
+                        leftNode, rightNode, op, result.getResultValue().getUnderlyingType(), p));
+    }
+
+    private Range calculateRangeBinaryOp(Range left, Range right, NumbericalBinaryOps op) {
+        switch (op) {
+            case ADDTION:
+                return left.plus(right);
+            case DIVISION:
+                return left.divide(right);
+            case MULPLICATION:
+                return left.times(right);
+            case REMAINDER:
+                return left.remainder(right);
+            case SUBTRACTION:
+                return left.minus(right);
+            case SHIFT_LEFT:
+                return left.shiftLeft(right);
+            case SIGNED_SHIFT_RIGHT:
+                return left.signedShiftRight(right);
+            case UNSIGNED_SHIFT_RIGHT:
+                return left.unsignedShiftRight(right);
+            case BITWISE_AND:
+                return left.bitwiseAnd(right);
+            case BITWISE_OR:
+                return left.bitwiseOr(right);
+            case BITWISE_XOR:
+                return left.bitwiseXor(right);
+            default:
+                throw new UnsupportedOperationException();
         }
-        return resultValues;
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitNumericalAddition(
             NumericalAdditionNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitNumericalAddition(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.ADDTION, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.ADDTION,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitNumericalSubtraction(
             NumericalSubtractionNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitNumericalSubtraction(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.SUBTRACTION,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.SUBTRACTION,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitNumericalMultiplication(
             NumericalMultiplicationNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitNumericalMultiplication(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.MULPLICATION,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.MULPLICATION,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitIntegerDivision(
             IntegerDivisionNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitIntegerDivision(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.DIVISION, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.DIVISION,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitFloatingDivision(
             FloatingDivisionNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitFloatingDivision(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.DIVISION, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.DIVISION,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitIntegerRemainder(
             IntegerRemainderNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitIntegerRemainder(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.REMAINDER, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.REMAINDER,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitFloatingRemainder(
             FloatingRemainderNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitFloatingRemainder(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.REMAINDER, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.REMAINDER,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitLeftShift(
             LeftShiftNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitLeftShift(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.SHIFT_LEFT, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.SHIFT_LEFT,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitSignedRightShift(
             SignedRightShiftNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitSignedRightShift(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.SIGNED_SHIFT_RIGHT,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.SIGNED_SHIFT_RIGHT,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitUnsignedRightShift(
             UnsignedRightShiftNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitUnsignedRightShift(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.UNSIGNED_SHIFT_RIGHT,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.UNSIGNED_SHIFT_RIGHT,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitBitwiseAnd(
             BitwiseAndNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitBitwiseAnd(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.BITWISE_AND,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.BITWISE_AND,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitBitwiseOr(
             BitwiseOrNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitBitwiseOr(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(), n.getRightOperand(), NumbericalBinaryOps.BITWISE_OR, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.BITWISE_OR,
+                p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitBitwiseXor(
             BitwiseXorNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitBitwiseXor(n, p);
-        List<Number> resultValues =
-                calcutateNumericalBinaryOp(
-                        n.getLeftOperand(),
-                        n.getRightOperand(),
-                        NumbericalBinaryOps.BITWISE_XOR,
-                        p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult,
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                NumbericalBinaryOps.BITWISE_XOR,
+                p);
     }
 
     enum NumbericalUnaryOps {
@@ -442,54 +741,113 @@ public class ValueTransfer extends CFTransfer {
         BITWISE_COMPLEMENT;
     }
 
-    private List<Number> calcutateNumericalUnaryOp(
-            Node operand, NumbericalUnaryOps op, TransferInput<CFValue, CFStore> p) {
-        List<? extends Number> lefts = getNumericalValues(operand, p);
-        List<Number> resultValues = new ArrayList<>();
-        for (Number left : lefts) {
-            NumberMath<?> nmLeft = NumberMath.getNumberMath(left);
+    /**
+     * Returns the annotation for the result of op on the values of operand, which has type
+     * resultType, or UnknownVal if the operand is not numeric or has no values.
+     */
+    private AnnotationMirror calculateNumericalUnaryOp(
+            Node operand,
+            NumbericalUnaryOps op,
+            TypeMirror resultType,
+            TransferInput<CFValue, CFStore> p) {
+        ValueAnnotatedTypeFactory factory = (ValueAnnotatedTypeFactory) atypefactory;
+        TypeKind kind = getNumericKind(resultType);
+        if (kind == null || getNumericKind(operand.getType()) == null) {
+            return factory.UNKNOWNVAL;
+        }
+        if (kind != TypeKind.FLOAT && kind != TypeKind.DOUBLE) {
+            long[] values = getIntegralValueArray(operand, p);
+            if (values == null) {
+                return factory.UNKNOWNVAL;
+            }
+            long[] resultValues = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                long value = values[i];
+                switch (op) {
+                    case PLUS:
+                        break;
+                    case MINUS:
+                        value = -value;
+                        break;
+                    case BITWISE_COMPLEMENT:
+                        value = ~value;
+                        break;
+                    default:
+                        throw new UnsupportedOperationException();
+                }
+                resultValues[i] = castIntegral(value, kind);
+            }
+            return factory.createIntValAnnotation(resultValues);
+        }
+        double[] values = getFloatingValueArray(operand, kind, p);
+        if (values == null) {
+            return factory.UNKNOWNVAL;
+        }
+        double[] resultValues = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
             switch (op) {
                 case PLUS:
-                    resultValues.add(nmLeft.unaryPlus());
+                    resultValues[i] = values[i];
                     break;
                 case MINUS:
-                    resultValues.add(nmLeft.unaryMinus());
+                    resultValues[i] = -values[i];
                     break;
+                default:
+                    throw new UnsupportedOperationException();
+            }
+        }
+        return factory.createDoubleValAnnotation(resultValues);
+    }
+
+    /**
+     * Returns the result of the operation op on operand. If the operand has an IntRange
+     * annotation, it is computed from the range of the operand.
+     */
+    private TransferResult<CFValue, CFStore> createNewResult(
+            TransferResult<CFValue, CFStore> result,
+            Node operand,
+            NumbericalUnaryOps op,
+            TransferInput<CFValue, CFStore> p) {
+        if (NumberUtils.isIntegral(result.getResultValue().getUnderlyingType())
+                && isIntRangeOperation(p, operand)) {
+            Range range = getIntRange(operand, p);
+            switch (op) {
+                case PLUS:
+                    return createNewResult(result, range.unaryPlus());
+                case MINUS:
+                    return createNewResult(result, range.unaryMinus());
                 case BITWISE_COMPLEMENT:
-                    resultValues.add(nmLeft.bitwiseComplement());
-                    break;
+                    return createNewResult(result, range.bitwiseComplement());
                 default:
                     throw new UnsupportedOperationException();
             }
         }
-        return resultValues;
+        return createNewResult(
+                result,
+                calculateNumericalUnaryOp(
+                        operand, op, result.getResultValue().getUnderlyingType(), p));
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitNumericalMinus(
             NumericalMinusNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitNumericalMinus(n, p);
-        List<Number> resultValues =
-                calcutateNumericalUnaryOp(n.getOperand(), NumbericalUnaryOps.MINUS, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(transferResult, n.getOperand(), NumbericalUnaryOps.MINUS, p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitNumericalPlus(
             NumericalPlusNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitNumericalPlus(n, p);
-        List<Number> resultValues =
-                calcutateNumericalUnaryOp(n.getOperand(), NumbericalUnaryOps.PLUS, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(transferResult, n.getOperand(), NumbericalUnaryOps.PLUS, p);
     }
 
     @Override
     public TransferResult<CFValue, CFStore> visitBitwiseComplement(
             BitwiseComplementNode n, TransferInput<CFValue, CFStore> p) {
         TransferResult<CFValue, CFStore> transferResult = super.visitBitwiseComplement(n, p);
-        List<Number> resultValues =
-                calcutateNumericalUnaryOp(n.getOperand(), NumbericalUnaryOps.BITWISE_COMPLEMENT, p);
-        return createNewResult(transferResult, resultValues);
+        return createNewResult(
+                transferResult, n.getOperand(), NumbericalUnaryOps.BITWISE_COMPLEMENT, p);
     }
 
     enum ComparisonOperators {
@@ -506,39 +864,245 @@ public class ValueTransfer extends CFTransfer {
             Node rightNode,
             ComparisonOperators op,
             TransferInput<CFValue, CFStore> p) {
-        List<? extends Number> lefts = getNumericalValues(leftNode, p);
-        List<? extends Number> rights = getNumericalValues(rightNode, p);
-        List<Boolean> resultValues = new ArrayList<>();
-        for (Number left : lefts) {
-            NumberMath<?> nmLeft = NumberMath.getNumberMath(left);
-            for (Number right : rights) {
-                switch (op) {
-                    case EQUAL:
-                        resultValues.add(nmLeft.equalTo(right));
-                        break;
-                    case GREATER_THAN:
-                        resultValues.add(nmLeft.greaterThan(right));
-                        break;
-                    case GREATER_THAN_EQ:
-                        resultValues.add(nmLeft.greaterThanEq(right));
-                        break;
-                    case LESS_THAN:
-                        resultValues.add(nmLeft.lessThan(right));
-                        break;
-                    case LESS_THAN_EQ:
-                        resultValues.add(nmLeft.lessThanEq(right));
-                        break;
-                    case NOT_EQUAL:
-                        resultValues.add(nmLeft.notEqualTo(right));
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
+        if (isIntRangeOperation(p, leftNode, rightNode)) {
+            Range left = getIntRange(leftNode, p);
+            Range right = getIntRange(rightNode, p);
+            return calculateRangeComparison(left, right, op);
+        }
+        return calculateValueComparison(leftNode, rightNode, op, p);
+    }
+
+    /**
+     * Returns the possible results of the comparison op of the values of leftNode and rightNode,
+     * or an empty list if an operand is not numeric or has no values.
+     */
+    private List<Boolean> calculateValueComparison(
+            Node leftNode,
+            Node rightNode,
+            ComparisonOperators op,
+            TransferInput<CFValue, CFStore> p) {
+        TypeKind leftKind = getNumericKind(leftNode.getType());
+        TypeKind rightKind = getNumericKind(rightNode.getType());
+        if (leftKind == null || rightKind == null) {
+            return new ArrayList<Boolean>();
+        }
+        // The binary numeric promotion of the operands.
+        TypeKind kind;
+        if (leftKind == TypeKind.DOUBLE || rightKind == TypeKind.DOUBLE) {
+            kind = TypeKind.DOUBLE;
+        } else if (leftKind == TypeKind.FLOAT || rightKind == TypeKind.FLOAT) {
+            kind = TypeKind.FLOAT;
+        } else {
+            kind = TypeKind.LONG;
+        }
+        boolean canBeTrue = false;
+        boolean canBeFalse = false;
+        if (kind == TypeKind.LONG) {
+            long[] lefts = getIntegralValueArray(leftNode, p);
+            long[] rights = getIntegralValueArray(rightNode, p);
+            if (lefts == null || rights == null) {
+                return new ArrayList<Boolean>();
+            }
+            for (long left : lefts) {
+                for (long right : rights) {
+                    int comparison = left < right ? -1 : (left == right ? 0 : 1);
+                    if (isComparisonTrue(comparison, op)) {
+                        canBeTrue = true;
+                    } else {
+                        canBeFalse = true;
+                    }
                 }
             }
+        } else {
+            double[] lefts = getFloatingValueArray(leftNode, kind, p);
+            double[] rights = getFloatingValueArray(rightNode, kind, p);
+            if (lefts == null || rights == null) {
+                return new ArrayList<Boolean>();
+            }
+            for (double left : lefts) {
+                for (double right : rights) {
+                    boolean isTrue;
+                    if (Double.isNaN(left) || Double.isNaN(right)) {
+                        // Every comparison with NaN is false, except !=.
+                        isTrue = op == ComparisonOperators.NOT_EQUAL;
+                    } else {
+                        int comparison = left < right ? -1 : (left == right ? 0 : 1);
+                        isTrue = isComparisonTrue(comparison, op);
+                    }
+                    if (isTrue) {
+                        canBeTrue = true;
+                    } else {
+                        canBeFalse = true;
+                    }
+                }
+            }
+        }
+        List<Boolean> resultValues = new ArrayList<>(2);
+        if (canBeTrue) {
+            resultValues.add(true);
+        }
+        if (canBeFalse) {
+            resultValues.add(false);
+        }
+        return resultValues;
+    }
+
+    /**
+     * Returns the result of op for operands whose comparison is negative, zero, or positive, like
+     * the result of {@link Comparable#compareTo}.
+     */
+    private static boolean isComparisonTrue(int comparison, ComparisonOperators op) {
+        switch (op) {
+            case EQUAL:
+                return comparison == 0;
+            case NOT_EQUAL:
+                return comparison != 0;
+            case GREATER_THAN:
+                return comparison > 0;
+            case GREATER_THAN_EQ:
+                return comparison >= 0;
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_EQ:
+                return comparison <= 0;
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+
+    /** Returns the possible results of the comparison op of a value in left and one in right. */
+    private List<Boolean> calculateRangeComparison(
+            Range left, Range right, ComparisonOperators op) {
+        boolean same = left.from == left.to && left.equals(right);
+        boolean overlap = !left.intersect(right).isNothing();
+        boolean canBeTrue;
+        boolean canBeFalse;
+        switch (op) {
+            case EQUAL:
+                canBeTrue = overlap;
+                canBeFalse = !same;
+                break;
+            case NOT_EQUAL:
+                canBeTrue = !same;
+                canBeFalse = overlap;
+                break;
+            case GREATER_THAN:
+                canBeTrue = left.to > right.from;
+                canBeFalse = left.from <= right.to;
+                break;
+            case GREATER_THAN_EQ:
+                canBeTrue = left.to >= right.from;
+                canBeFalse = left.from < right.to;
+                break;
+            case LESS_THAN:
+                canBeTrue = left.from < right.to;
+                canBeFalse = left.to >= right.from;
+                break;
+            case LESS_THAN_EQ:
+                canBeTrue = left.from <= right.to;
+                canBeFalse = left.to > right.from;
+                break;
+            default:
+                throw new UnsupportedOperationException();
+        }
+        List<Boolean> resultValues = new ArrayList<>();
+        if (canBeTrue) {
+            resultValues.add(true);
+        }
+        if (canBeFalse) {
+            resultValues.add(false);
         }
         return resultValues;
     }
 
+    /**
+     * Refines the ranges of the operands of the comparison op in the then and else stores of
+     * result. For example, if {@code i < 10} is true, then i is less than 10. The operands are
+     * only refined if both have integral types and either has an IntVal or IntRange annotation.
+     */
+    private TransferResult<CFValue, CFStore> refineRanges(
+            TransferResult<CFValue, CFStore> result,
+            Node leftNode,
+            Node rightNode,
+            ComparisonOperators op,
+            TransferInput<CFValue, CFStore> p) {
+        TypeMirror leftType = leftNode.getType();
+        TypeMirror rightType = rightNode.getType();
+        if (!NumberUtils.isIntegral(leftType) || !NumberUtils.isIntegral(rightType)) {
+            return result;
+        }
+        Range left = getIntRange(leftNode, p);
+        Range right = getIntRange(rightNode, p);
+        if (left == null && right == null) {
+            return result;
+        }
+        // An unknown operand can still be any value of its type, which bounds the other operand:
+        // if i < n is true, then i is not the largest int.
+        if (left == null) {
+            left = NumberUtils.castRange(leftType, Range.EVERYTHING);
+        }
+        if (right == null) {
+            right = NumberUtils.castRange(rightType, Range.EVERYTHING);
+        }
+
+        Range leftThen;
+        Range rightThen;
+        Range leftElse;
+        Range rightElse;
+        switch (op) {
+            case LESS_THAN:
+                leftThen = left.refineLessThan(right);
+                rightThen = right.refineGreaterThan(left);
+                leftElse = left.refineGreaterThanEq(right);
+                rightElse = right.refineLessThanEq(left);
+                break;
+            case LESS_THAN_EQ:
+                leftThen = left.refineLessThanEq(right);
+                rightThen = right.refineGreaterThanEq(left);
+                leftElse = left.refineGreaterThan(right);
+                rightElse = right.refineLessThan(left);
+                break;
+            case GREATER_THAN:
+                leftThen = left.refineGreaterThan(right);
+                rightThen = right.refineLessThan(left);
+                leftElse = left.refineLessThanEq(right);
+                rightElse = right.refineGreaterThanEq(left);
+                break;
+            case GREATER_THAN_EQ:
+                leftThen = left.refineGreaterThanEq(right);
+                rightThen = right.refineLessThanEq(left);
+                leftElse = left.refineLessThan(right);
+                rightElse = right.refineGreaterThan(left);
+                break;
+            default:
+                return result;
+        }
+
+        CFStore thenStore = result.getRegularStore();
+        CFStore elseStore = thenStore.copy();
+        refineRange(thenStore, leftNode, left, leftThen);
+        refineRange(elseStore, leftNode, left, leftElse);
+        refineRange(thenStore, rightNode, right, rightThen);
+        refineRange(elseStore, rightNode, right, rightElse);
+        return new ConditionalTransferResult<>(result.getResultValue(), thenStore, elseStore);
+    }
+
+    /**
+     * Inserts refined into store for node, if it is narrower than range. If refined is empty, the
+     * branch of the store cannot be taken and node is BottomVal in it.
+     */
+    private void refineRange(CFStore store, Node node, Range range, Range refined) {
+        if (refined.equals(range)) {
+            return;
+        }
+        Receiver receiver = FlowExpressions.internalReprOf(atypefactory, node);
+        if (CFAbstractStore.canInsertReceiver(receiver)) {
+            store.insertValue(
+                    receiver,
+                    ((ValueAnnotatedTypeFactory) atypefactory).createIntRangeAnnotation(refined));
+        }
+    }
+
     @Override
     public TransferResult<CFValue, CFStore> visitLessThan(
             LessThanNode n, TransferInput<CFValue, CFStore> p) {
@@ -546,7 +1110,12 @@ public class ValueTransfer extends CFTransfer {
         List<Boolean> resultValues =
                 calcutateBinaryComparison(
                         n.getLeftOperand(), n.getRightOperand(), ComparisonOperators.LESS_THAN, p);
-        return createNewResultBoolean(transferResult, resultValues);
+        return refineRanges(
+                createNewResultBoolean(transferResult, resultValues),
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                ComparisonOperators.LESS_THAN,
+                p);
     }
 
     @Override
@@ -559,7 +1128,12 @@ public class ValueTransfer extends CFTransfer {
                         n.getRightOperand(),
                         ComparisonOperators.LESS_THAN_EQ,
                         p);
-        return createNewResultBoolean(transferResult, resultValues);
+        return refineRanges(
+                createNewResultBoolean(transferResult, resultValues),
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                ComparisonOperators.LESS_THAN_EQ,
+                p);
     }
 
     @Override
@@ -572,7 +1146,12 @@ public class ValueTransfer extends CFTransfer {
                         n.getRightOperand(),
                         ComparisonOperators.GREATER_THAN,
                         p);
-        return createNewResultBoolean(transferResult, resultValues);
+        return refineRanges(
+                createNewResultBoolean(transferResult, resultValues),
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                ComparisonOperators.GREATER_THAN,
+                p);
     }
 
     @Override
@@ -585,7 +1164,12 @@ public class ValueTransfer extends CFTransfer {
                         n.getRightOperand(),
                         ComparisonOperators.GREATER_THAN_EQ,
                         p);
-        return createNewResultBoolean(transferResult, resultValues);
+        return refineRanges(
+                createNewResultBoolean(transferResult, resultValues),
+                n.getLeftOperand(),
+                n.getRightOperand(),
+                ComparisonOperators.GREATER_THAN_EQ,
+                p);
     }
 
     @Override
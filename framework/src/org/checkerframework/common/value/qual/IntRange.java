@@ -0,0 +1,27 @@
+package org.checkerframework.common.value.qual;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.checkerframework.framework.qual.SubtypeOf;
+
+/**
+ * An annotation indicating the range of values for a byte, short, char, int, or long type. If an
+ * expression's type has this annotation, then at run time, the expression evaluates to a value
+ * between {@code from} and {@code to}, inclusive.
+ *
+ * <p>The Constant Value Checker infers this annotation when an expression could be more values
+ * than an {@link IntVal} annotation can hold.
+ *
+ * @checker_framework.manual #constant-value-checker Constant Value Checker
+ */
+@SubtypeOf({UnknownVal.class})
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE_PARAMETER, ElementType.TYPE_USE})
+public @interface IntRange {
+    /** The smallest value in the range, inclusive. */
+    long from() default Long.MIN_VALUE;
+    /** The largest value in the range, inclusive. */
+    long to() default Long.MAX_VALUE;
+}
@@ -55,7 +55,41 @@ public class NumberUtils {
         }
     }
 
-    private static TypeKind unBoxPrimative(TypeMirror type) {
+    /** Returns true if type is byte, short, char, int, or long, or one of their boxed types. */
+    public static boolean isIntegral(TypeMirror type) {
+        switch (unBoxPrimative(type)) {
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+            case LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Converts range to type, which must be integral; see {@link #isIntegral}. */
+    public static Range castRange(TypeMirror type, Range range) {
+        TypeKind typeKind = unBoxPrimative(type);
+        switch (typeKind) {
+            case BYTE:
+                return range.byteRange();
+            case SHORT:
+                return range.shortRange();
+            case CHAR:
+                return range.charRange();
+            case INT:
+                return range.intRange();
+            case LONG:
+                return range;
+            default:
+                throw new UnsupportedOperationException(typeKind.toString());
+        }
+    }
+
+    /** Returns the kind of type, or of its primitive type if it is a boxed type. */
+    public static TypeKind unBoxPrimative(TypeMirror type) {
         if (type.getKind() == TypeKind.DECLARED) {
             String stringType = TypesUtils.getQualifiedName((DeclaredType) type).toString();
 
@@ -0,0 +1,413 @@
+package org.checkerframework.common.value.util;
+
+import java.math.BigInteger;
+
+/**
+ * The integers from {@code from} to {@code to}, inclusive, as used by the {@link
+ * org.checkerframework.common.value.qual.IntRange} annotation.
+ *
+ * <p>The arithmetic operations compute a range that contains the result of the operation for every
+ * pair of values in the operand ranges, from the bounds of the operands alone. They are done on
+ * {@code long} values; a result that might overflow {@code long} is {@link #EVERYTHING}. Use {@link
+ * #intRange()} and the similar methods to convert a result to a narrower type.
+ */
+public class Range {
+
+    /** The smallest value in the range. */
+    public final long from;
+
+    /** The largest value in the range. */
+    public final long to;
+
+    /** The range of all {@code long} values. */
+    public static final Range EVERYTHING = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    /** The empty range. */
+    public static final Range NOTHING = new Range(Long.MAX_VALUE, Long.MIN_VALUE);
+
+    private static final Range INT_EVERYTHING = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    private static final Range SHORT_EVERYTHING = new Range(Short.MIN_VALUE, Short.MAX_VALUE);
+    private static final Range BYTE_EVERYTHING = new Range(Byte.MIN_VALUE, Byte.MAX_VALUE);
+    private static final Range CHAR_EVERYTHING =
+            new Range(Character.MIN_VALUE, Character.MAX_VALUE);
+
+    /**
+     * The bounds that {@link #widen} may choose: zero and the bounds of the integral types. The
+     * bounds of the int and long values that are less (or greater) than some other value are also
+     * included, so that a counter {@code i} that is compared to an unknown {@code n} in {@code i <
+     * n} can still be incremented in the loop without overflow.
+     */
+    private static final long[] WIDENING_BOUNDS = {
+        Long.MIN_VALUE,
+        Long.MIN_VALUE + 1,
+        Integer.MIN_VALUE,
+        Integer.MIN_VALUE + 1,
+        Short.MIN_VALUE,
+        Byte.MIN_VALUE,
+        0,
+        Byte.MAX_VALUE,
+        Short.MAX_VALUE,
+        Character.MAX_VALUE,
+        Integer.MAX_VALUE - 1,
+        Integer.MAX_VALUE,
+        Long.MAX_VALUE - 1,
+        Long.MAX_VALUE
+    };
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /** Creates the range from {@code from} to {@code to}, which is empty if from &gt; to. */
+    public Range(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /** Returns the range from the smallest to the largest of the given values. */
+    public static Range fromValues(Iterable<? extends Number> values) {
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (Number value : values) {
+            from = Math.min(from, value.longValue());
+            to = Math.max(to, value.longValue());
+        }
+        return new Range(from, to);
+    }
+
+    /** Creates a range from the given bounds, or {@link #EVERYTHING} if either is not a long. */
+    private static Range fromBounds(BigInteger from, BigInteger to) {
+        if (from.compareTo(LONG_MIN) < 0 || to.compareTo(LONG_MAX) > 0) {
+            return EVERYTHING;
+        }
+        return new Range(from.longValue(), to.longValue());
+    }
+
+    /** Returns the range from the smallest to the largest of the four given bounds. */
+    private static Range fromBounds(BigInteger a, BigInteger b, BigInteger c, BigInteger d) {
+        return fromBounds(a.min(b).min(c.min(d)), a.max(b).max(c.max(d)));
+    }
+
+    public boolean isNothing() {
+        return from > to;
+    }
+
+    public boolean isEverything() {
+        return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+    }
+
+    /** Returns true if the range has more than {@code count} values. */
+    public boolean isWiderThan(long count) {
+        if (isNothing()) {
+            return false;
+        }
+        // The difference is negative if it overflows.
+        long width = to - from;
+        return width < 0 || width >= count;
+    }
+
+    public boolean contains(long value) {
+        return from <= value && value <= to;
+    }
+
+    public boolean contains(Range other) {
+        return other.isNothing() || (from <= other.from && other.to <= to);
+    }
+
+    /** Returns the smallest range that contains this range and other. */
+    public Range union(Range other) {
+        if (isNothing()) {
+            return other;
+        } else if (other.isNothing()) {
+            return this;
+        }
+        return new Range(Math.min(from, other.from), Math.max(to, other.to));
+    }
+
+    /** Returns the values that are in both this range and other. */
+    public Range intersect(Range other) {
+        Range result = new Range(Math.max(from, other.from), Math.min(to, other.to));
+        return result.isNothing() ? NOTHING : result;
+    }
+
+    /**
+     * Returns the smallest range that contains this range and whose bounds are in {@link
+     * #WIDENING_BOUNDS}. A range that is widened every time it grows can only grow a few times, so
+     * the dataflow analysis of a loop that increments a variable reaches a fixed point quickly.
+     */
+    public Range widen() {
+        if (isNothing()) {
+            return NOTHING;
+        }
+        long widenedFrom = Long.MIN_VALUE;
+        long widenedTo = Long.MAX_VALUE;
+        for (long bound : WIDENING_BOUNDS) {
+            if (bound <= from) {
+                widenedFrom = Math.max(widenedFrom, bound);
+            }
+            if (bound >= to) {
+                widenedTo = Math.min(widenedTo, bound);
+            }
+        }
+        return new Range(widenedFrom, widenedTo);
+    }
+
+    /** Returns the values of this range that are less than some value of right. */
+    public Range refineLessThan(Range right) {
+        if (right.isNothing() || right.to == Long.MIN_VALUE) {
+            return NOTHING;
+        }
+        return intersect(new Range(Long.MIN_VALUE, right.to - 1));
+    }
+
+    /** Returns the values of this range that are less than or equal to some value of right. */
+    public Range refineLessThanEq(Range right) {
+        if (right.isNothing()) {
+            return NOTHING;
+        }
+        return intersect(new Range(Long.MIN_VALUE, right.to));
+    }
+
+    /** Returns the values of this range that are greater than some value of right. */
+    public Range refineGreaterThan(Range right) {
+        if (right.isNothing() || right.from == Long.MAX_VALUE) {
+            return NOTHING;
+        }
+        return intersect(new Range(right.from + 1, Long.MAX_VALUE));
+    }
+
+    /** Returns the values of this range that are greater than or equal to some value of right. */
+    public Range refineGreaterThanEq(Range right) {
+        if (right.isNothing()) {
+            return NOTHING;
+        }
+        return intersect(new Range(right.from, Long.MAX_VALUE));
+    }
+
+    /** Returns this range converted to {@code int}, which is every int if it overflows. */
+    public Range intRange() {
+        return convertTo(INT_EVERYTHING);
+    }
+
+    /** Returns this range converted to {@code short}, which is every short if it overflows. */
+    public Range shortRange() {
+        return convertTo(SHORT_EVERYTHING);
+    }
+
+    /** Returns this range converted to {@code byte}, which is every byte if it overflows. */
+    public Range byteRange() {
+        return convertTo(BYTE_EVERYTHING);
+    }
+
+    /** Returns this range converted to {@code char}, which is every char if it overflows. */
+    public Range charRange() {
+        return convertTo(CHAR_EVERYTHING);
+    }
+
+    private Range convertTo(Range typeRange) {
+        return typeRange.contains(this) ? this : typeRange;
+    }
+
+    public Range plus(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        return fromBounds(big(from).add(big(right.from)), big(to).add(big(right.to)));
+    }
+
+    public Range minus(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        return fromBounds(big(from).subtract(big(right.to)), big(to).subtract(big(right.from)));
+    }
+
+    public Range times(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        return fromBounds(
+                big(from).multiply(big(right.from)),
+                big(from).multiply(big(right.to)),
+                big(to).multiply(big(right.from)),
+                big(to).multiply(big(right.to)));
+    }
+
+    /**
+     * Returns the range of the quotients. Dividing by zero throws an exception rather than
+     * producing a value, so zero divisors are ignored unless they are the only divisor.
+     */
+    public Range divide(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (right.from == 0 && right.to == 0) {
+            return EVERYTHING;
+        }
+        Range result = NOTHING;
+        Range negativeDivisors = right.intersect(new Range(Long.MIN_VALUE, -1));
+        if (!negativeDivisors.isNothing()) {
+            result = result.union(divideBySameSign(negativeDivisors));
+        }
+        Range positiveDivisors = right.intersect(new Range(1, Long.MAX_VALUE));
+        if (!positiveDivisors.isNothing()) {
+            result = result.union(divideBySameSign(positiveDivisors));
+        }
+        return result;
+    }
+
+    /**
+     * Divides by divisors that are all positive or all negative. The quotient is then monotonic in
+     * each operand, so its extremes are at the bounds of the operands.
+     */
+    private Range divideBySameSign(Range right) {
+        return fromBounds(
+                big(from).divide(big(right.from)),
+                big(from).divide(big(right.to)),
+                big(to).divide(big(right.from)),
+                big(to).divide(big(right.to)));
+    }
+
+    /**
+     * Returns the range of the remainders. A remainder has the sign of the dividend and is smaller
+     * in magnitude than the divisor.
+     */
+    public Range remainder(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (right.from == 0 && right.to == 0) {
+            return EVERYTHING;
+        }
+        BigInteger largestDivisor = big(right.from).abs().max(big(right.to).abs());
+        long limit = largestDivisor.subtract(BigInteger.ONE).min(LONG_MAX).longValue();
+        long resultFrom = from >= 0 ? 0 : Math.max(from, -limit);
+        long resultTo = to <= 0 ? 0 : Math.min(to, limit);
+        return new Range(resultFrom, resultTo);
+    }
+
+    /**
+     * Returns the range of the left shifts by a distance in the right range. Only distances from 0
+     * to 31 are handled, because they mean the same for {@code int} and {@code long}.
+     */
+    public Range shiftLeft(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (right.from < 0 || right.to > 31) {
+            return EVERYTHING;
+        }
+        return times(new Range(1L << right.from, 1L << right.to));
+    }
+
+    /**
+     * Returns the range of the signed right shifts by a distance in the right range. Only distances
+     * from 0 to 31 are handled, because they mean the same for {@code int} and {@code long}.
+     */
+    public Range signedShiftRight(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (right.from < 0 || right.to > 31) {
+            return EVERYTHING;
+        }
+        long a = from >> right.from;
+        long b = from >> right.to;
+        long c = to >> right.from;
+        long d = to >> right.to;
+        return new Range(
+                Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+
+    /**
+     * Returns the range of the unsigned right shifts by a distance in the right range, which is
+     * only known if this range is not negative.
+     */
+    public Range unsignedShiftRight(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (from < 0) {
+            return EVERYTHING;
+        }
+        return signedShiftRight(right);
+    }
+
+    /** A non-negative operand limits the result to the range from zero to that operand. */
+    public Range bitwiseAnd(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (from >= 0 && right.from >= 0) {
+            return new Range(0, Math.min(to, right.to));
+        } else if (from >= 0) {
+            return new Range(0, to);
+        } else if (right.from >= 0) {
+            return new Range(0, right.to);
+        }
+        return EVERYTHING;
+    }
+
+    /** Non-negative operands limit the result to the bits of the larger operand. */
+    public Range bitwiseOr(Range right) {
+        return bitwiseOrOrXor(right);
+    }
+
+    /** Non-negative operands limit the result to the bits of the larger operand. */
+    public Range bitwiseXor(Range right) {
+        return bitwiseOrOrXor(right);
+    }
+
+    private Range bitwiseOrOrXor(Range right) {
+        if (isNothing() || right.isNothing()) {
+            return NOTHING;
+        }
+        if (from < 0 || right.from < 0) {
+            return EVERYTHING;
+        }
+        long max = Math.max(to, right.to);
+        // All bits up to the highest bit of max; this is Long.MAX_VALUE if that bit is bit 62.
+        long mask = max == 0 ? 0 : (Long.highestOneBit(max) << 1) - 1;
+        return new Range(0, mask);
+    }
+
+    public Range unaryPlus() {
+        return this;
+    }
+
+    public Range unaryMinus() {
+        if (isNothing()) {
+            return NOTHING;
+        }
+        return fromBounds(big(to).negate(), big(from).negate());
+    }
+
+    public Range bitwiseComplement() {
+        if (isNothing()) {
+            return NOTHING;
+        }
+        return new Range(~to, ~from);
+    }
+
+    private static BigInteger big(long value) {
+        return BigInteger.valueOf(value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Range)) {
+            return false;
+        }
+        Range other = (Range) obj;
+        return (isNothing() && other.isNothing()) || (from == other.from && to == other.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return isNothing() ? 0 : (int) (31 * from + to);
+    }
+
+    @Override
+    public String toString() {
+        return isNothing() ? "[]" : "[" + from + ".." + to + "]";
+    }
+}
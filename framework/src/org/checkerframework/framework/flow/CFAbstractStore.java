@@ -4,7 +4,6 @@ package org.checkerframework.framework.flow;
 import org.checkerframework.checker.nullness.qual.Nullable;
 */
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,7 +20,7 @@ import org.checkerframework.dataflow.analysis.FlowExpressions.FieldAccess;
 import org.checkerframework.dataflow.analysis.FlowExpressions.LocalVariable;
 import org.checkerframework.dataflow.analysis.FlowExpressions.MethodCall;
 import org.checkerframework.dataflow.analysis.FlowExpressions.Receiver;
-import org.checkerframework.dataflow.analysis.Store;
+import org.checkerframework.dataflow.analysis.WideningStore;
 import org.checkerframework.dataflow.cfg.CFGVisualizer;
 import org.checkerframework.dataflow.cfg.node.ArrayAccessNode;
 import org.checkerframework.dataflow.cfg.node.FieldAccessNode;
@@ -33,6 +32,7 @@ import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.checkerframework.dataflow.util.PurityUtils;
 import org.checkerframework.framework.qual.MonotonicQualifier;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.util.PersistentHashMap;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.Pair;
 
@@ -55,7 +55,7 @@ import org.checkerframework.javacutil.Pair;
 // TODO: this class should be split into parts that are reusable generally, and
 // parts specific to the checker framework
 public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CFAbstractStore<V, S>>
-        implements Store<S> {
+        implements WideningStore<S> {
 
     /** The analysis class this store belongs to. */
     protected final CFAbstractAnalysis<V, S, ?> analysis;
@@ -100,24 +100,27 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
 
     public CFAbstractStore(CFAbstractAnalysis<V, S, ?> analysis, boolean sequentialSemantics) {
         this.analysis = analysis;
-        localVariableValues = new HashMap<>();
+        localVariableValues = new PersistentHashMap<>();
         thisValue = null;
-        fieldValues = new HashMap<>();
-        methodValues = new HashMap<>();
-        arrayValues = new HashMap<>();
-        classValues = new HashMap<>();
+        fieldValues = new PersistentHashMap<>();
+        methodValues = new PersistentHashMap<>();
+        arrayValues = new PersistentHashMap<>();
+        classValues = new PersistentHashMap<>();
         this.sequentialSemantics = sequentialSemantics;
     }
 
-    /** Copy constructor. */
+    /**
+     * Copy constructor. Takes constant time: the maps of the copy share their structure with the
+     * maps of {@code other}, see {@link PersistentHashMap}.
+     */
     protected CFAbstractStore(CFAbstractStore<V, S> other) {
         this.analysis = other.analysis;
-        localVariableValues = new HashMap<>(other.localVariableValues);
+        localVariableValues = new PersistentHashMap<>(other.localVariableValues);
         thisValue = other.thisValue;
-        fieldValues = new HashMap<>(other.fieldValues);
-        methodValues = new HashMap<>(other.methodValues);
-        arrayValues = new HashMap<>(other.arrayValues);
-        classValues = new HashMap<>(other.classValues);
+        fieldValues = new PersistentHashMap<>(other.fieldValues);
+        methodValues = new PersistentHashMap<>(other.methodValues);
+        arrayValues = new PersistentHashMap<>(other.arrayValues);
+        classValues = new PersistentHashMap<>(other.classValues);
         sequentialSemantics = other.sequentialSemantics;
     }
 
@@ -188,7 +191,7 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
         if (!(analysis.checker.hasOption("assumeSideEffectFree")
                 || isSideEffectFree(atypeFactory, method))) {
             // update field values
-            Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
+            Map<FlowExpressions.FieldAccess, V> newFieldValues = new PersistentHashMap<>();
             for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues.entrySet()) {
                 FlowExpressions.FieldAccess fieldAccess = e.getKey();
                 V otherVal = e.getValue();
@@ -589,13 +592,16 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      *     abstract value is not known).
      */
     protected void removeConflicting(FlowExpressions.FieldAccess fieldAccess, /*@Nullable*/ V val) {
-        Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
+        // Start from a copy, so that the information that is carried over stays shared with
+        // the stores this store was copied from.
+        Map<FlowExpressions.FieldAccess, V> newFieldValues = new PersistentHashMap<>(fieldValues);
         for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues.entrySet()) {
             FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
             V otherVal = e.getValue();
             // case 2:
             if (otherFieldAccess.getReceiver().containsModifiableAliasOf(this, fieldAccess)) {
-                continue; // remove information completely
+                newFieldValues.remove(otherFieldAccess); // remove information completely
+                continue;
             }
             // case 1:
             if (fieldAccess.getField().equals(otherFieldAccess.getField())) {
@@ -606,30 +612,27 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
                             newFieldValues.put(otherFieldAccess, newVal);
                         } else {
                             // remove information completely
+                            newFieldValues.remove(otherFieldAccess);
                         }
                         continue;
                     }
                 }
             }
             // information is save to be carried over
-            newFieldValues.put(otherFieldAccess, otherVal);
         }
         fieldValues = newFieldValues;
 
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
-            V otherVal = e.getValue();
+        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new PersistentHashMap<>(arrayValues);
+        for (ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             if (otherArrayAccess.containsModifiableAliasOf(this, fieldAccess)) {
                 // remove information completely
-                continue;
+                newArrayValues.remove(otherArrayAccess);
             }
-            newArrayValues.put(otherArrayAccess, otherVal);
         }
         arrayValues = newArrayValues;
 
         // case 3:
-        methodValues = new HashMap<>();
+        methodValues = new PersistentHashMap<>();
     }
 
     /**
@@ -652,42 +655,38 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      *     abstract value is not known).
      */
     protected void removeConflicting(FlowExpressions.ArrayAccess arrayAccess, /*@Nullable*/ V val) {
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<FlowExpressions.ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
-            V otherVal = e.getValue();
+        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new PersistentHashMap<>(arrayValues);
+        for (FlowExpressions.ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             // case 1:
             if (otherArrayAccess.containsModifiableAliasOf(this, arrayAccess)) {
-                continue; // remove information completely
+                newArrayValues.remove(otherArrayAccess); // remove information completely
+                continue;
             }
             if (canAlias(arrayAccess.getReceiver(), otherArrayAccess.getReceiver())) {
                 // TODO: one could be less strict here, and only raise the
                 // abstract value
                 // for all array expressions with potentially aliasing receivers
-                continue; // remove information completely
+                newArrayValues.remove(otherArrayAccess); // remove information completely
+                continue;
             }
             // information is save to be carried over
-            newArrayValues.put(otherArrayAccess, otherVal);
         }
         arrayValues = newArrayValues;
 
         // case 2:
-        Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
-        for (Entry<FieldAccess, V> e : fieldValues.entrySet()) {
-            FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
-            V otherVal = e.getValue();
+        Map<FlowExpressions.FieldAccess, V> newFieldValues = new PersistentHashMap<>(fieldValues);
+        for (FieldAccess otherFieldAccess : fieldValues.keySet()) {
             Receiver receiver = otherFieldAccess.getReceiver();
             if (receiver.containsModifiableAliasOf(this, arrayAccess)
                     && receiver.containsOfClass(ArrayAccess.class)) {
                 // remove information completely
-                continue;
+                newFieldValues.remove(otherFieldAccess);
             }
-            newFieldValues.put(otherFieldAccess, otherVal);
         }
         fieldValues = newFieldValues;
 
         // case 3:
-        methodValues = new HashMap<>();
+        methodValues = new PersistentHashMap<>();
     }
 
     /**
@@ -704,37 +703,32 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      * </ol>
      */
     protected void removeConflicting(LocalVariable var) {
-        Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
-        for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues.entrySet()) {
-            FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
+        Map<FlowExpressions.FieldAccess, V> newFieldValues = new PersistentHashMap<>(fieldValues);
+        for (FlowExpressions.FieldAccess otherFieldAccess : fieldValues.keySet()) {
             // case 1:
             if (otherFieldAccess.containsSyntacticEqualReceiver(var)) {
-                continue;
+                newFieldValues.remove(otherFieldAccess);
             }
-            newFieldValues.put(otherFieldAccess, e.getValue());
         }
         fieldValues = newFieldValues;
 
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<FlowExpressions.ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
+        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new PersistentHashMap<>(arrayValues);
+        for (FlowExpressions.ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             // case 2:
             if (otherArrayAccess.containsSyntacticEqualReceiver(var)) {
-                continue;
+                newArrayValues.remove(otherArrayAccess);
             }
-            newArrayValues.put(otherArrayAccess, e.getValue());
         }
         arrayValues = newArrayValues;
 
-        Map<FlowExpressions.MethodCall, V> newMethodValues = new HashMap<>();
-        for (Entry<FlowExpressions.MethodCall, V> e : methodValues.entrySet()) {
-            FlowExpressions.MethodCall otherMethodAccess = e.getKey();
+        Map<FlowExpressions.MethodCall, V> newMethodValues =
+                new PersistentHashMap<>(methodValues);
+        for (FlowExpressions.MethodCall otherMethodAccess : methodValues.keySet()) {
             // case 3:
             if (otherMethodAccess.containsSyntacticEqualReceiver(var)
                     || otherMethodAccess.containsSyntacticEqualParameter(var)) {
-                continue;
+                newMethodValues.remove(otherMethodAccess);
             }
-            newMethodValues.put(otherMethodAccess, e.getValue());
         }
         methodValues = newMethodValues;
     }
@@ -871,6 +865,42 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
         return newStore;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The result is the least upper bound, as computed by {@link #leastUpperBound}, in which the
+     * values that are in both stores are replaced by {@link CFAbstractValue#widenUpperBound}.
+     */
+    @Override
+    public S widenedUpperBound(S previous) {
+        S newStore = leastUpperBound(previous);
+        widenValues(
+                newStore.localVariableValues, localVariableValues, previous.localVariableValues);
+        widenValues(newStore.fieldValues, fieldValues, previous.fieldValues);
+        widenValues(newStore.arrayValues, arrayValues, previous.arrayValues);
+        widenValues(newStore.methodValues, methodValues, previous.methodValues);
+        widenValues(newStore.classValues, classValues, previous.classValues);
+        return newStore;
+    }
+
+    /**
+     * Replaces the values in {@code upperBounds} by the widened upper bounds of the values in
+     * {@code newValues} and {@code previousValues}.
+     */
+    private <K> void widenValues(
+            Map<K, V> upperBounds, Map<K, V> newValues, Map<K, V> previousValues) {
+        for (Entry<K, V> e : newValues.entrySet()) {
+            K key = e.getKey();
+            V previousVal = previousValues.get(key);
+            if (previousVal != null && upperBounds.containsKey(key)) {
+                V widenedVal = e.getValue().widenUpperBound(previousVal);
+                if (widenedVal != null) {
+                    upperBounds.put(key, widenedVal);
+                }
+            }
+        }
+    }
+
     /**
      * Returns true iff this {@link CFAbstractStore} contains a superset of the map entries of the
      * argument {@link CFAbstractStore}. Note that we test the entry keys and values by Java
@@ -878,34 +908,25 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      * equals predicate.
      */
     protected boolean supersetOf(CFAbstractStore<V, S> other) {
-        for (Entry<FlowExpressions.LocalVariable, V> e : other.localVariableValues.entrySet()) {
-            FlowExpressions.LocalVariable key = e.getKey();
-            if (!localVariableValues.containsKey(key)
-                    || !localVariableValues.get(key).equals(e.getValue())) {
-                return false;
-            }
-        }
-        for (Entry<FlowExpressions.FieldAccess, V> e : other.fieldValues.entrySet()) {
-            FlowExpressions.FieldAccess key = e.getKey();
-            if (!fieldValues.containsKey(key) || !fieldValues.get(key).equals(e.getValue())) {
-                return false;
-            }
-        }
-        for (Entry<FlowExpressions.ArrayAccess, V> e : other.arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess key = e.getKey();
-            if (!arrayValues.containsKey(key) || !arrayValues.get(key).equals(e.getValue())) {
-                return false;
-            }
-        }
-        for (Entry<MethodCall, V> e : other.methodValues.entrySet()) {
-            FlowExpressions.MethodCall key = e.getKey();
-            if (!methodValues.containsKey(key) || !methodValues.get(key).equals(e.getValue())) {
-                return false;
-            }
-        }
-        for (Entry<FlowExpressions.ClassName, V> e : other.classValues.entrySet()) {
-            FlowExpressions.ClassName key = e.getKey();
-            if (!classValues.containsKey(key) || !classValues.get(key).equals(e.getValue())) {
+        return containsAllEntries(localVariableValues, other.localVariableValues)
+                && containsAllEntries(fieldValues, other.fieldValues)
+                && containsAllEntries(arrayValues, other.arrayValues)
+                && containsAllEntries(methodValues, other.methodValues)
+                && containsAllEntries(classValues, other.classValues);
+    }
+
+    /**
+     * Returns true iff {@code map} contains all entries of {@code other}, with equal values. If
+     * both maps are {@link PersistentHashMap}s, the parts they share are not compared.
+     */
+    private static <K, V> boolean containsAllEntries(Map<K, V> map, Map<K, V> other) {
+        if (map instanceof PersistentHashMap && other instanceof PersistentHashMap) {
+            return ((PersistentHashMap<K, V>) map)
+                    .containsAllEntries((PersistentHashMap<K, V>) other);
+        }
+        for (Entry<K, V> e : other.entrySet()) {
+            K key = e.getKey();
+            if (!map.containsKey(key) || !map.get(key).equals(e.getValue())) {
                 return false;
             }
         }
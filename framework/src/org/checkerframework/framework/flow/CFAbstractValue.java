@@ -318,6 +318,19 @@ public abstract class CFAbstractValue<V extends CFAbstractValue<V>> implements A
 
     @Override
     public V leastUpperBound(/*@Nullable*/ V other) {
+        return upperBound(other, false);
+    }
+
+    /**
+     * Returns an upper bound of this value and previous, the value at a loop header so far, for
+     * {@link CFAbstractStore#widenedUpperBound}. The qualifiers are merged with {@link
+     * QualifierHierarchy#widenedUpperBound}.
+     */
+    public V widenUpperBound(/*@Nullable*/ V previous) {
+        return upperBound(previous, true);
+    }
+
+    private V upperBound(/*@Nullable*/ V other, boolean shouldWiden) {
         if (other == null) {
             @SuppressWarnings("unchecked")
             V v = (V) this;
@@ -336,7 +349,8 @@ public abstract class CFAbstractValue<V extends CFAbstractValue<V>> implements A
                         other.getUnderlyingType(),
                         this.getAnnotations(),
                         other.getAnnotations(),
-                        lub);
+                        lub,
+                        shouldWiden);
         lubVisitor.visit();
         return analysis.createAbstractValue(lub, lubTypeMirror);
     }
@@ -345,22 +359,31 @@ public abstract class CFAbstractValue<V extends CFAbstractValue<V>> implements A
 
         Set<AnnotationMirror> lubSet;
 
+        /** Whether to widen the annotations of a, the new value, and b, the previous value. */
+        boolean shouldWiden;
+
         public LubVisitor(
                 TypeMirror result,
                 TypeMirror aTypeMirror,
                 TypeMirror bTypeMirror,
                 Set<AnnotationMirror> aSet,
                 Set<AnnotationMirror> bSet,
-                Set<AnnotationMirror> lubSet) {
+                Set<AnnotationMirror> lubSet,
+                boolean shouldWiden) {
             super(result, aTypeMirror, bTypeMirror, aSet, bSet);
             this.lubSet = lubSet;
+            this.shouldWiden = shouldWiden;
         }
 
         @Override
         protected void visitAnnotationExistInBothSets(
                 AnnotationMirror a, AnnotationMirror b, AnnotationMirror top) {
             QualifierHierarchy hierarchy = analysis.getTypeFactory().getQualifierHierarchy();
-            lubSet.add(hierarchy.leastUpperBound(a, b));
+            if (shouldWiden) {
+                lubSet.add(hierarchy.widenedUpperBound(a, b));
+            } else {
+                lubSet.add(hierarchy.leastUpperBound(a, b));
+            }
         }
 
         @Override
@@ -0,0 +1,500 @@
+package org.checkerframework.framework.source;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.ExecutableElement;
+import javax.tools.Diagnostic;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.javacutil.ElementUtils;
+import org.checkerframework.javacutil.TreeUtils;
+
+/**
+ * Measures where a checker spends its time, for the {@code -Aprofile} option. The work of a
+ * checker is divided into the {@link Phase}s; for each phase, the profiler records the wall time,
+ * the CPU time, and the bytes allocated by the compiler thread, both per compilation unit and per
+ * method.
+ *
+ * <p>The phases nest: for example, the tree annotators run during dataflow analysis, and dataflow
+ * analysis runs while the visitor checks a class. The time is charged to the innermost phase only,
+ * so that the numbers of all phases add up to the time the checkers took. Work that happens outside
+ * of a compilation unit, such as parsing the stub files when a checker is initialized, is charged
+ * to a unit named {@value #INITIALIZATION}. Work on a method is the construction and analysis of
+ * its control flow graph, and the checks of the visitor in its body.
+ *
+ * <p>At the end of type-checking, {@link #writeReport} writes the numbers of every compilation
+ * unit and of the slowest methods, with the sizes of their control flow graphs, as JSON or, if
+ * the file name given to {@code -Aprofile} ends with {@code .csv}, as CSV. The number of methods
+ * is given by the {@code -AprofileMethods} option. All times are in nanoseconds.
+ *
+ * <p>All checkers run by a compound checker share the profiler of that checker.
+ */
+public class CheckerProfiler {
+
+    /** A part of the work of a checker. */
+    public enum Phase {
+        /** Parsing the stub files. */
+        STUB_PARSING("stubParsing"),
+        /** Loading the qualifiers of a checker with the {@code AnnotationClassLoader}. */
+        ANNOTATION_LOADING("annotationLoading"),
+        /** Building control flow graphs. */
+        CFG_CONSTRUCTION("cfgConstruction"),
+        /** Running the dataflow analysis on control flow graphs. */
+        DATAFLOW("dataflow"),
+        /** Running the tree annotators, type annotators, and defaults on a tree. */
+        TREE_ANNOTATION("treeAnnotation"),
+        /** The checks of the visitor, and all other work on a compilation unit. */
+        TYPE_CHECKING("typeChecking");
+
+        /** The name of the phase in the report. */
+        private final String reportName;
+
+        Phase(String reportName) {
+            this.reportName = reportName;
+        }
+    }
+
+    /** The name of the unit that work outside of a compilation unit is charged to. */
+    public static final String INITIALIZATION = "(initialization)";
+
+    /** The number of methods in the report if the profileMethods option is not given. */
+    private static final int DEFAULT_REPORT_METHODS = 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SourceChecker checker;
+
+    /** The file to write the report to, or null to write it to standard output. */
+    private final File reportFile;
+
+    /** The number of methods in the report. */
+    private final int reportMethods;
+
+    private final ThreadMXBean threads;
+
+    /** Whether the CPU time of the current thread can be measured. */
+    private final boolean measureCpu;
+
+    /** The bean that measures allocations, or null if they cannot be measured. */
+    private final com.sun.management.ThreadMXBean allocations;
+
+    /** The phases that have been entered and not yet exited; the innermost is first. */
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private final Counters initialization = new Counters(INITIALIZATION, null);
+    private final Map<CompilationUnitTree, Counters> units = new LinkedHashMap<>();
+    private final Map<MethodTree, Counters> methods = new HashMap<>();
+
+    /** The measurements when the innermost phase was last charged. */
+    private long lastWall;
+
+    private long lastCpu;
+    private long lastAllocated;
+
+    /** Whether the report has been written. */
+    private boolean reported = false;
+
+    /**
+     * Creates a profiler for checker.
+     *
+     * @param checker the checker whose options configure the profiler
+     * @param reportFile the file to write the report to, or null to write it to standard output
+     */
+    public CheckerProfiler(SourceChecker checker, File reportFile) {
+        this.checker = checker;
+        this.reportFile = reportFile;
+        int methodCount = DEFAULT_REPORT_METHODS;
+        if (checker.hasOption("profileMethods")) {
+            try {
+                methodCount = Integer.parseInt(checker.getOption("profileMethods"));
+            } catch (NumberFormatException e) {
+                checker.message(
+                        Diagnostic.Kind.WARNING,
+                        "The profileMethods option must be a number, but was "
+                                + checker.getOption("profileMethods"));
+            }
+        }
+        this.reportMethods = methodCount;
+
+        this.threads = ManagementFactory.getThreadMXBean();
+        this.measureCpu = threads.isCurrentThreadCpuTimeSupported();
+        if (measureCpu && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            if (!allocations.isThreadAllocatedMemorySupported()) {
+                allocations = null;
+            } else if (!allocations.isThreadAllocatedMemoryEnabled()) {
+                allocations.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.allocations = allocations;
+    }
+
+    /**
+     * Starts a phase of the current compilation unit and method. Must be paired with {@link #exit},
+     * except if an exception ends the compilation unit.
+     */
+    public void enter(Phase phase) {
+        charge();
+        Frame outer = frames.peekFirst();
+        if (outer == null) {
+            frames.addFirst(new Frame(phase, initialization, null, false));
+        } else {
+            frames.addFirst(new Frame(phase, outer.unit, outer.method, false));
+        }
+    }
+
+    /** Starts type-checking root. Must be paired with {@link #exitUnit}. */
+    public void enterUnit(CompilationUnitTree root) {
+        charge();
+        Counters unit = units.get(root);
+        if (unit == null) {
+            unit = new Counters(root.getSourceFile().getName(), null);
+            units.put(root, unit);
+        }
+        frames.addFirst(new Frame(Phase.TYPE_CHECKING, unit, null, true));
+    }
+
+    /**
+     * Ends type-checking the current compilation unit, and every phase and method in it that an
+     * exception did not let end.
+     */
+    public void exitUnit() {
+        charge();
+        while (!frames.removeFirst().isUnit) {
+            // Keep going.
+        }
+    }
+
+    /**
+     * Starts work on method, in the current phase and compilation unit. Must be paired with {@link
+     * #exit}, except if an exception ends the compilation unit.
+     */
+    public void enterMethod(MethodTree method) {
+        charge();
+        Frame outer = frames.peekFirst();
+        Phase phase = outer == null ? Phase.TYPE_CHECKING : outer.phase;
+        Counters unit = outer == null ? initialization : outer.unit;
+        Counters counters = methods.get(method);
+        if (counters == null) {
+            counters = new Counters(getMethodName(method), unit);
+            methods.put(method, counters);
+        }
+        frames.addFirst(new Frame(phase, unit, counters, false));
+    }
+
+    /** Ends the innermost phase or method that was started. */
+    public void exit() {
+        charge();
+        frames.removeFirst();
+    }
+
+    /** Records the size of the control flow graph of the current method. */
+    public void recordCfg(ControlFlowGraph cfg) {
+        Frame current = frames.peekFirst();
+        if (current == null || current.method == null) {
+            return;
+        }
+        // The checkers of a compound checker build the same graph.
+        current.method.cfgBlocks = Math.max(current.method.cfgBlocks, cfg.getBlockCount());
+        current.method.cfgNodes = Math.max(current.method.cfgNodes, cfg.getNodeCount());
+    }
+
+    /** Charges the time since the last call to the innermost phase. */
+    private void charge() {
+        long wall = System.nanoTime();
+        long cpu = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+        long allocated =
+                allocations == null
+                        ? 0
+                        : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+        Frame current = frames.peekFirst();
+        if (current != null) {
+            current.unit.add(
+                    current.phase, wall - lastWall, cpu - lastCpu, allocated - lastAllocated);
+            if (current.method != null) {
+                current.method.add(
+                        current.phase, wall - lastWall, cpu - lastCpu, allocated - lastAllocated);
+            }
+        }
+        lastWall = wall;
+        lastCpu = cpu;
+        lastAllocated = allocated;
+    }
+
+    private static String getMethodName(MethodTree method) {
+        ExecutableElement elt = TreeUtils.elementFromDeclaration(method);
+        return ElementUtils.getQualifiedClassName(elt) + "." + elt;
+    }
+
+    /**
+     * Writes the report, unless it has been written already. Called when type-checking is over, or
+     * at JVM shutdown if the compilation issued errors.
+     */
+    public void writeReport() {
+        if (reported) {
+            return;
+        }
+        reported = true;
+
+        List<Counters> unitList = new ArrayList<>();
+        if (initialization.getTotal(Measure.WALL) != 0) {
+            unitList.add(initialization);
+        }
+        unitList.addAll(units.values());
+        List<Counters> methodList = new ArrayList<>(methods.values());
+        Collections.sort(
+                methodList,
+                new Comparator<Counters>() {
+                    @Override
+                    public int compare(Counters c1, Counters c2) {
+                        return Long.compare(
+                                c2.getTotal(Measure.WALL), c1.getTotal(Measure.WALL));
+                    }
+                });
+        if (methodList.size() > reportMethods) {
+            methodList = methodList.subList(0, Math.max(reportMethods, 0));
+        }
+
+        try {
+            PrintWriter out;
+            if (reportFile == null) {
+                out = new PrintWriter(new OutputStreamWriter(System.out, UTF_8));
+            } else {
+                out =
+                        new PrintWriter(
+                                new OutputStreamWriter(new FileOutputStream(reportFile), UTF_8));
+            }
+            try {
+                if (reportFile != null && reportFile.getName().endsWith(".csv")) {
+                    writeCsv(out, unitList, methodList);
+                } else {
+                    writeJson(out, unitList, methodList);
+                }
+            } finally {
+                if (reportFile == null) {
+                    out.flush();
+                } else {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            checker.message(
+                    Diagnostic.Kind.WARNING,
+                    "Could not write the profile to " + reportFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes one row per unit or method and phase, with the columns {@code
+     * scope,name,unit,phase,wallNanos,cpuNanos,allocatedBytes,cfgBlocks,cfgNodes}.
+     */
+    private void writeCsv(PrintWriter out, List<Counters> unitList, List<Counters> methodList) {
+        out.println("scope,name,unit,phase,wallNanos,cpuNanos,allocatedBytes,cfgBlocks,cfgNodes");
+        for (Counters unit : unitList) {
+            writeCsvRows(out, "unit", unit);
+        }
+        for (Counters method : methodList) {
+            writeCsvRows(out, "method", method);
+        }
+    }
+
+    private void writeCsvRows(PrintWriter out, String scope, Counters counters) {
+        for (Phase phase : Phase.values()) {
+            if (counters.get(phase, Measure.WALL) == 0) {
+                continue;
+            }
+            out.print(scope);
+            out.print(',');
+            out.print(csvString(counters.name));
+            out.print(',');
+            out.print(counters.unit == null ? "" : csvString(counters.unit.name));
+            out.print(',');
+            out.print(phase.reportName);
+            for (Measure measure : Measure.values()) {
+                out.print(',');
+                out.print(counters.get(phase, measure));
+            }
+            out.print(',');
+            out.print(counters.unit == null || counters.cfgBlocks < 0 ? "" : counters.cfgBlocks);
+            out.print(',');
+            out.println(counters.unit == null || counters.cfgNodes < 0 ? "" : counters.cfgNodes);
+        }
+    }
+
+    private static String csvString(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Writes an object with the checker, the totals per phase, the numbers of every unit, and the
+     * numbers and control flow graph sizes of the slowest methods.
+     */
+    private void writeJson(PrintWriter out, List<Counters> unitList, List<Counters> methodList) {
+        Counters total = new Counters("total", null);
+        for (Counters unit : unitList) {
+            total.addAll(unit);
+        }
+        out.println("{");
+        out.println("  \"checker\": " + jsonString(checker.getClass().getName()) + ",");
+        out.println("  \"total\": " + jsonPhases(total) + ",");
+        out.println("  \"units\": [");
+        for (int i = 0; i < unitList.size(); i++) {
+            Counters unit = unitList.get(i);
+            out.print("    {\"name\": " + jsonString(unit.name));
+            out.print(", \"phases\": " + jsonPhases(unit) + "}");
+            out.println(i < unitList.size() - 1 ? "," : "");
+        }
+        out.println("  ],");
+        out.println("  \"slowestMethods\": [");
+        for (int i = 0; i < methodList.size(); i++) {
+            Counters method = methodList.get(i);
+            out.print("    {\"name\": " + jsonString(method.name));
+            out.print(", \"unit\": " + jsonString(method.unit.name));
+            out.print(", \"cfgBlocks\": " + Math.max(method.cfgBlocks, 0));
+            out.print(", \"cfgNodes\": " + Math.max(method.cfgNodes, 0));
+            out.print(", \"phases\": " + jsonPhases(method) + "}");
+            out.println(i < methodList.size() - 1 ? "," : "");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    /** Returns a JSON object that maps the name of each phase to its measurements. */
+    private static String jsonPhases(Counters counters) {
+        StringBuilder sb = new StringBuilder("{");
+        for (Phase phase : Phase.values()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append('"').append(phase.reportName).append("\": {");
+            for (Measure measure : Measure.values()) {
+                if (measure.ordinal() > 0) {
+                    sb.append(", ");
+                }
+                sb.append('"').append(measure.reportName).append("\": ");
+                sb.append(counters.get(phase, measure));
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /** A quantity that is measured for each phase. */
+    private enum Measure {
+        WALL("wallNanos"),
+        CPU("cpuNanos"),
+        ALLOCATED("allocatedBytes");
+
+        /** The name of the measure in the report. */
+        private final String reportName;
+
+        Measure(String reportName) {
+            this.reportName = reportName;
+        }
+    }
+
+    /** The measurements of a compilation unit or a method, per phase. */
+    private static class Counters {
+        final String name;
+
+        /** The compilation unit of a method; null for a compilation unit. */
+        final Counters unit;
+
+        /** The values, indexed by phase and then by measure. */
+        final long[][] values = new long[Phase.values().length][Measure.values().length];
+
+        /** The largest number of blocks and nodes of a control flow graph of a method. */
+        int cfgBlocks = -1;
+
+        int cfgNodes = -1;
+
+        Counters(String name, Counters unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        void add(Phase phase, long wall, long cpu, long allocated) {
+            long[] phaseValues = values[phase.ordinal()];
+            phaseValues[Measure.WALL.ordinal()] += wall;
+            phaseValues[Measure.CPU.ordinal()] += cpu;
+            phaseValues[Measure.ALLOCATED.ordinal()] += allocated;
+        }
+
+        void addAll(Counters other) {
+            for (int i = 0; i < values.length; i++) {
+                for (int j = 0; j < values[i].length; j++) {
+                    values[i][j] += other.values[i][j];
+                }
+            }
+        }
+
+        long get(Phase phase, Measure measure) {
+            return values[phase.ordinal()][measure.ordinal()];
+        }
+
+        long getTotal(Measure measure) {
+            long total = 0;
+            for (long[] phaseValues : values) {
+                total += phaseValues[measure.ordinal()];
+            }
+            return total;
+        }
+    }
+
+    /** A phase that has been entered, with the unit and method that its time is charged to. */
+    private static class Frame {
+        final Phase phase;
+        final Counters unit;
+
+        /** The method, or null if the work is not on a method. */
+        final Counters method;
+
+        /** Whether this frame was started by {@link #enterUnit}. */
+        final boolean isUnit;
+
+        Frame(Phase phase, Counters unit, Counters method, boolean isUnit) {
+            this.phase = phase;
+            this.unit = unit;
+            this.method = method;
+            this.isUnit = isUnit;
+        }
+    }
+}
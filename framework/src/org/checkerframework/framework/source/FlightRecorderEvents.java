@@ -0,0 +1,244 @@
+package org.checkerframework.framework.source;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.checkerframework.javacutil.ErrorReporter;
+
+/**
+ * Emits Java Flight Recorder events for the work of the checkers, for the {@code
+ * -AflightRecorder} option, so that a recording of a build shows which classes, methods, and stub
+ * files the checkers spent their time on. The events are described by {@link EventKind}; all of
+ * them are in the category "Checker Framework" and have a field for the checker.
+ *
+ * <p>The Checker Framework is compiled for Java 7, so it cannot declare subclasses of {@code
+ * jdk.jfr.Event}. Instead, the event types are created when the checker is initialized, with
+ * {@code jdk.jfr.EventFactory} through reflection. That requires a JVM with the {@code jdk.jfr}
+ * API: Java 11 and later, or Java 8 from update 262. On other JVMs the option is ignored with a
+ * warning.
+ *
+ * <p>An event is only created if a recording has enabled its type, and the events do not record
+ * stack traces, so that the option is cheap enough to leave on. All checkers run by a compound
+ * checker share the events of that checker.
+ */
+public class FlightRecorderEvents {
+
+    /** The kinds of events, with their fields after the checker field. */
+    public enum EventKind {
+        /** The type-checking of a top-level class by {@link SourceChecker#typeProcess}. */
+        TYPE_PROCESS(
+                "TypeProcess",
+                "Type-Check Class",
+                new Field(String.class, "file", "Source File"),
+                new Field(String.class, "className", "Class")),
+        /** The checks of the visitor in a class, with the cache statistics of its type factory. */
+        CLASS_CHECK(
+                "ClassCheck",
+                "Visit Class",
+                new Field(String.class, "className", "Class"),
+                new Field(int.class, "subtypeCacheHits", "Subtype Cache Hits"),
+                new Field(int.class, "subtypeCacheMisses", "Subtype Cache Misses"),
+                new Field(int.class, "inferenceCacheHits", "Inference Cache Hits"),
+                new Field(int.class, "inferenceCacheMisses", "Inference Cache Misses")),
+        /** The construction of a control flow graph. */
+        CFG_CONSTRUCTION(
+                "CFGConstruction",
+                "Build Control Flow Graph",
+                new Field(String.class, "className", "Class"),
+                new Field(String.class, "methodName", "Method"),
+                new Field(int.class, "cfgBlocks", "Blocks"),
+                new Field(int.class, "cfgNodes", "Nodes")),
+        /** The dataflow analysis of a control flow graph. */
+        FLOW_ANALYSIS(
+                "FlowAnalysis",
+                "Flow Analysis",
+                new Field(String.class, "className", "Class"),
+                new Field(String.class, "methodName", "Method"),
+                new Field(int.class, "cfgBlocks", "Blocks"),
+                new Field(int.class, "worklistIterations", "Worklist Iterations")),
+        /** The parsing of a stub file, or of the declarations of one type in it. */
+        STUB_PARSING(
+                "StubParsing",
+                "Parse Stub File",
+                new Field(String.class, "stubFile", "Stub File"),
+                new Field(String.class, "typeName", "Type"));
+
+        /** The name of the event type, after the prefix {@code org.checkerframework.}. */
+        private final String name;
+
+        private final String label;
+
+        private final List<Field> fields;
+
+        EventKind(String name, String label, Field... fields) {
+            this.name = name;
+            this.label = label;
+            this.fields = Arrays.asList(fields);
+        }
+    }
+
+    /** A field of an event, in addition to the checker. */
+    private static class Field {
+        final Class<?> type;
+        final String name;
+        final String label;
+
+        Field(Class<?> type, String name, String label) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    /** The {@code jdk.jfr.EventFactory} of each kind, by ordinal. */
+    private final Object[] factories;
+
+    /** The {@code jdk.jfr.EventType} of each kind, by ordinal. */
+    private final Object[] eventTypes;
+
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method set;
+    private final Method commit;
+
+    /**
+     * Returns the events for checker, or null if the JVM does not support custom Java Flight
+     * Recorder events, in which case a warning is issued.
+     */
+    public static FlightRecorderEvents create(SourceChecker checker) {
+        try {
+            return new FlightRecorderEvents();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            checker.message(
+                    Diagnostic.Kind.WARNING,
+                    "The flightRecorder option is ignored because this JVM does not support "
+                            + "custom Java Flight Recorder events");
+            return null;
+        }
+    }
+
+    /** Creates and registers the event types. */
+    private FlightRecorderEvents() throws ClassNotFoundException, NoSuchMethodException {
+        Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+        Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> newAnnotationElement =
+                annotationElementClass.getConstructor(Class.class, Object.class);
+        Constructor<?> newValueDescriptor =
+                valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+        Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+        Method getEventType = eventFactoryClass.getMethod("getEventType");
+
+        this.newEvent = eventFactoryClass.getMethod("newEvent");
+        this.isEnabled = eventTypeClass.getMethod("isEnabled");
+        this.begin = eventClass.getMethod("begin");
+        this.end = eventClass.getMethod("end");
+        this.shouldCommit = eventClass.getMethod("shouldCommit");
+        this.set = eventClass.getMethod("set", int.class, Object.class);
+        this.commit = eventClass.getMethod("commit");
+
+        EventKind[] kinds = EventKind.values();
+        this.factories = new Object[kinds.length];
+        this.eventTypes = new Object[kinds.length];
+        try {
+            for (EventKind kind : kinds) {
+                List<Object> annotations = new ArrayList<>();
+                annotations.add(
+                        newAnnotation(
+                                newAnnotationElement,
+                                "jdk.jfr.Name",
+                                "org.checkerframework." + kind.name));
+                annotations.add(newAnnotation(newAnnotationElement, "jdk.jfr.Label", kind.label));
+                annotations.add(
+                        newAnnotation(
+                                newAnnotationElement,
+                                "jdk.jfr.Category",
+                                new String[] {"Checker Framework"}));
+                annotations.add(newAnnotation(newAnnotationElement, "jdk.jfr.StackTrace", false));
+
+                List<Field> fields = new ArrayList<>();
+                fields.add(new Field(String.class, "checker", "Checker"));
+                fields.addAll(kind.fields);
+                List<Object> descriptors = new ArrayList<>();
+                for (Field field : fields) {
+                    descriptors.add(
+                            newValueDescriptor.newInstance(
+                                    field.type,
+                                    field.name,
+                                    Collections.singletonList(
+                                            newAnnotation(
+                                                    newAnnotationElement,
+                                                    "jdk.jfr.Label",
+                                                    field.label))));
+                }
+
+                Object factory = create.invoke(null, annotations, descriptors);
+                factories[kind.ordinal()] = factory;
+                eventTypes[kind.ordinal()] = getEventType.invoke(factory);
+            }
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            ErrorReporter.errorAbort("Could not create the Java Flight Recorder event types", e);
+        }
+    }
+
+    private static Object newAnnotation(
+            Constructor<?> newAnnotationElement, String annotationName, Object value)
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException,
+                    InvocationTargetException {
+        return newAnnotationElement.newInstance(Class.forName(annotationName), value);
+    }
+
+    /**
+     * Starts an event of the given kind, if a recording has enabled its type. Must be followed by
+     * {@link #commit} with the same event.
+     *
+     * @return the event, or null if it is not recorded
+     */
+    public Object begin(EventKind kind) {
+        try {
+            if (!(Boolean) isEnabled.invoke(eventTypes[kind.ordinal()])) {
+                return null;
+            }
+            Object event = newEvent.invoke(factories[kind.ordinal()]);
+            begin.invoke(event);
+            return event;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            ErrorReporter.errorAbort("Could not begin a Java Flight Recorder event", e);
+            return null; // dead code
+        }
+    }
+
+    /**
+     * Ends event and commits it, if its duration meets the threshold of the recording.
+     *
+     * @param event the result of {@link #begin}, or null
+     * @param values the values of the fields of the event, starting with the checker
+     */
+    public void commit(/*@Nullable*/ Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            end.invoke(event);
+            if (!(Boolean) shouldCommit.invoke(event)) {
+                return;
+            }
+            for (int i = 0; i < values.length; i++) {
+                set.invoke(event, i, values[i]);
+            }
+            commit.invoke(event);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            ErrorReporter.errorAbort("Could not commit a Java Flight Recorder event", e);
+        }
+    }
+}
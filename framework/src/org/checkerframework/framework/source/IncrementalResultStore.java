@@ -0,0 +1,768 @@
+package org.checkerframework.framework.source;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.JCDiagnostic.SimpleDiagnosticPosition;
+import com.sun.tools.javac.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.framework.qual.FromByteCode;
+import org.checkerframework.framework.qual.FromStubFile;
+import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.type.visitor.AnnotatedTypeScanner;
+import org.checkerframework.javacutil.AnnotationUtils;
+
+/**
+ * Stores the results of type-checking each compilation unit across compiler invocations, so that a
+ * compilation unit is not type-checked again if neither its source nor any declaration that its
+ * type-checking depended on has changed. It is enabled with the {@code -AincrementalCheck=dir}
+ * option.
+ *
+ * <p>While a compilation unit is type-checked, the store records its dependencies and the
+ * diagnostics that the checkers issue for it. The dependencies are the declarations outside of the
+ * compilation unit whose annotated types or declaration annotations a type factory looked up with
+ * {@link AnnotatedTypeFactory#fromElement(Element)} or {@link
+ * AnnotatedTypeFactory#getDeclAnnotations(Element)}; both include the entries of stub files. The
+ * package of the compilation unit and its parent packages are always dependencies, because their
+ * default qualifiers apply to the compilation unit. After the last top-level class of a
+ * compilation unit, its record is written to a file of its own: a hash of the source, a hash of the
+ * signature of every dependency, and the diagnostics.
+ *
+ * <p>In a later compilation, a compilation unit whose source has the same hash, and whose
+ * dependencies all have the same signature, is up to date: its diagnostics are replayed at their
+ * original positions instead of type-checking it again. The signature of a declaration is computed
+ * by the type factory that looked it up, and consists of its annotated type and declaration
+ * annotations; for a field also its constant value, and for a class also its supertypes and the
+ * names and types of its members, which determine how javac resolves the uses of the class. The
+ * signature of a package consists of its declaration annotations.
+ *
+ * <p>All checkers run by a compound checker share the store of that checker. A record is ignored if
+ * it was written by a different checker, with different {@code -A} options, or by a different
+ * build of the checker.
+ */
+public class IncrementalResultStore {
+
+    /** Identifies a record file. */
+    private static final int MAGIC = 0xCFC4EC01;
+
+    /** Version of the file format; must be incremented whenever the format changes. */
+    private static final int FORMAT_VERSION = 2;
+
+    /** The member key of a package dependency, which is identified by the name of the package. */
+    private static final String PACKAGE_KEY = "PACKAGE";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The processing environment. */
+    private final ProcessingEnvironment processingEnv;
+
+    /** The directory that contains the record files of the checker. */
+    private final File directory;
+
+    /** The key of the configuration; a record with a different key is ignored. */
+    private final String key;
+
+    /** The main type factory of each checker that uses this store, by checker class name. */
+    private final Map<String, AnnotatedTypeFactory> factories = new HashMap<>();
+
+    /** The compilation units that were seen in this compilation. */
+    private final Map<CompilationUnitTree, Unit> units = new HashMap<>();
+
+    /** The signatures computed in this compilation, by factory and element. */
+    private final Map<AnnotatedTypeFactory, Map<Element, String>> signatures = new HashMap<>();
+
+    /** The compilation unit that is being type-checked, or null. */
+    private Unit current = null;
+
+    /** True while signatures are computed, which must not add dependencies. */
+    private boolean computingSignatures = false;
+
+    /**
+     * Creates a store for the records of {@code checker}.
+     *
+     * @param checker the checker that owns the store and calls all other checkers that use it
+     * @param directory the directory that contains the record files
+     */
+    public IncrementalResultStore(SourceChecker checker, File directory) {
+        this.processingEnv = checker.getProcessingEnvironment();
+        this.directory = new File(directory, checker.getClass().getName());
+
+        StringBuilder keyBuilder = new StringBuilder();
+        keyBuilder.append(checker.getClass().getName());
+        keyBuilder.append('|').append(System.getProperty("java.version"));
+        keyBuilder.append('|').append(codeFingerprint(checker.getClass()));
+        // checkShard determines which compilation units are checked, not their results.
+        Map<String, String> options = new TreeMap<>(processingEnv.getOptions());
+        options.remove("checkShard");
+        keyBuilder.append('|').append(options);
+        this.key = keyBuilder.toString();
+    }
+
+    /**
+     * Registers the main type factory of a checker that uses this store. Dependencies recorded by
+     * that checker are validated with this factory.
+     *
+     * @param factory a type factory; only the first one registered for a checker is used
+     */
+    public void addFactory(AnnotatedTypeFactory factory) {
+        String checkerName = getCheckerName(factory);
+        if (!factories.containsKey(checkerName)) {
+            factories.put(checkerName, factory);
+        }
+    }
+
+    /**
+     * Starts type-checking {@code root}, or determines that it is up to date. The first call for a
+     * compilation unit reads its record and, if the compilation unit is up to date, replays its
+     * diagnostics. Later calls, by other checkers that use this store, return the same result.
+     *
+     * @param root a compilation unit
+     * @return true if {@code root} is up to date and must not be type-checked
+     */
+    public boolean startUnit(CompilationUnitTree root) {
+        Unit unit = units.get(root);
+        if (unit == null) {
+            unit = new Unit(root);
+            units.put(root, unit);
+            current = null;
+            unit.upToDate = unit.sourceHash != null && readRecord(unit);
+        }
+        current = unit.upToDate ? null : unit;
+        return unit.upToDate;
+    }
+
+    /**
+     * Records that {@code factory} looked up the annotated type or declaration annotations of
+     * {@code elt} while type-checking the current compilation unit.
+     *
+     * @param factory the type factory
+     * @param elt the element that was looked up
+     */
+    public void recordDependency(AnnotatedTypeFactory factory, Element elt) {
+        if (current == null || computingSignatures) {
+            return;
+        }
+        Set<Element> elements = current.dependencies.get(factory);
+        if (elements == null) {
+            elements = new LinkedHashSet<>();
+            current.dependencies.put(factory, elements);
+        }
+        elements.add(elt);
+    }
+
+    /**
+     * Records a diagnostic for the current compilation unit.
+     *
+     * @param kind the kind of the diagnostic
+     * @param source the tree or element that the diagnostic is reported at
+     * @param root the compilation unit that contains {@code source} if it is a tree
+     * @param message the text of the diagnostic
+     */
+    public void recordDiagnostic(
+            Diagnostic.Kind kind, Object source, CompilationUnitTree root, String message) {
+        if (current == null) {
+            return;
+        }
+        JCTree tree = null;
+        if (source instanceof Element) {
+            Trees trees = Trees.instance(processingEnv);
+            TreePath path = trees.getPath((Element) source);
+            if (path != null) {
+                root = path.getCompilationUnit();
+                tree = (JCTree) trees.getTree((Element) source);
+            }
+        } else if (source instanceof JCTree) {
+            tree = (JCTree) source;
+        }
+        if (tree == null || root != current.root) {
+            // A diagnostic without a position in the compilation unit cannot be replayed.
+            current.cacheable = false;
+            return;
+        }
+        current.diagnostics.add(new StoredDiagnostic(kind, tree.pos, message));
+    }
+
+    /**
+     * Marks the current compilation unit as not cacheable, because type-checking it did not
+     * complete normally.
+     */
+    public void unitFailed() {
+        if (current != null) {
+            current.cacheable = false;
+        }
+    }
+
+    /**
+     * Called after each top-level class of the current compilation unit was type-checked. After the
+     * last one, writes the record of the compilation unit. If the compilation stops before that,
+     * the old record, which did not match, is left in place and is rejected again next time.
+     */
+    public void finishClass() {
+        if (current == null || --current.uncheckedClasses > 0) {
+            return;
+        }
+        File file = getFile(current.root);
+        if (!current.cacheable || current.sourceHash == null) {
+            file.delete();
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        // Every compilation writes its own temporary file and moves it into place atomically,
+        // so that concurrent compilations never read a partial file or write to the same one.
+        File tmp;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        } catch (IOException e) {
+            return;
+        }
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writeRecord(out, current);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        try {
+            try {
+                Files.move(
+                        tmp.toPath(),
+                        file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, Unit unit) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, key);
+        writeString(out, unit.root.getSourceFile().toUri().toString());
+        writeString(out, unit.sourceHash);
+
+        // A checker may use more than one type factory; the signatures of all elements that any
+        // of them looked up are computed by its main factory, which also validates them.
+        Map<String, Set<Element>> elementsByChecker = new LinkedHashMap<>();
+        for (String checkerName : factories.keySet()) {
+            elementsByChecker.put(checkerName, new LinkedHashSet<Element>());
+        }
+        for (Map.Entry<AnnotatedTypeFactory, Set<Element>> entry : unit.dependencies.entrySet()) {
+            String checkerName = getCheckerName(entry.getKey());
+            Set<Element> elements = elementsByChecker.get(checkerName);
+            if (elements == null) {
+                elements = new LinkedHashSet<>();
+                elementsByChecker.put(checkerName, elements);
+            }
+            elements.addAll(entry.getValue());
+        }
+
+        List<String> dependencies = new ArrayList<>();
+        for (Map.Entry<String, Set<Element>> entry : elementsByChecker.entrySet()) {
+            AnnotatedTypeFactory factory = factories.get(entry.getKey());
+            // QualifierDefaults reads the defaults of the packages directly from the elements, so
+            // the type factory never records them.
+            Set<String> packageNames = new LinkedHashSet<>(getPackageNames(unit.root));
+            for (Element elt : entry.getValue()) {
+                if (elt.getKind() == ElementKind.PACKAGE) {
+                    packageNames.add(((PackageElement) elt).getQualifiedName().toString());
+                    continue;
+                }
+                TypeElement type = getDeclaringType(elt);
+                if (type == null || isDeclaredIn(type, unit.root)) {
+                    continue;
+                }
+                dependencies.add(entry.getKey());
+                dependencies.add(type.getQualifiedName().toString());
+                dependencies.add(elt == type ? "" : memberKey(elt));
+                dependencies.add(getSignature(factory, elt));
+            }
+            for (String packageName : packageNames) {
+                dependencies.add(entry.getKey());
+                dependencies.add(packageName);
+                dependencies.add(PACKAGE_KEY);
+                dependencies.add(getSignature(factory, packageName, PACKAGE_KEY));
+            }
+        }
+        out.writeInt(dependencies.size() / 4);
+        for (String s : dependencies) {
+            writeString(out, s);
+        }
+
+        out.writeInt(unit.diagnostics.size());
+        for (StoredDiagnostic diagnostic : unit.diagnostics) {
+            writeString(out, diagnostic.kind.name());
+            out.writeInt(diagnostic.position);
+            writeString(out, diagnostic.message);
+        }
+    }
+
+    /**
+     * Reads the record of {@code unit} and replays its diagnostics if the unit is up to date.
+     *
+     * @return true if {@code unit} is up to date
+     */
+    private boolean readRecord(Unit unit) {
+        File file = getFile(unit.root);
+        if (!file.isFile()) {
+            return false;
+        }
+        List<StoredDiagnostic> diagnostics = new ArrayList<>();
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != FORMAT_VERSION
+                    || !readString(in).equals(key)
+                    || !readString(in).equals(unit.root.getSourceFile().toUri().toString())
+                    || !readString(in).equals(unit.sourceHash)) {
+                return false;
+            }
+            int dependencyCount = in.readInt();
+            for (int i = 0; i < dependencyCount; i++) {
+                AnnotatedTypeFactory factory = factories.get(readString(in));
+                String name = readString(in);
+                String memberKey = readString(in);
+                String signature = readString(in);
+                if (factory == null || !signature.equals(getSignature(factory, name, memberKey))) {
+                    return false;
+                }
+            }
+            int diagnosticCount = in.readInt();
+            for (int i = 0; i < diagnosticCount; i++) {
+                Diagnostic.Kind kind = Diagnostic.Kind.valueOf(readString(in));
+                int position = in.readInt();
+                diagnostics.add(new StoredDiagnostic(kind, position, readString(in)));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // A corrupt or truncated record is treated like a missing one.
+            return false;
+        }
+        replay(unit.root, diagnostics);
+        return true;
+    }
+
+    /** Issues the stored diagnostics, as {@link Trees#printMessage} would have. */
+    private void replay(CompilationUnitTree root, List<StoredDiagnostic> diagnostics) {
+        Log log = Log.instance(((JavacProcessingEnvironment) processingEnv).getContext());
+        JavaFileObject oldSource = log.useSource(root.getSourceFile());
+        try {
+            for (StoredDiagnostic diagnostic : diagnostics) {
+                SimpleDiagnosticPosition pos = new SimpleDiagnosticPosition(diagnostic.position);
+                switch (diagnostic.kind) {
+                    case ERROR:
+                        log.error(pos, "proc.messager", diagnostic.message);
+                        break;
+                    case WARNING:
+                        log.warning(pos, "proc.messager", diagnostic.message);
+                        break;
+                    case MANDATORY_WARNING:
+                        log.mandatoryWarning(pos, "proc.messager", diagnostic.message);
+                        break;
+                    default:
+                        log.note(pos, "proc.messager", diagnostic.message);
+                        break;
+                }
+            }
+        } finally {
+            log.useSource(oldSource);
+        }
+    }
+
+    /**
+     * Returns the signature of the dependency identified by a name and a member key, as seen by
+     * {@code factory}, or null if there is no such declaration any more.
+     */
+    private String getSignature(AnnotatedTypeFactory factory, String name, String memberKey) {
+        if (memberKey.equals(PACKAGE_KEY)) {
+            PackageElement pkg = processingEnv.getElementUtils().getPackageElement(name);
+            // A package that does not exist has no annotations, but a package-info file may be
+            // added for it later.
+            return pkg == null ? "" : getSignature(factory, pkg);
+        }
+        Element elt = resolve(name, memberKey);
+        return elt == null ? null : getSignature(factory, elt);
+    }
+
+    /**
+     * Returns a hash of the signature of {@code elt}, as seen by {@code factory}. Signatures are
+     * computed once per compilation.
+     */
+    private String getSignature(AnnotatedTypeFactory factory, Element elt) {
+        Map<Element, String> factorySignatures = signatures.get(factory);
+        if (factorySignatures == null) {
+            factorySignatures = new HashMap<>();
+            signatures.put(factory, factorySignatures);
+        }
+        String signature = factorySignatures.get(elt);
+        if (signature != null) {
+            return signature;
+        }
+
+        boolean wasComputingSignatures = computingSignatures;
+        computingSignatures = true;
+        StringBuilder result = new StringBuilder();
+        try {
+            if (elt.getKind() != ElementKind.PACKAGE) {
+                new SignatureScanner(factory, result).visit(factory.getAnnotatedType(elt));
+            }
+            for (AnnotationMirror anno : factory.getDeclAnnotations(elt)) {
+                // Whether the markers of where an element came from are among the declaration
+                // annotations depends on the order in which elements were looked up.
+                if (!AnnotationUtils.areSameByClass(anno, FromByteCode.class)
+                        && !AnnotationUtils.areSameByClass(anno, FromStubFile.class)) {
+                    result.append('|').append(anno);
+                }
+            }
+        } finally {
+            computingSignatures = wasComputingSignatures;
+        }
+        switch (elt.getKind()) {
+            case FIELD:
+            case ENUM_CONSTANT:
+                result.append('|').append(((VariableElement) elt).getConstantValue());
+                break;
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                TypeElement type = (TypeElement) elt;
+                result.append('|').append(type.getSuperclass());
+                for (TypeMirror iface : type.getInterfaces()) {
+                    result.append(',').append(iface);
+                }
+                for (Element member : type.getEnclosedElements()) {
+                    result.append('|').append(memberKey(member));
+                    result.append(':').append(member.asType());
+                }
+                break;
+            default:
+                break;
+        }
+        signature = toHex(newDigest().digest(result.toString().getBytes(UTF_8)));
+        factorySignatures.put(elt, signature);
+        return signature;
+    }
+
+    private static String getCheckerName(AnnotatedTypeFactory factory) {
+        return factory.getContext().getChecker().getClass().getName();
+    }
+
+    /**
+     * Returns the names of the package of {@code root} and of its parent packages, whose defaults
+     * apply to {@code root}.
+     */
+    private static List<String> getPackageNames(CompilationUnitTree root) {
+        List<String> names = new ArrayList<>();
+        if (root.getPackageName() == null) {
+            return names;
+        }
+        String name = root.getPackageName().toString();
+        while (true) {
+            names.add(name);
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return names;
+            }
+            name = name.substring(0, dot);
+        }
+    }
+
+    /**
+     * Returns the class that declares {@code elt}, or {@code elt} itself if it is a class; returns
+     * null if {@code elt} cannot be a dependency. Packages are handled by {@link #writeRecord}.
+     */
+    private static TypeElement getDeclaringType(Element elt) {
+        Element type;
+        switch (elt.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                type = elt;
+                break;
+            case METHOD:
+            case CONSTRUCTOR:
+            case FIELD:
+            case ENUM_CONSTANT:
+                type = elt.getEnclosingElement();
+                break;
+            default:
+                // Parameters, local variables, and type variables are covered by the signature
+                // of the enclosing declaration.
+                return null;
+        }
+        if (!(type instanceof TypeElement) || type.asType().getKind() != TypeKind.DECLARED) {
+            // The symbols that javac uses for the primitive types in class literals, for example.
+            return null;
+        }
+        NestingKind nesting = ((TypeElement) type).getNestingKind();
+        if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS) {
+            // Only code in the same compilation unit can refer to these.
+            return null;
+        }
+        if (getOutermostType((TypeElement) type) == null) {
+            // The class that javac uses for the members of array types, for example.
+            return null;
+        }
+        if (type != elt && !type.getEnclosedElements().contains(elt)) {
+            // A synthetic member, like the field of a class literal, cannot be looked up later.
+            return null;
+        }
+        return (TypeElement) type;
+    }
+
+    /** Returns the top-level class that contains {@code type}, or null if there is none. */
+    private static TypeElement getOutermostType(TypeElement type) {
+        Element outermost = type;
+        while (outermost.getEnclosingElement() instanceof TypeElement) {
+            outermost = outermost.getEnclosingElement();
+        }
+        if (!(outermost.getEnclosingElement() instanceof PackageElement)) {
+            return null;
+        }
+        return (TypeElement) outermost;
+    }
+
+    /** Returns true if {@code type}, a result of {@link #getDeclaringType}, is in {@code root}. */
+    private static boolean isDeclaredIn(TypeElement type, CompilationUnitTree root) {
+        ClassSymbol outermost = (ClassSymbol) getOutermostType(type);
+        return outermost.sourcefile == root.getSourceFile();
+    }
+
+    /** Identifies a member within its class. */
+    private static String memberKey(Element member) {
+        return member.getKind() + " " + member;
+    }
+
+    /**
+     * Returns the element identified by a class name and a member key, or null if there is no such
+     * element any more.
+     */
+    private Element resolve(String className, String memberKey) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(className);
+        if (type == null || memberKey.isEmpty()) {
+            return type;
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (memberKey(member).equals(memberKey)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the record file of {@code root}. */
+    private File getFile(CompilationUnitTree root) {
+        byte[] uri = root.getSourceFile().toUri().toString().getBytes(UTF_8);
+        return new File(directory, toHex(newDigest().digest(uri)) + ".rec");
+    }
+
+    /**
+     * Returns a string that changes whenever the jar file that {@code checkerClass} was loaded
+     * from, or a file in the directory that it was loaded from, changes.
+     */
+    private static String codeFingerprint(Class<?> checkerClass) {
+        CodeSource codeSource = checkerClass.getProtectionDomain().getCodeSource();
+        URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location == null) {
+            return "";
+        }
+        File file;
+        try {
+            // Unlike URL.getPath(), this decodes escapes such as %20.
+            file = new File(location.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return location.toString();
+        }
+        MessageDigest digest = newDigest();
+        updateFingerprint(digest, file, "");
+        return location + ";" + toHex(digest.digest());
+    }
+
+    /**
+     * Adds the length and modification time of {@code file} to {@code digest}, or if it is a
+     * directory, those of every file in it. The modification time of a directory does not change
+     * when a file in it is rewritten.
+     *
+     * @param name the path of {@code file} relative to the directory that the checker was loaded
+     *     from
+     */
+    private static void updateFingerprint(MessageDigest digest, File file, String name) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            String entry = name + ";" + file.length() + ";" + file.lastModified() + "\n";
+            digest.update(entry.getBytes(UTF_8));
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            updateFingerprint(digest, child, name + "/" + child.getName());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** The state of a compilation unit in this compilation. */
+    private static class Unit {
+        final CompilationUnitTree root;
+
+        /** The hash of the source, or null if it could not be read. */
+        final String sourceHash;
+
+        /** True if the compilation unit is up to date and is not type-checked. */
+        boolean upToDate = false;
+
+        /** False if the results of type-checking the compilation unit must not be stored. */
+        boolean cacheable = true;
+
+        /** The number of top-level classes of the compilation unit that were not type-checked. */
+        int uncheckedClasses;
+
+        /** The elements that each type factory looked up. */
+        final Map<AnnotatedTypeFactory, Set<Element>> dependencies = new LinkedHashMap<>();
+
+        /** The diagnostics issued for the compilation unit, in order. */
+        final List<StoredDiagnostic> diagnostics = new ArrayList<>();
+
+        Unit(CompilationUnitTree root) {
+            this.root = root;
+            for (Tree decl : root.getTypeDecls()) {
+                if (decl instanceof ClassTree) {
+                    uncheckedClasses++;
+                }
+            }
+            String hash;
+            try {
+                CharSequence content = root.getSourceFile().getCharContent(true);
+                hash = toHex(newDigest().digest(content.toString().getBytes(UTF_8)));
+            } catch (IOException e) {
+                hash = null;
+            }
+            this.sourceHash = hash;
+        }
+    }
+
+    /**
+     * Appends the structure and the qualifiers of an annotated type to a signature. Other
+     * annotations are left out, because whether javac and the type factory include them depends
+     * on the order in which types were looked up.
+     */
+    private static class SignatureScanner extends AnnotatedTypeScanner<Void, Void> {
+        private final AnnotatedTypeFactory factory;
+        private final StringBuilder signature;
+
+        SignatureScanner(AnnotatedTypeFactory factory, StringBuilder signature) {
+            this.factory = factory;
+            this.signature = signature;
+        }
+
+        @Override
+        protected Void scan(AnnotatedTypeMirror type, Void p) {
+            if (type != null) {
+                signature.append(type.getKind()).append(' ');
+                for (AnnotationMirror anno : type.getAnnotations()) {
+                    if (factory.isSupportedQualifier(anno)) {
+                        signature.append(anno).append(' ');
+                    }
+                }
+                TypeMirror underlying = type.getUnderlyingType();
+                if (underlying.getKind() == TypeKind.DECLARED) {
+                    signature.append(((DeclaredType) underlying).asElement());
+                } else if (underlying.getKind() == TypeKind.TYPEVAR) {
+                    signature.append(((TypeVariable) underlying).asElement().getSimpleName());
+                }
+                signature.append(';');
+            }
+            return super.scan(type, p);
+        }
+    }
+
+    /** A diagnostic at a position in the source of a compilation unit. */
+    private static class StoredDiagnostic {
+        final Diagnostic.Kind kind;
+        final int position;
+        final String message;
+
+        StoredDiagnostic(Diagnostic.Kind kind, int position, String message) {
+            this.kind = kind;
+            this.position = position;
+            this.message = message;
+        }
+    }
+}
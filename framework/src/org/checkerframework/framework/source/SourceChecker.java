@@ -16,6 +16,7 @@ import com.sun.source.util.Trees;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Log;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
@@ -48,8 +49,10 @@ import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.framework.qual.AnnotatedFor;
+import org.checkerframework.framework.source.FlightRecorderEvents.EventKind;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.util.CFContext;
+import org.checkerframework.framework.util.CheckerDaemon;
 import org.checkerframework.framework.util.CheckerMain;
 import org.checkerframework.framework.util.OptionConfiguration;
 import org.checkerframework.javacutil.AbstractTypeProcessor;
@@ -203,6 +206,9 @@ import org.checkerframework.javacutil.TreeUtils;
     // Whether to print warnings about stub files that overwrite annotations
     // from bytecode.
     "stubWarnIfOverwritesBytecode",
+    // Parse the declarations of a type in the stub files only when the type is first used
+    // org.checkerframework.framework.type.AnnotatedTypeFactory.parseStubFilesFor(Element)
+    "stubLazyLoading",
     // Already listed above, but worth noting again in this section:
     // "useDefaultsForUncheckedCode"
 
@@ -253,6 +259,23 @@ import org.checkerframework.javacutil.TreeUtils;
     // org.checkerframework.framework.stub.StubParser.debugStubParser
     "stubDebug",
 
+    /// Parallel checking
+
+    // Type-check only the compilation units in one of several shards, given
+    // as "I/N": the units whose position among all compilation units is
+    // congruent to I modulo N. Lets N compiler processes check a program in
+    // parallel.
+    // org.checkerframework.framework.source.SourceChecker.typeProcess
+    "checkShard",
+
+    /// Incremental checking
+
+    // Store the results of type-checking each compilation unit in the given
+    // directory, and do not type-check a compilation unit again if neither
+    // its source nor the declarations it depends on have changed.
+    // org.checkerframework.framework.source.IncrementalResultStore
+    "incrementalCheck",
+
     /// Progress tracing
 
     // Output file names before checking
@@ -297,15 +320,46 @@ import org.checkerframework.javacutil.TreeUtils;
 
     /// Miscellaneous debugging options
 
-    // Whether to output resource statistics at JVM shutdown
+    // Whether to output resource statistics, including the hit rates of the
+    // subtype and type argument inference caches, at JVM shutdown
     // org.checkerframework.framework.source.SourceChecker.shutdownHook()
     "resourceStats",
 
+    // Measure the wall time, CPU time, and allocations of the phases of checking,
+    // per compilation unit and per method, and write them to the given file
+    // (JSON, or CSV if the name ends with .csv) or to standard output
+    // org.checkerframework.framework.source.CheckerProfiler
+    "profile",
+
+    // The number of slowest methods in the report of the profile option
+    // org.checkerframework.framework.source.CheckerProfiler
+    "profileMethods",
+
+    // Emit Java Flight Recorder events for the classes, methods, and stub files
+    // that the checkers work on
+    // org.checkerframework.framework.source.FlightRecorderEvents
+    "flightRecorder",
+
     // Set the cache size for caches in AnnotatedTypeFactory
     "atfCacheSize",
 
-    // Sets AnnotatedTypeFactory shouldCache to false
-    "atfDoNotCache"
+    // Sets AnnotatedTypeFactory shouldCache to false and disables the
+    // subtype cache of DefaultTypeHierarchy and the type argument inference cache
+    "atfDoNotCache",
+
+    // Disables the cache of inferred method type arguments
+    // org.checkerframework.framework.util.typeinference.DefaultTypeArgumentInference
+    "inferenceDoNotCache",
+
+    // Solves equality constraints between type variables during type argument
+    // inference by grouping them with union-find
+    // org.checkerframework.framework.util.typeinference.solver.UnionFindEqualitiesSolver
+    "inferenceUnionFind",
+
+    // Directory for the cache of annotated types of elements from bytecode that
+    // persists across compiler invocations
+    // org.checkerframework.framework.type.PersistentElementCache
+    "atfPersistentCache"
 })
 public abstract class SourceChecker extends AbstractTypeProcessor
         implements ErrorHandler, CFContext, OptionConfiguration {
@@ -802,6 +856,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor
     public void typeProcessingStart() {
         try {
             super.typeProcessingStart();
+            // Clear the static caches of an earlier compilation in the same JVM before any
+            // checker, including the subcheckers, creates its canonical annotations.
+            AnnotationUtils.clear();
             initChecker();
             if (this.messager == null) {
                 messager = processingEnv.getMessager();
@@ -812,7 +869,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor
                                 + this.getClass()
                                 + "! Please ensure your checker is properly initialized.");
             }
-            if (shouldAddShutdownHook()) {
+            if (shouldAddShutdownHook() && !inDaemon()) {
                 Runtime.getRuntime()
                         .addShutdownHook(
                                 new Thread() {
@@ -830,6 +887,33 @@ public abstract class SourceChecker extends AbstractTypeProcessor
         }
     }
 
+    /** Writes the report of the profile option, if it was given. */
+    @Override
+    public void typeProcessingOver() {
+        if (profiler != null) {
+            profiler.writeReport();
+        }
+        super.typeProcessingOver();
+    }
+
+    /**
+     * Calls {@link #shutdownHook} if the checker runs in a {@link CheckerDaemon}. The daemon runs
+     * many compilations in one JVM, so the method is not added as a JVM shutdown hook there, which
+     * would defer the reports and keep every checker and its class loader alive.
+     */
+    @Override
+    public void typeProcessingEnd() {
+        if (inDaemon() && shouldAddShutdownHook()) {
+            shutdownHook();
+        }
+        super.typeProcessingEnd();
+    }
+
+    /** Returns true if the checker runs in a {@link CheckerDaemon}. */
+    private static boolean inDaemon() {
+        return Boolean.getBoolean(CheckerDaemon.DAEMON_PROPERTY);
+    }
+
     /**
      * Initialize the checker.
      *
@@ -847,21 +931,56 @@ public abstract class SourceChecker extends AbstractTypeProcessor
 
         this.visitor = createSourceVisitor();
 
-        // TODO: hack to clear out static caches.
-        AnnotationUtils.clear();
+        initShard();
+    }
+
+    /**
+     * Reads the checkShard option, which has the form "I/N" with 0 &le; I &lt; N. If it is given,
+     * {@link #typeProcess} only type-checks the compilation units whose position among all
+     * compilation units is congruent to I modulo N. Running N compiler processes with the same
+     * arguments and the shards 0/N to (N-1)/N type-checks every compilation unit exactly once.
+     */
+    private void initShard() {
+        String shard = getOption("checkShard");
+        if (shard == null) {
+            return;
+        }
+        int slash = shard.indexOf('/');
+        int index = -1;
+        int count = 0;
+        try {
+            index = Integer.parseInt(shard.substring(0, slash));
+            count = Integer.parseInt(shard.substring(slash + 1));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            // Reported below.
+        }
+        if (index < 0 || index >= count) {
+            if (parentChecker != null) {
+                // The parent checker reports the error.
+                return;
+            }
+            messager.printMessage(
+                    javax.tools.Diagnostic.Kind.ERROR,
+                    "The checkShard option must have the form I/N with 0 <= I < N, but was "
+                            + shard);
+            return;
+        }
+        shardIndex = index;
+        shardCount = count;
     }
 
     /**
      * Return true to indicate that method {@link #shutdownHook} should be added as a shutdownHook
-     * of the JVM.
+     * of the JVM, or called at the end of the compilation in a {@link CheckerDaemon}.
      */
     protected boolean shouldAddShutdownHook() {
-        return hasOption("resourceStats");
+        return hasOption("resourceStats") || hasOption("profile");
     }
 
     /**
-     * Method that gets called exactly once at shutdown time of the JVM. Checkers can override this
-     * method to customize the behavior.
+     * Method that gets called exactly once at shutdown time of the JVM, or at the end of the
+     * compilation in a {@link CheckerDaemon}. Checkers can override this method to customize the
+     * behavior.
      */
     protected void shutdownHook() {
         if (hasOption("resourceStats")) {
@@ -870,6 +989,10 @@ public abstract class SourceChecker extends AbstractTypeProcessor
             // call the super implementations.
             printStats();
         }
+        if (profiler != null) {
+            // typeProcessingOver is not called if the compilation issued errors.
+            profiler.writeReport();
+        }
     }
 
     /** Print resource usage statistics */
@@ -893,6 +1016,80 @@ public abstract class SourceChecker extends AbstractTypeProcessor
      */
     protected int errsOnLastExit = 0;
 
+    /** The number of shards given by the checkShard option, or 1 if it is not given. */
+    private int shardCount = 1;
+
+    /** The shard of compilation units to type-check, given by the checkShard option. */
+    private int shardIndex = 0;
+
+    /** The number of compilation units that typeProcess has been called on. */
+    private int compilationUnitCount = 0;
+
+    /** Whether currentRoot belongs to the shard that is type-checked. */
+    private boolean currentRootInShard = true;
+
+    /** Whether currentRoot is up to date according to the incremental result store. */
+    private boolean currentRootUpToDate = false;
+
+    /** The store of this checker; see {@link #getIncrementalResultStore()}. */
+    private IncrementalResultStore incrementalResultStore = null;
+
+    /** The profiler of this checker; see {@link #getProfiler()}. */
+    private CheckerProfiler profiler = null;
+
+    /**
+     * Returns the profiler that measures the phases of checking, or null if the profile option
+     * was not given. A checker that is run by another checker uses the profiler of that checker.
+     */
+    public CheckerProfiler getProfiler() {
+        if (parentChecker != null) {
+            return parentChecker.getProfiler();
+        }
+        if (profiler == null && hasOption("profile")) {
+            String file = getOption("profile");
+            profiler = new CheckerProfiler(this, file == null ? null : new File(file));
+        }
+        return profiler;
+    }
+
+    /** The events of this checker; see {@link #getFlightRecorderEvents()}. */
+    private FlightRecorderEvents flightRecorderEvents = null;
+
+    /** Whether {@link #flightRecorderEvents} has been created, if possible. */
+    private boolean flightRecorderEventsCreated = false;
+
+    /**
+     * Returns the Java Flight Recorder events, or null if the flightRecorder option was not given
+     * or the JVM does not support them. A checker that is run by another checker uses the events
+     * of that checker.
+     */
+    public FlightRecorderEvents getFlightRecorderEvents() {
+        if (parentChecker != null) {
+            return parentChecker.getFlightRecorderEvents();
+        }
+        if (!flightRecorderEventsCreated && hasOption("flightRecorder")) {
+            flightRecorderEvents = FlightRecorderEvents.create(this);
+            flightRecorderEventsCreated = true;
+        }
+        return flightRecorderEvents;
+    }
+
+    /**
+     * Returns the store of type-checking results across compiler invocations, or null if the
+     * incrementalCheck option was not given. A checker that is run by another checker uses the
+     * store of that checker.
+     */
+    public IncrementalResultStore getIncrementalResultStore() {
+        if (parentChecker != null) {
+            return parentChecker.getIncrementalResultStore();
+        }
+        if (incrementalResultStore == null && hasOption("incrementalCheck")) {
+            incrementalResultStore =
+                    new IncrementalResultStore(this, new File(getOption("incrementalCheck")));
+        }
+        return incrementalResultStore;
+    }
+
     /**
      * Type-check the code with Java specifications and then runs the Checker Rule Checking visitor
      * on the processed source.
@@ -939,20 +1136,62 @@ public abstract class SourceChecker extends AbstractTypeProcessor
         }
         if (p.getCompilationUnit() != currentRoot) {
             currentRoot = p.getCompilationUnit();
-            visitor.setRoot(currentRoot);
+            currentRootInShard = compilationUnitCount++ % shardCount == shardIndex;
+            IncrementalResultStore store = getIncrementalResultStore();
+            currentRootUpToDate =
+                    currentRootInShard && store != null && store.startUnit(currentRoot);
+            if (currentRootInShard && !currentRootUpToDate) {
+                visitor.setRoot(currentRoot);
+            }
+        }
+        if (!currentRootInShard) {
+            // Another process type-checks this compilation unit; see the checkShard option.
+            return;
+        }
+        if (currentRootUpToDate) {
+            // The diagnostics of the previous compilation were replayed instead.
+            this.errsOnLastExit = log.nerrors;
+            return;
         }
 
         // Visit the attributed tree.
+        IncrementalResultStore store = getIncrementalResultStore();
+        CheckerProfiler profiler = getProfiler();
+        if (profiler != null) {
+            profiler.enterUnit(currentRoot);
+        }
+        FlightRecorderEvents events = getFlightRecorderEvents();
+        Object event = events == null ? null : events.begin(EventKind.TYPE_PROCESS);
         try {
             visitor.visit(p);
         } catch (CheckerError ce) {
             logCheckerError(ce);
+            if (store != null) {
+                store.unitFailed();
+            }
         } catch (Throwable t) {
             logCheckerError(wrapThrowableAsCheckerError("SourceChecker.typeProcess", t, p));
+            if (store != null) {
+                store.unitFailed();
+            }
         } finally {
             // Also add possibly deferred diagnostics, which will get published back in
             // AbstractTypeProcessor.
             this.errsOnLastExit = log.nerrors;
+            if (profiler != null) {
+                profiler.exitUnit();
+            }
+            if (event != null) {
+                events.commit(
+                        event,
+                        getClass().getSimpleName(),
+                        currentRoot.getSourceFile().getName(),
+                        processingEnv.getElementUtils().getBinaryName(e).toString());
+            }
+        }
+        if (store != null && parentChecker == null) {
+            // This checker runs last on the class, after all checkers that it calls.
+            store.finishClass();
         }
     }
 
@@ -1137,6 +1376,11 @@ public abstract class SourceChecker extends AbstractTypeProcessor
             messageText = messageText.replaceAll("\n", LINE_SEPARATOR);
         }
 
+        IncrementalResultStore store = getIncrementalResultStore();
+        if (store != null) {
+            store.recordDiagnostic(kind, source, currentRoot, messageText);
+        }
+
         if (source instanceof Element) {
             messager.printMessage(kind, messageText, (Element) source);
         } else if (source instanceof Tree) {
@@ -0,0 +1,434 @@
+package org.checkerframework.framework.stub;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.*;
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.checkerframework.stubparser.JavaParser;
+import org.checkerframework.stubparser.ast.IndexUnit;
+import org.checkerframework.stubparser.ast.Node;
+
+/**
+ * A precompiled, binary form of a stub file. Reading the index of a stub file is much faster than
+ * parsing the stub file with {@link JavaParser}. The index is written at build time by {@link
+ * #main(String[])} into a file next to the stub file, whose name is the name of the stub file
+ * followed by {@link #INDEX_SUFFIX}.
+ *
+ * <p>The index contains the syntax tree of the stub file, which does not depend on the checker
+ * that uses the stub file: every name is stored once in a string table, and the tree refers to
+ * names by number. It also contains the length and a checksum of the text of the stub file. An
+ * index that does not match the stub file that is actually read, e.g. because the stub file was
+ * edited after the index was built, is ignored, and the stub file is parsed instead.
+ */
+public class StubIndex {
+
+    /** The suffix that is appended to the name of a stub file to get the name of its index. */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /** The first bytes of an index file. */
+    private static final int MAGIC = 0xCF5B1D01;
+
+    /** The version of the format of index files; increment it whenever the format changes. */
+    private static final int FORMAT_VERSION = 1;
+
+    // Tags of the values in the syntax tree.
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_NODE = 1;
+    private static final byte TAG_LIST = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_ENUM = 4;
+
+    /** The fields of each class of syntax tree nodes, in the order they are stored in the index. */
+    private static final Map<Class<?>, Field[]> nodeFields = new HashMap<>();
+
+    /** This class is not instantiable; use the static methods. */
+    private StubIndex() {
+        throw new AssertionError("Class StubIndex cannot be instantiated.");
+    }
+
+    /**
+     * Writes the index of each of the given stub files into the file whose name is that of the
+     * stub file followed by {@link #INDEX_SUFFIX}.
+     *
+     * @param args the names of the stub files to index
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java StubIndex stubfile...");
+            System.exit(1);
+        }
+        for (String stubFile : args) {
+            try {
+                byte[] contents = readFully(new FileInputStream(stubFile));
+                IndexUnit index = JavaParser.parse(new ByteArrayInputStream(contents));
+                try (OutputStream out =
+                        new BufferedOutputStream(
+                                new FileOutputStream(stubFile + INDEX_SUFFIX))) {
+                    write(index, contents, out);
+                }
+            } catch (Exception e) {
+                System.err.println("StubIndex: could not index " + stubFile + ": " + e);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Reads all bytes from the given stream, and closes it.
+     *
+     * @param in the stream to read
+     * @return the contents of {@code in}
+     */
+    public static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index of a stub file.
+     *
+     * @param index the parsed stub file
+     * @param stubContents the text of the stub file that {@code index} was parsed from
+     * @param out the stream to write the index to
+     */
+    public static void write(IndexUnit index, byte[] stubContents, OutputStream out)
+            throws IOException {
+        Writer writer = new Writer();
+        writer.writeValue(index);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(stubContents.length);
+        data.writeLong(checksum(stubContents));
+        data.writeInt(writer.strings.size());
+        for (String s : writer.strings) {
+            byte[] bytes = s.getBytes("UTF-8");
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        data.writeInt(writer.classes.size());
+        for (Class<?> clazz : writer.classes) {
+            data.writeInt(writer.stringIndex(clazz.getName()));
+            Field[] fields = fieldsOf(clazz);
+            data.writeInt(fields.length);
+            for (Field field : fields) {
+                data.writeInt(writer.stringIndex(field.getName()));
+            }
+        }
+        writer.tree.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Reads the index of a stub file.
+     *
+     * @param indexURL the location of the index
+     * @param stubContents the text of the stub file
+     * @return the parsed stub file, or null if the index does not exist, is not a valid index, or
+     *     was created from a different version of the stub file
+     */
+    public static /*@Nullable*/ IndexUnit read(URL indexURL, byte[] stubContents) {
+        try {
+            ByteBuffer buffer = map(indexURL);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (buffer.getInt() != stubContents.length
+                    || buffer.getLong() != checksum(stubContents)) {
+                return null;
+            }
+            Reader reader = new Reader(buffer);
+            if (!reader.readTables()) {
+                return null;
+            }
+            Object index = reader.readValue();
+            return (index instanceof IndexUnit) ? (IndexUnit) index : null;
+        } catch (IOException
+                | BufferUnderflowException
+                | IndexOutOfBoundsException
+                | NegativeArraySizeException
+                | ReflectiveOperationException
+                | ClassCastException
+                | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the contents of the given index. An index in the file system is memory-mapped;
+     * other indices, e.g. those in a jar file, are read into memory.
+     */
+    private static ByteBuffer map(URL indexURL) throws IOException {
+        if ("file".equals(indexURL.getProtocol())) {
+            File file;
+            try {
+                file = new File(indexURL.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                file = new File(indexURL.getPath());
+            }
+            try (FileInputStream in = new FileInputStream(file);
+                    FileChannel channel = in.getChannel()) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return ByteBuffer.wrap(readFully(indexURL.openStream()));
+    }
+
+    /**
+     * Returns the checksum of the given text of a stub file. A CRC is enough to detect a stub file
+     * that changed after its index was built, and is cheaper to compute than a message digest.
+     */
+    public static long checksum(byte[] stubContents) {
+        CRC32 crc = new CRC32();
+        crc.update(stubContents);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the instance fields of the given class of syntax tree nodes, including inherited
+     * ones.
+     */
+    private static Field[] fieldsOf(Class<?> clazz) {
+        synchronized (nodeFields) {
+            Field[] result = nodeFields.get(clazz);
+            if (result == null) {
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        }
+                    }
+                }
+                result = fields.toArray(new Field[fields.size()]);
+                nodeFields.put(clazz, result);
+            }
+            return result;
+        }
+    }
+
+    /** A buffer that writes numbers in a variable-length encoding. */
+    private static class Output extends ByteArrayOutputStream {
+        void writeInt(int value) {
+            // zig-zag encoding, so that small negative numbers are short too
+            int v = (value << 1) ^ (value >> 31);
+            while ((v & ~0x7F) != 0) {
+                write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+    }
+
+    /** Reads a number written by {@link Output#writeInt(int)}. */
+    private static int readInt(ByteBuffer buffer) {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /** Encodes a syntax tree, and collects the strings and node classes it refers to. */
+    private static class Writer {
+        final Output tree = new Output();
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndices = new HashMap<>();
+        final List<Class<?>> classes = new ArrayList<>();
+        final Map<Class<?>, Integer> classIndices = new HashMap<>();
+
+        int stringIndex(String s) {
+            Integer index = stringIndices.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndices.put(s, index);
+            }
+            return index;
+        }
+
+        int classIndex(Class<?> clazz) {
+            Integer index = classIndices.get(clazz);
+            if (index == null) {
+                index = classes.size();
+                classes.add(clazz);
+                classIndices.put(clazz, index);
+                // Make sure the names used in the class table are in the string table.
+                stringIndex(clazz.getName());
+                for (Field field : fieldsOf(clazz)) {
+                    stringIndex(field.getName());
+                }
+            }
+            return index;
+        }
+
+        void writeValue(/*@Nullable*/ Object value) throws IOException {
+            if (value == null) {
+                tree.write(TAG_NULL);
+            } else if (value instanceof Node) {
+                tree.write(TAG_NODE);
+                Class<?> clazz = value.getClass();
+                tree.writeInt(classIndex(clazz));
+                try {
+                    for (Field field : fieldsOf(clazz)) {
+                        if (field.getType() == int.class) {
+                            tree.writeInt(field.getInt(value));
+                        } else if (field.getType() == boolean.class) {
+                            tree.write(field.getBoolean(value) ? 1 : 0);
+                        } else {
+                            writeValue(field.get(value));
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IOException(e);
+                }
+            } else if (value instanceof List<?>) {
+                List<?> list = (List<?>) value;
+                tree.write(TAG_LIST);
+                tree.writeInt(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else if (value instanceof String) {
+                tree.write(TAG_STRING);
+                tree.writeInt(stringIndex((String) value));
+            } else if (value instanceof Enum<?>) {
+                Enum<?> constant = (Enum<?>) value;
+                tree.write(TAG_ENUM);
+                tree.writeInt(stringIndex(constant.getDeclaringClass().getName()));
+                tree.writeInt(stringIndex(constant.name()));
+            } else {
+                throw new IOException("Cannot index value of " + value.getClass());
+            }
+        }
+    }
+
+    /** Decodes a syntax tree written by {@link Writer}. */
+    private static class Reader {
+        final ByteBuffer buffer;
+        String[] strings;
+        Class<?>[] classes;
+        Field[][] fields;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Reads the string table and the class table.
+         *
+         * @return false if the class table does not match the current syntax tree classes
+         */
+        boolean readTables() throws UnsupportedEncodingException, ClassNotFoundException {
+            strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+            classes = new Class<?>[buffer.getInt()];
+            fields = new Field[classes.length][];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = Class.forName(strings[buffer.getInt()]);
+                if (!Node.class.isAssignableFrom(classes[i])) {
+                    return false;
+                }
+                Map<String, Field> current = new HashMap<>();
+                for (Field field : fieldsOf(classes[i])) {
+                    current.put(field.getName(), field);
+                }
+                fields[i] = new Field[buffer.getInt()];
+                if (fields[i].length != current.size()) {
+                    return false;
+                }
+                for (int j = 0; j < fields[i].length; j++) {
+                    fields[i][j] = current.get(strings[buffer.getInt()]);
+                    if (fields[i][j] == null) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /*@Nullable*/ Object readValue() throws ReflectiveOperationException {
+            byte tag = buffer.get();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_NODE:
+                    int classIndex = readInt(buffer);
+                    Object node = classes[classIndex].newInstance();
+                    for (Field field : fields[classIndex]) {
+                        if (field.getType() == int.class) {
+                            field.setInt(node, readInt(buffer));
+                        } else if (field.getType() == boolean.class) {
+                            field.setBoolean(node, buffer.get() != 0);
+                        } else {
+                            field.set(node, readValue());
+                        }
+                    }
+                    return node;
+                case TAG_LIST:
+                    int size = readInt(buffer);
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case TAG_STRING:
+                    return strings[readInt(buffer)];
+                case TAG_ENUM:
+                    Class<?> enumClass = Class.forName(strings[readInt(buffer)]);
+                    String name = strings[readInt(buffer)];
+                    for (Object constant : enumClass.getEnumConstants()) {
+                        if (((Enum<?>) constant).name().equals(name)) {
+                            return constant;
+                        }
+                    }
+                    throw new IllegalArgumentException("No enum constant " + name);
+                default:
+                    throw new IllegalArgumentException("Bad tag " + tag);
+            }
+        }
+    }
+}
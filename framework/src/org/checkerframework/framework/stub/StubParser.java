@@ -4,7 +4,9 @@ package org.checkerframework.framework.stub;
 import org.checkerframework.checker.nullness.qual.*;
 */
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +37,7 @@ import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcard
 import org.checkerframework.framework.type.visitor.AnnotatedTypeMerger;
 import org.checkerframework.framework.util.AnnotationBuilder;
 import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.Pair;
@@ -90,7 +93,23 @@ public class StubParser {
     /** The file being parsed (makes error messages more informative). */
     private final String filename;
 
+    /**
+     * The parsed stub file. It may be shared with other StubParsers, so it must not be modified.
+     */
     private final IndexUnit index;
+
+    /** The maximum number of parsed stub files in {@link #parsedStubFiles}. */
+    private static final int PARSED_STUB_FILES_CACHE_SIZE = 64;
+
+    /**
+     * Parsed stub files, shared by all StubParsers in the process. For example, the subcheckers of
+     * the Nullness Checker and the checkers of an aggregate checker read the same stub files. A
+     * stub file is identified by its name, length, and checksum. The parsed stub files do not
+     * depend on the checker; the annotations in them are resolved by each StubParser separately.
+     * All accesses must be synchronized on this map.
+     */
+    private static final Map<String, IndexUnit> parsedStubFiles =
+            CollectionUtils.createLRUCache(PARSED_STUB_FILES_CACHE_SIZE);
     private final ProcessingEnvironment processingEnv;
     private final AnnotatedTypeFactory atypeFactory;
     private final Elements elements;
@@ -125,6 +144,12 @@ public class StubParser {
      */
     private final List<AnnotatedTypeVariable> typeParameters = new ArrayList<>();
 
+    /**
+     * The declarations that have not been parsed yet, by the fully-qualified name of the declared
+     * type. Only used for lazy parsing, see {@link #parsePackagesAndIndexTypes(Map, Map)}.
+     */
+    private Map<String, List<Pair<CompilationUnit, TypeDeclaration>>> unparsedTypes;
+
     /**
      * @param filename name of stub file
      * @param inputStream of stub file to parse
@@ -136,6 +161,23 @@ public class StubParser {
             InputStream inputStream,
             AnnotatedTypeFactory factory,
             ProcessingEnvironment env) {
+        this(filename, inputStream, null, factory, env);
+    }
+
+    /**
+     * @param filename name of stub file
+     * @param inputStream of stub file to parse
+     * @param indexURL location of the precompiled {@link StubIndex} of the stub file, or null; the
+     *     stub file is only parsed if there is no index for its current contents
+     * @param factory AnnotatedtypeFactory to use
+     * @param env ProcessingEnviroment to use
+     */
+    public StubParser(
+            String filename,
+            InputStream inputStream,
+            /*@Nullable*/ URL indexURL,
+            AnnotatedTypeFactory factory,
+            ProcessingEnvironment env) {
         this.filename = filename;
         this.atypeFactory = factory;
         this.processingEnv = env;
@@ -151,9 +193,30 @@ public class StubParser {
         if (debugStubParser) {
             stubDebug(String.format("parsing stub file %s%n", filename));
         }
-        IndexUnit parsedindex;
+        IndexUnit parsedindex = null;
         try {
-            parsedindex = JavaParser.parse(inputStream);
+            byte[] contents = StubIndex.readFully(inputStream);
+            String key = filename + ':' + contents.length + ':' + StubIndex.checksum(contents);
+            // The lock is held while parsing, because JavaParser is not thread-safe.
+            synchronized (parsedStubFiles) {
+                parsedindex = parsedStubFiles.get(key);
+                if (parsedindex != null) {
+                    stubDebug(String.format("reusing parsed stub file %s%n", filename));
+                } else {
+                    if (indexURL != null) {
+                        parsedindex = StubIndex.read(indexURL, contents);
+                        if (parsedindex == null) {
+                            stubDebug(
+                                    String.format(
+                                            "index of stub file %s is out of date%n", filename));
+                        }
+                    }
+                    if (parsedindex == null) {
+                        parsedindex = JavaParser.parse(new ByteArrayInputStream(contents));
+                    }
+                    parsedStubFiles.put(key, parsedindex);
+                }
+            }
         } catch (Exception e) {
             ErrorReporter.errorAbort(
                     "StubParser: exception from JavaParser.parse for file " + filename, e);
@@ -310,6 +373,11 @@ public class StubParser {
         return result;
     }
 
+    /** Returns the name of the stub file, as given to the constructor. */
+    public String getFilename() {
+        return filename;
+    }
+
     /** The main entry point. Side-effects the arguments. */
     public void parse(
             Map<Element, AnnotatedTypeMirror> atypes,
@@ -351,6 +419,83 @@ public class StubParser {
         }
     }
 
+    /**
+     * Entry point for lazy parsing: parses the annotations on packages, and remembers the type
+     * declarations of the stub file without parsing them. The declarations of each type are parsed
+     * later by {@link #parseDeclarationsOf(String, Map, Map)}. Side-effects the arguments.
+     *
+     * @return the fully-qualified names of the types declared in the stub file
+     */
+    public Set<String> parsePackagesAndIndexTypes(
+            Map<Element, AnnotatedTypeMirror> atypes,
+            Map<String, Set<AnnotationMirror>> declAnnos) {
+        unparsedTypes = new HashMap<>();
+        for (CompilationUnit cu : index.getCompilationUnits()) {
+            final String packageName;
+            if (cu.getPackage() == null) {
+                packageName = null;
+            } else {
+                packageName = cu.getPackage().getName().toString();
+                parsePackage(cu.getPackage(), atypes, declAnnos);
+            }
+            if (cu.getTypes() != null) {
+                for (TypeDeclaration typeDecl : cu.getTypes()) {
+                    String typeName = getQualifiedName(packageName, typeDecl);
+                    List<Pair<CompilationUnit, TypeDeclaration>> decls =
+                            unparsedTypes.get(typeName);
+                    if (decls == null) {
+                        decls = new ArrayList<>(1);
+                        unparsedTypes.put(typeName, decls);
+                    }
+                    decls.add(Pair.of(cu, typeDecl));
+                }
+            }
+        }
+        return new HashSet<>(unparsedTypes.keySet());
+    }
+
+    /**
+     * Parses the declarations of the given type in the stub file, if they have not been parsed
+     * yet. Requires that {@link #parsePackagesAndIndexTypes(Map, Map)} has been called.
+     * Side-effects the arguments.
+     *
+     * @param typeName the fully-qualified name of a type
+     */
+    public void parseDeclarationsOf(
+            String typeName,
+            Map<Element, AnnotatedTypeMirror> atypes,
+            Map<String, Set<AnnotationMirror>> declAnnos) {
+        List<Pair<CompilationUnit, TypeDeclaration>> decls = unparsedTypes.remove(typeName);
+        if (decls == null) {
+            return;
+        }
+        for (Pair<CompilationUnit, TypeDeclaration> decl : decls) {
+            CompilationUnit cu = decl.first;
+            theCompilationUnit = cu;
+            if (cu.getPackage() == null) {
+                parse(decl.second, null, null, atypes, declAnnos);
+            } else {
+                parse(
+                        decl.second,
+                        cu.getPackage().getName().toString(),
+                        cu.getPackage().getAnnotations(),
+                        atypes,
+                        declAnnos);
+            }
+        }
+    }
+
+    /**
+     * Returns the fully-qualified name of the type declared by {@code typeDecl}.
+     *
+     * @param packageName the package of the compilation unit that contains typeDecl, or null
+     * @param typeDecl a type declaration, whose name may be a binary name such as "A$B"
+     */
+    private static String getQualifiedName(String packageName, TypeDeclaration typeDecl) {
+        return (packageName == null ? "" : packageName + ".")
+                + typeDecl.getName().replace('$', '.');
+    }
+
     private void parsePackage(
             PackageDeclaration packDecl,
             Map<Element, AnnotatedTypeMirror> atypes,
@@ -375,9 +520,7 @@ public class StubParser {
             Map<Element, AnnotatedTypeMirror> atypes,
             Map<String, Set<AnnotationMirror>> declAnnos) {
         // Fully-qualified name of the type being parsed
-        String typeName =
-                (packageName == null ? "" : packageName + ".")
-                        + typeDecl.getName().replace('$', '.');
+        String typeName = getQualifiedName(packageName, typeDecl);
         TypeElement typeElt = elements.getTypeElement(typeName);
         // couldn't find type.  not in class path
         if (typeElt == null) {
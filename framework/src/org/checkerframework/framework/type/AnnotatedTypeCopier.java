@@ -398,13 +398,16 @@ public class AnnotatedTypeCopier
      * source to dest. Note, this method obeys the copyAnnotations field. Subclasses of
      * AnnotatedTypeCopier can use this method to customize annotations before copying.
      *
+     * <p>The annotations are not copied eagerly: dest shares the annotation set of source until
+     * one of the two types is modified.
+     *
      * @param source the type whose primary annotations are being copied
      * @param dest a copy of source that should receive its primary annotations
      */
     protected void maybeCopyPrimaryAnnotations(
             final AnnotatedTypeMirror source, final AnnotatedTypeMirror dest) {
         if (copyAnnotations) {
-            dest.addAnnotations(source.getAnnotationsField());
+            dest.shareAnnotations(source);
         }
     }
 }
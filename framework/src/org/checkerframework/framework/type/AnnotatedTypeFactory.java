@@ -81,7 +81,13 @@ import org.checkerframework.framework.qual.PolyAll;
 import org.checkerframework.framework.qual.PolymorphicQualifier;
 import org.checkerframework.framework.qual.StubFiles;
 import org.checkerframework.framework.qual.SubtypeOf;
+import org.checkerframework.framework.source.CheckerProfiler;
+import org.checkerframework.framework.source.CheckerProfiler.Phase;
+import org.checkerframework.framework.source.FlightRecorderEvents;
+import org.checkerframework.framework.source.FlightRecorderEvents.EventKind;
+import org.checkerframework.framework.source.IncrementalResultStore;
 import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.framework.stub.StubIndex;
 import org.checkerframework.framework.stub.StubParser;
 import org.checkerframework.framework.stub.StubResource;
 import org.checkerframework.framework.stub.StubUtil;
@@ -211,6 +217,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     // Initially null, then assigned in postInit().  Caching is enabled as
     // soon as this is non-null, so it should be first set to its final
     // value, not initialized to an empty map that is incrementally filled.
+    // The only exception is lazy parsing of stub files, see unparsedStubTypes.
     private Map<Element, AnnotatedTypeMirror> typesFromStubFiles;
 
     /**
@@ -222,6 +229,17 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     // Not final, because it is assigned in postInit().
     private Map<String, Set<AnnotationMirror>> declAnnosFromStubFiles;
 
+    /**
+     * The stub files that declare a type whose declarations have not been parsed yet, by the
+     * fully-qualified name of the type. Null unless the stubLazyLoading option is given, in which
+     * case the declarations of a type are parsed by {@link #parseStubFilesFor(Element)} the first
+     * time one of its elements is used.
+     */
+    private Map<String, List<StubParser>> unparsedStubTypes;
+
+    /** True while {@link #parseStubFilesFor(Element)} parses declarations from stub files. */
+    private boolean parsingStubTypes = false;
+
     /**
      * A cache used to store elements whose declaration annotations have already been stored by
      * calling the method {@link #getDeclAnnotations(Element)}.
@@ -281,6 +299,9 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * Should results be cached? This means that ATM.deepCopy() will be called. ATM.deepCopy() used
      * to (and perhaps still does) side effect the ATM being copied. So setting this to false is not
      * equivalent to setting shouldReadCache to false.
+     *
+     * <p>A copy of a cached type shares the primary annotation sets of the cached type until the
+     * copy is modified, so a cache hit only allocates the structure of the type.
      */
     public boolean shouldCache;
 
@@ -305,6 +326,38 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     /** Mapping from an Element to the source Tree of the declaration. */
     private final Map<Element, Tree> elementToTreeCache;
 
+    /**
+     * Mapping from a type variable to an unannotated copy of its initialized bounds, used by {@link
+     * BoundsInitializer} as a template for the bounds of other uses of the same type variable.
+     */
+    final Map<TypeVariable, AnnotatedTypeVariable> typeVariableBoundsCache;
+
+    /**
+     * The supertype paths cached by {@link AsSuperVisitor}. They are kept here because {@link
+     * AnnotatedTypes#asSuper} creates a new visitor whenever it is called with a different factory,
+     * which happens constantly when subcheckers run; the paths only depend on class declarations.
+     */
+    final Map<Element, Map<Element, Element>> supertypePaths =
+            new HashMap<Element, Map<Element, Element>>();
+
+    /**
+     * Annotated types and declaration annotations of elements from bytecode, stored across
+     * compiler invocations; null unless the atfPersistentCache option is given.
+     */
+    private final PersistentElementCache persistentElementCache;
+
+    /**
+     * The store that records which elements each compilation unit depends on; null unless the
+     * incrementalCheck option is given.
+     */
+    private final IncrementalResultStore incrementalResultStore;
+
+    /** Measures the phases of checking; null unless the profile option is given. */
+    private final CheckerProfiler profiler;
+
+    /** Emits events for the stub files; null unless the flightRecorder option is given. */
+    private final FlightRecorderEvents events;
+
     /**
      * Constructs a factory from the given {@link ProcessingEnvironment} instance and syntax tree
      * root. (These parameters are required so that the factory may conduct the appropriate
@@ -328,7 +381,18 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         this.types = processingEnv.getTypeUtils();
         this.visitorState = new VisitorState();
 
-        this.loader = new AnnotationClassLoader(checker);
+        this.profiler = checker.getProfiler();
+        this.events = checker.getFlightRecorderEvents();
+        if (profiler != null) {
+            profiler.enter(Phase.ANNOTATION_LOADING);
+        }
+        try {
+            this.loader = new AnnotationClassLoader(checker);
+        } finally {
+            if (profiler != null) {
+                profiler.exit();
+            }
+        }
         this.supportedQuals = new HashSet<>();
 
         this.fromByteCode = AnnotationUtils.fromClass(elements, FromByteCode.class);
@@ -343,11 +407,24 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
             this.fromTreeCache = CollectionUtils.createLRUCache(cacheSize);
             this.elementCache = CollectionUtils.createLRUCache(cacheSize);
             this.elementToTreeCache = CollectionUtils.createLRUCache(cacheSize);
+            this.typeVariableBoundsCache = CollectionUtils.createLRUCache(cacheSize);
         } else {
             this.classAndMethodTreeCache = null;
             this.fromTreeCache = null;
             this.elementCache = null;
             this.elementToTreeCache = null;
+            this.typeVariableBoundsCache = null;
+        }
+        String persistentCacheDir = checker.getOption("atfPersistentCache");
+        if (shouldCache && persistentCacheDir != null) {
+            this.persistentElementCache =
+                    new PersistentElementCache(this, new File(persistentCacheDir));
+        } else {
+            this.persistentElementCache = null;
+        }
+        this.incrementalResultStore = checker.getIncrementalResultStore();
+        if (incrementalResultStore != null) {
+            incrementalResultStore.addFactory(this);
         }
 
         this.typeFormatter = createAnnotatedTypeFormatter();
@@ -506,10 +583,14 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         elementToTreeCache.clear();
         fromTreeCache.clear();
         classAndMethodTreeCache.clear();
+        if (typeHierarchy instanceof DefaultTypeHierarchy) {
+            ((DefaultTypeHierarchy) typeHierarchy).clearCache();
+        }
 
-        // There is no need to clear the following cache, it is limited by cache size and it
-        // contents won't change between compilation units.
+        // There is no need to clear the following caches, they are limited by cache size and
+        // their contents won't change between compilation units.
         // elementCache.clear();
+        // typeVariableBoundsCache.clear();
     }
 
     @SideEffectFree
@@ -1042,13 +1123,20 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @return AnnotatedTypeMirror of the element with explicitly-written and stub file annotations
      */
     public AnnotatedTypeMirror fromElement(Element elt) {
-        if (shouldCache && elementCache.containsKey(elt)) {
+        if (incrementalResultStore != null) {
+            incrementalResultStore.recordDependency(this, elt);
+        }
+        if (shouldCache && !parsingStubTypes && elementCache.containsKey(elt)) {
             return elementCache.get(elt).deepCopy();
         }
         if (elt.getKind() == ElementKind.PACKAGE) {
             return toAnnotatedType(elt.asType(), false);
         }
-        AnnotatedTypeMirror type;
+        parseStubFilesFor(elt);
+        // While stub files are being parsed, ignore what has been read from them so far.
+        Map<Element, AnnotatedTypeMirror> typesFromStubFiles =
+                parsingStubTypes ? null : this.typesFromStubFiles;
+        AnnotatedTypeMirror type = null;
 
         // Because of a bug in Java 8, annotations on type parameters are not stored in elements,
         // so get explicit annotations from the tree. (This bug has been fixed in Java 9.)
@@ -1056,7 +1144,24 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         // the annotations have to be retrived from the tree so that only explicit annotations are returned.
         Tree decl = declarationFromElement(elt);
 
-        if (decl == null && typesFromStubFiles != null && typesFromStubFiles.containsKey(elt)) {
+        boolean persistentlyCacheable =
+                decl == null
+                        && typesFromStubFiles != null
+                        && persistentElementCache != null
+                        && persistentElementCache.isCacheable(elt);
+        if (persistentlyCacheable) {
+            type =
+                    persistentElementCache.getType(
+                            elt,
+                            toAnnotatedType(elt.asType(), ElementUtils.isTypeDeclaration(elt)));
+        }
+
+        if (type != null) {
+            // Found in the persistent cache.
+            persistentlyCacheable = false;
+        } else if (decl == null
+                && typesFromStubFiles != null
+                && typesFromStubFiles.containsKey(elt)) {
             type = typesFromStubFiles.get(elt).deepCopy();
         } else if (decl == null
                 && (typesFromStubFiles == null || !typesFromStubFiles.containsKey(elt))) {
@@ -1089,6 +1194,9 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         if (shouldCache && typesFromStubFiles != null) {
             elementCache.put(elt, type.deepCopy());
         }
+        if (persistentlyCacheable) {
+            persistentElementCache.putType(elt, type);
+        }
         return type;
     }
 
@@ -1101,6 +1209,10 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
             // Parsing stub files, don't add @FromByteCode
             return;
         }
+        if (parsingStubTypes) {
+            // Parsing stub files lazily, don't add @FromByteCode
+            return;
+        }
 
         if (elt.getKind() == ElementKind.CONSTRUCTOR
                 || elt.getKind() == ElementKind.METHOD
@@ -2640,14 +2752,25 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                 new HashMap<Element, AnnotatedTypeMirror>();
         Map<String, Set<AnnotationMirror>> declAnnosFromStubFiles =
                 new HashMap<String, Set<AnnotationMirror>>();
+        if (checker.hasOption("stubLazyLoading")) {
+            unparsedStubTypes = new HashMap<>();
+        }
 
         // 1. jdk.astub
         if (!checker.hasOption("ignorejdkastub")) {
             InputStream in = null;
             in = checker.getClass().getResourceAsStream("jdk.astub");
             if (in != null) {
-                StubParser stubParser = new StubParser("jdk.astub", in, this, processingEnv);
-                stubParser.parse(typesFromStubFiles, declAnnosFromStubFiles);
+                in = trackStub("jdk.astub", in);
+                StubParser stubParser =
+                        new StubParser(
+                                "jdk.astub",
+                                in,
+                                checker.getClass()
+                                        .getResource("jdk.astub" + StubIndex.INDEX_SUFFIX),
+                                this,
+                                processingEnv);
+                parseStubFile(stubParser, typesFromStubFiles, declAnnosFromStubFiles);
             }
         }
 
@@ -2655,8 +2778,16 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         // stub file for type-system independent annotations
         InputStream input = BaseTypeChecker.class.getResourceAsStream("flow.astub");
         if (input != null) {
-            StubParser stubParser = new StubParser("flow.astub", input, this, processingEnv);
-            stubParser.parse(typesFromStubFiles, declAnnosFromStubFiles);
+            input = trackStub("flow.astub", input);
+            StubParser stubParser =
+                    new StubParser(
+                            "flow.astub",
+                            input,
+                            BaseTypeChecker.class.getResource(
+                                    "flow.astub" + StubIndex.INDEX_SUFFIX),
+                            this,
+                            processingEnv);
+            parseStubFile(stubParser, typesFromStubFiles, declAnnosFromStubFiles);
         }
 
         // Stub files specified via stubs compiler option, stubs system property,
@@ -2690,6 +2821,9 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         if (allStubFiles.isEmpty()) {
             this.typesFromStubFiles = typesFromStubFiles;
             this.declAnnosFromStubFiles = declAnnosFromStubFiles;
+            if (persistentElementCache != null) {
+                persistentElementCache.load();
+            }
             return;
         }
 
@@ -2710,8 +2844,16 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                 InputStream in = null;
                 in = checker.getClass().getResourceAsStream(stubPath);
                 if (in != null) {
-                    StubParser stubParser = new StubParser(stubPath, in, this, processingEnv);
-                    stubParser.parse(typesFromStubFiles, declAnnosFromStubFiles);
+                    in = trackStub(stubPath, in);
+                    StubParser stubParser =
+                            new StubParser(
+                                    stubPath,
+                                    in,
+                                    checker.getClass()
+                                            .getResource(stubPath + StubIndex.INDEX_SUFFIX),
+                                    this,
+                                    processingEnv);
+                    parseStubFile(stubParser, typesFromStubFiles, declAnnosFromStubFiles);
                     // We could handle the stubPath -> continue.
                     continue;
                 }
@@ -2726,7 +2868,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
             for (StubResource resource : stubs) {
                 InputStream stubStream;
                 try {
-                    stubStream = resource.getInputStream();
+                    stubStream = trackStub(resource.getDescription(), resource.getInputStream());
                 } catch (IOException e) {
                     checker.message(
                             Kind.NOTE,
@@ -2735,12 +2877,126 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                 }
                 StubParser stubParser =
                         new StubParser(resource.getDescription(), stubStream, this, processingEnv);
-                stubParser.parse(typesFromStubFiles, declAnnosFromStubFiles);
+                parseStubFile(stubParser, typesFromStubFiles, declAnnosFromStubFiles);
             }
         }
 
         this.typesFromStubFiles = typesFromStubFiles;
         this.declAnnosFromStubFiles = declAnnosFromStubFiles;
+        if (persistentElementCache != null) {
+            persistentElementCache.load();
+        }
+    }
+
+    /**
+     * Parses the given stub file into the given maps. If the stub files are parsed lazily, only
+     * the package annotations are parsed now, and the declared types are recorded in {@link
+     * #unparsedStubTypes}.
+     */
+    private void parseStubFile(
+            StubParser stubParser,
+            Map<Element, AnnotatedTypeMirror> typesFromStubFiles,
+            Map<String, Set<AnnotationMirror>> declAnnosFromStubFiles) {
+        if (profiler != null) {
+            profiler.enter(Phase.STUB_PARSING);
+        }
+        Object event = events == null ? null : events.begin(EventKind.STUB_PARSING);
+        try {
+            if (unparsedStubTypes == null) {
+                stubParser.parse(typesFromStubFiles, declAnnosFromStubFiles);
+                return;
+            }
+            for (String typeName :
+                    stubParser.parsePackagesAndIndexTypes(
+                            typesFromStubFiles, declAnnosFromStubFiles)) {
+                List<StubParser> stubParsers = unparsedStubTypes.get(typeName);
+                if (stubParsers == null) {
+                    stubParsers = new ArrayList<>(1);
+                    unparsedStubTypes.put(typeName, stubParsers);
+                }
+                stubParsers.add(stubParser);
+            }
+        } finally {
+            if (profiler != null) {
+                profiler.exit();
+            }
+            if (event != null) {
+                events.commit(
+                        event, checker.getClass().getSimpleName(), stubParser.getFilename(), "");
+            }
+        }
+    }
+
+    /**
+     * If the stub files are parsed lazily, parses the declarations of the type that encloses
+     * {@code elt} from all stub files, unless that has been done already. The stub files are
+     * processed in the same order as by {@link #parseStubFiles()}, so the result is the same as if
+     * they had been parsed eagerly.
+     *
+     * <p>While the declarations are parsed, this factory behaves as if no stub files had been read:
+     * the results of {@link #fromElement(Element)} and {@link #getDeclAnnotations(Element)} are
+     * neither cached nor taken from stub files, just like during eager parsing.
+     *
+     * @param elt an element whose annotated type or declaration annotations are requested
+     */
+    private void parseStubFilesFor(Element elt) {
+        if (unparsedStubTypes == null
+                || unparsedStubTypes.isEmpty()
+                || parsingStubTypes
+                || typesFromStubFiles == null) {
+            return;
+        }
+        TypeElement typeElt = ElementUtils.enclosingClass(elt);
+        if (typeElt == null) {
+            return;
+        }
+        String typeName = typeElt.getQualifiedName().toString();
+        List<StubParser> stubParsers = unparsedStubTypes.remove(typeName);
+        if (stubParsers == null) {
+            return;
+        }
+        parsingStubTypes = true;
+        if (profiler != null) {
+            profiler.enter(Phase.STUB_PARSING);
+        }
+        try {
+            for (StubParser stubParser : stubParsers) {
+                Object event = events == null ? null : events.begin(EventKind.STUB_PARSING);
+                stubParser.parseDeclarationsOf(
+                        typeName, typesFromStubFiles, declAnnosFromStubFiles);
+                if (event != null) {
+                    events.commit(
+                            event,
+                            checker.getClass().getSimpleName(),
+                            stubParser.getFilename(),
+                            typeName);
+                }
+            }
+        } finally {
+            parsingStubTypes = false;
+            if (profiler != null) {
+                profiler.exit();
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that reads the stub file {@code in}. If the persistent element cache is
+     * enabled, the contents of the stub file become part of its key.
+     */
+    private InputStream trackStub(String name, InputStream in) {
+        if (persistentElementCache == null) {
+            return in;
+        }
+        return persistentElementCache.trackStub(name, in);
+    }
+
+    /**
+     * Returns the cache of annotated types of elements from bytecode that persists across compiler
+     * invocations, or null if the atfPersistentCache option was not given.
+     */
+    public PersistentElementCache getPersistentElementCache() {
+        return persistentElementCache;
     }
 
     /**
@@ -2849,11 +3105,32 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @param elt The element for which to determine annotations.
      */
     public Set<AnnotationMirror> getDeclAnnotations(Element elt) {
-        if (cacheDeclAnnos.containsKey(elt)) {
+        if (incrementalResultStore != null) {
+            incrementalResultStore.recordDependency(this, elt);
+        }
+        if (!parsingStubTypes && cacheDeclAnnos.containsKey(elt)) {
             // Found in cache, return result.
             return cacheDeclAnnos.get(elt);
         }
 
+        parseStubFilesFor(elt);
+        // While stub files are being parsed, ignore what has been read from them so far.
+        Map<String, Set<AnnotationMirror>> declAnnosFromStubFiles =
+                parsingStubTypes ? null : this.declAnnosFromStubFiles;
+
+        boolean persistentlyCacheable =
+                declAnnosFromStubFiles != null
+                        && persistentElementCache != null
+                        && persistentElementCache.isCacheable(elt);
+        if (persistentlyCacheable) {
+            Set<AnnotationMirror> cached = persistentElementCache.getDeclAnnotations(elt);
+            if (cached != null) {
+                addFromByteCode(elt);
+                cacheDeclAnnos.put(elt, cached);
+                return cached;
+            }
+        }
+
         Set<AnnotationMirror> results = AnnotationUtils.createAnnotationSet();
         // Retrieving the annotations from the element.
         results.addAll(elt.getAnnotationMirrors());
@@ -2877,6 +3154,9 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
 
             // Add the element and its annotations to the cache.
             cacheDeclAnnos.put(elt, results);
+            if (persistentlyCacheable) {
+                persistentElementCache.putDeclAnnotations(elt, results);
+            }
         }
 
         return results;
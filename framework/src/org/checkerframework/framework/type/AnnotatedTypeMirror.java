@@ -142,7 +142,16 @@ public abstract class AnnotatedTypeMirror {
     // the class name of Annotation instead.
     // Caution: Assumes that a type can have at most one AnnotationMirror for
     // any Annotation type. JSR308 is pushing to have this change.
-    private final Set<AnnotationMirror> annotations = AnnotationUtils.createAnnotationSet();
+    // The set may be shared with copies of this type, see annotationsShared.
+    private Set<AnnotationMirror> annotations = AnnotationUtils.createAnnotationSet();
+
+    /**
+     * True if {@link #annotations} might also be referenced by another AnnotatedTypeMirror. A
+     * shared set is never modified in place; it is replaced by a private copy before the first
+     * modification. This makes copies of types, e.g. those handed out by the caches in {@link
+     * AnnotatedTypeFactory}, cheap when the caller never changes their annotations.
+     */
+    private boolean annotationsShared = false;
 
     /** The explicitly written annotations on this type. */
     // TODO: use this to cache the result once computed? For generic types?
@@ -312,6 +321,53 @@ public abstract class AnnotatedTypeMirror {
         return annotations;
     }
 
+    /**
+     * Returns the annotations on this type in a set that may be modified. If the set is currently
+     * shared with another type, it is copied first.
+     *
+     * @return the set of the annotations on this, not shared with any other type
+     */
+    private Set<AnnotationMirror> getMutableAnnotationsField() {
+        if (annotationsShared) {
+            Set<AnnotationMirror> copy = AnnotationUtils.createAnnotationSet();
+            copy.addAll(annotations);
+            annotations = copy;
+            annotationsShared = false;
+        }
+        return annotations;
+    }
+
+    /**
+     * Replaces the primary annotations of this type by {@code annotations}, without the checks and
+     * side effects of {@link #replaceAnnotations(Iterable)}. The caller must not modify {@code
+     * annotations} afterwards.
+     *
+     * @param annotations the new annotations of this type; must have been created by {@link
+     *     AnnotationUtils#createAnnotationSet()}
+     */
+    /*package-private*/ void setAnnotationsField(Set<AnnotationMirror> annotations) {
+        this.annotations = annotations;
+        this.annotationsShared = true;
+    }
+
+    /**
+     * Gives this type the same primary annotations as {@code source}, without copying them. The
+     * set of annotations is shared between both types until either one of them is modified. If
+     * this type already has annotations, the annotations of {@code source} are added to them
+     * instead.
+     *
+     * @param source the type whose primary annotations are shared
+     */
+    /*package-private*/ void shareAnnotations(AnnotatedTypeMirror source) {
+        if (!annotations.isEmpty()) {
+            addAnnotations(source.annotations);
+        } else if (!source.annotations.isEmpty()) {
+            source.annotationsShared = true;
+            this.annotations = source.annotations;
+            this.annotationsShared = true;
+        }
+    }
+
     /**
      * Returns the "effective" annotations on this type, i.e. the annotations on the type itself, or
      * on the upper/extends bound of a type variable/wildcard (recursively, until a class type is
@@ -422,7 +478,13 @@ public abstract class AnnotatedTypeMirror {
      * @see #hasAnnotationRelaxed(AnnotationMirror)
      */
     public boolean hasAnnotation(AnnotationMirror a) {
-        return AnnotationUtils.containsSame(getAnnotations(), a);
+        // Annotations without element values are canonical, so most lookups succeed by identity.
+        for (AnnotationMirror anno : annotations) {
+            if (anno == a) {
+                return true;
+            }
+        }
+        return AnnotationUtils.containsSame(annotations, a);
     }
 
     /**
@@ -562,6 +624,8 @@ public abstract class AnnotatedTypeMirror {
 
     /**
      * Adds an annotation to this type. Only annotations supported by the type factory are added.
+     * Annotations without element values are replaced by their canonical instance, see {@link
+     * AnnotationUtils#canonicalAnnotation(AnnotationMirror)}.
      *
      * @param a the annotation to add
      */
@@ -571,7 +635,7 @@ public abstract class AnnotatedTypeMirror {
                     "AnnotatedTypeMirror.addAnnotation: null is not a valid annotation.");
         }
         if (atypeFactory.isSupportedQualifier(a)) {
-            this.annotations.add(a);
+            getMutableAnnotationsField().add(AnnotationUtils.canonicalAnnotation(a));
         } else {
             AnnotationMirror aliased = atypeFactory.aliasedAnnotation(a);
             if (atypeFactory.isSupportedQualifier(aliased)) {
@@ -655,7 +719,7 @@ public abstract class AnnotatedTypeMirror {
         // It's currently necessary for the Lock Checker.
         AnnotationMirror anno = getAnnotation(AnnotationUtils.annotationName(a));
         if (anno != null) {
-            return annotations.remove(anno);
+            return getMutableAnnotationsField().remove(anno);
         } else {
             return false;
         }
@@ -724,7 +788,12 @@ public abstract class AnnotatedTypeMirror {
      * methods.
      */
     public void clearAnnotations() {
-        annotations.clear();
+        if (annotationsShared) {
+            annotations = AnnotationUtils.createAnnotationSet();
+            annotationsShared = false;
+        } else {
+            annotations.clear();
+        }
     }
 
     @SideEffectFree
@@ -1,9 +1,12 @@
 package org.checkerframework.framework.type;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -31,9 +34,23 @@ public class AsSuperVisitor extends AbstractAtmComboVisitor<AnnotatedTypeMirror,
     private final Types types;
     private final AnnotatedTypeFactory annotatedTypeFactory;
 
+    /**
+     * Caches the path from a class to one of its superclasses or superinterfaces. Maps a class
+     * element to a map from each supertype element that has been requested so far to the element
+     * of the direct supertype through which the requested supertype is reached.
+     *
+     * <p>Only the path is cached, not the resulting type: the annotations on a supertype depend on
+     * the annotations of the subtype and on {@link AnnotatedTypeFactory#postDirectSuperTypes}.
+     * The path only depends on the class declarations, so it can be reused for every
+     * parameterization of a class. The map belongs to the factory; see {@link
+     * AnnotatedTypeFactory#supertypePaths}.
+     */
+    private final Map<Element, Map<Element, Element>> supertypePaths;
+
     public AsSuperVisitor(AnnotatedTypeFactory annotatedTypeFactory) {
         this.annotatedTypeFactory = annotatedTypeFactory;
         types = annotatedTypeFactory.types;
+        supertypePaths = annotatedTypeFactory.supertypePaths;
     }
 
     /**
@@ -310,11 +327,31 @@ public class AsSuperVisitor extends AbstractAtmComboVisitor<AnnotatedTypeMirror,
         // Not same erased Java type
         // Walk up the directSuperTypes.
         // directSuperTypes() annotates type variables correctly and handles substitution
-        for (AnnotatedDeclaredType dst : type.directSuperTypes()) {
+        List<AnnotatedDeclaredType> directSuperTypes = type.directSuperTypes();
+        Element typeElement = type.getUnderlyingType().asElement();
+        Element superTypeElement = superType.getUnderlyingType().asElement();
+        Map<Element, Element> paths = supertypePaths.get(typeElement);
+        if (paths != null) {
+            Element next = paths.get(superTypeElement);
+            if (next != null) {
+                for (AnnotatedDeclaredType dst : directSuperTypes) {
+                    if (dst.getUnderlyingType().asElement() == next) {
+                        return visit(dst, superType, p);
+                    }
+                }
+            }
+        }
+
+        for (AnnotatedDeclaredType dst : directSuperTypes) {
             if (isErasedJavaSubtype(dst, superType)) {
                 // If two direct supertypes of type, dst1 and dst2, are subtypes of superType then
                 // asSuper(dst1, superType) and asSuper(dst2, superType) return equivalent ATMs, so
                 // return the first one found.
+                if (paths == null) {
+                    paths = new HashMap<Element, Element>();
+                    supertypePaths.put(typeElement, paths);
+                }
+                paths.put(superTypeElement, dst.getUnderlyingType().asElement());
                 return visit(dst, superType, p);
             }
         }
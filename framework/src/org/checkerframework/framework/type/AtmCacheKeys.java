@@ -0,0 +1,196 @@
+package org.checkerframework.framework.type;
+
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.AnnotationMirror;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedArrayType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedTypeVariable;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
+import org.checkerframework.javacutil.AnnotationUtils;
+
+/**
+ * Structural hash codes and equality for annotated types that are used as keys of caches, such as
+ * the subtype cache of {@link DefaultTypeHierarchy} and the inference cache of {@link
+ * org.checkerframework.framework.util.typeinference.DefaultTypeArgumentInference}.
+ *
+ * <p>Two types are equal if they have the same kind and the same primary annotations and, for
+ * declared types, the same element and equal type arguments; for arrays, equal component types;
+ * for wildcards, equal bounds; and for type variables, the same underlying type variable and
+ * bounds with the same annotations. Declared types are compared by their elements rather than
+ * their underlying types, which differ for every occurrence of a parameterized type, and type
+ * variables in the bounds of a type variable are compared shallowly.
+ *
+ * <p>This ignores other components of a type, such as the enclosing type of a declared type, so
+ * it is only used for the types that {@link #isCacheable} accepts.
+ */
+public final class AtmCacheKeys {
+
+    private AtmCacheKeys() {
+        throw new AssertionError("Class AtmCacheKeys cannot be instantiated.");
+    }
+
+    /**
+     * Returns true if {@code type} can be compared structurally: it is made of non-raw declared
+     * types without enclosing types, arrays, primitives, the null type, and, if {@code variables}
+     * is true, the void type, wildcards and type variables. A null reference is cacheable.
+     */
+    public static boolean isCacheable(AnnotatedTypeMirror type, boolean variables) {
+        return isCacheable(type, variables, false);
+    }
+
+    /**
+     * Returns true if {@code type} can be compared structurally. {@code inBound} is true for parts
+     * of the bounds of a type variable; type variables there are compared shallowly.
+     */
+    private static boolean isCacheable(
+            AnnotatedTypeMirror type, boolean variables, boolean inBound) {
+        if (type == null) {
+            return true;
+        }
+        switch (type.getKind()) {
+            case DECLARED:
+                AnnotatedDeclaredType declared = (AnnotatedDeclaredType) type;
+                if (declared.wasRaw() || declared.getEnclosingType() != null) {
+                    return false;
+                }
+                for (AnnotatedTypeMirror typeArg : declared.getTypeArguments()) {
+                    if (!isCacheable(typeArg, variables, inBound)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                return isCacheable(
+                        ((AnnotatedArrayType) type).getComponentType(), variables, inBound);
+            case WILDCARD:
+                AnnotatedWildcardType wildcard = (AnnotatedWildcardType) type;
+                return variables
+                        && isCacheable(wildcard.getExtendsBound(), variables, inBound)
+                        && isCacheable(wildcard.getSuperBound(), variables, inBound);
+            case TYPEVAR:
+                if (!variables) {
+                    return false;
+                }
+                if (inBound) {
+                    return true;
+                }
+                AnnotatedTypeVariable typeVar = (AnnotatedTypeVariable) type;
+                return isCacheable(typeVar.getUpperBound(), variables, true)
+                        && isCacheable(typeVar.getLowerBound(), variables, true);
+            case NULL:
+                return true;
+            case VOID:
+                return variables;
+            default:
+                return type.getKind().isPrimitive();
+        }
+    }
+
+    /** Returns a hash code of {@code type} that is consistent with {@link #areEqual}. */
+    public static int hash(AnnotatedTypeMirror type) {
+        if (type == null) {
+            return 0;
+        }
+        int result = type.getKind().hashCode();
+        for (AnnotationMirror anno : type.getAnnotations()) {
+            result += AnnotationUtils.annotationName(anno).hashCode();
+        }
+        switch (type.getKind()) {
+            case DECLARED:
+                AnnotatedDeclaredType declared = (AnnotatedDeclaredType) type;
+                result = 31 * result + declared.getUnderlyingType().asElement().hashCode();
+                for (AnnotatedTypeMirror typeArg : declared.getTypeArguments()) {
+                    result = 31 * result + hash(typeArg);
+                }
+                return result;
+            case ARRAY:
+                return 31 * result + hash(((AnnotatedArrayType) type).getComponentType());
+            case TYPEVAR:
+                return 31 * result + System.identityHashCode(type.getUnderlyingType());
+            default:
+                return result;
+        }
+    }
+
+    /** Returns true if {@code type1} and {@code type2}, which may be null, are equal. */
+    public static boolean areEqual(AnnotatedTypeMirror type1, AnnotatedTypeMirror type2) {
+        return areEqual(type1, type2, false);
+    }
+
+    /** Returns true if the types in {@code types1} and {@code types2} are pairwise equal. */
+    public static boolean areEqual(
+            List<? extends AnnotatedTypeMirror> types1,
+            List<? extends AnnotatedTypeMirror> types2) {
+        return areEqual(types1, types2, false);
+    }
+
+    private static boolean areEqual(
+            AnnotatedTypeMirror type1, AnnotatedTypeMirror type2, boolean inBound) {
+        if (type1 == null || type2 == null) {
+            return type1 == type2;
+        }
+        if (type1.getKind() != type2.getKind()) {
+            return false;
+        }
+        Set<AnnotationMirror> annos1 = type1.getAnnotations();
+        Set<AnnotationMirror> annos2 = type2.getAnnotations();
+        if (annos1.size() != annos2.size()) {
+            return false;
+        }
+        for (AnnotationMirror anno : annos1) {
+            if (!AnnotationUtils.containsSame(annos2, anno)) {
+                return false;
+            }
+        }
+        switch (type1.getKind()) {
+            case DECLARED:
+                AnnotatedDeclaredType declared1 = (AnnotatedDeclaredType) type1;
+                AnnotatedDeclaredType declared2 = (AnnotatedDeclaredType) type2;
+                if (declared1.getUnderlyingType().asElement()
+                        != declared2.getUnderlyingType().asElement()) {
+                    return false;
+                }
+                return areEqual(
+                        declared1.getTypeArguments(), declared2.getTypeArguments(), inBound);
+            case ARRAY:
+                return areEqual(
+                        ((AnnotatedArrayType) type1).getComponentType(),
+                        ((AnnotatedArrayType) type2).getComponentType(),
+                        inBound);
+            case WILDCARD:
+                AnnotatedWildcardType wildcard1 = (AnnotatedWildcardType) type1;
+                AnnotatedWildcardType wildcard2 = (AnnotatedWildcardType) type2;
+                return areEqual(wildcard1.getExtendsBound(), wildcard2.getExtendsBound(), inBound)
+                        && areEqual(wildcard1.getSuperBound(), wildcard2.getSuperBound(), inBound);
+            case TYPEVAR:
+                if (type1.getUnderlyingType() != type2.getUnderlyingType()) {
+                    return false;
+                }
+                if (inBound) {
+                    return true;
+                }
+                AnnotatedTypeVariable typeVar1 = (AnnotatedTypeVariable) type1;
+                AnnotatedTypeVariable typeVar2 = (AnnotatedTypeVariable) type2;
+                return areEqual(typeVar1.getUpperBound(), typeVar2.getUpperBound(), true)
+                        && areEqual(typeVar1.getLowerBound(), typeVar2.getLowerBound(), true);
+            default:
+                return true;
+        }
+    }
+
+    private static boolean areEqual(
+            List<? extends AnnotatedTypeMirror> types1,
+            List<? extends AnnotatedTypeMirror> types2,
+            boolean inBound) {
+        if (types1.size() != types2.size()) {
+            return false;
+        }
+        for (int i = 0; i < types1.size(); i++) {
+            if (!areEqual(types1.get(i), types2.get(i), inBound)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -47,11 +47,28 @@ public class BoundsInitializer {
      * Create the entire lower bound and upper bound, with no missing information, for typeVar. If a
      * typeVar is recursive the appropriate cycles will be introduced in the type
      *
+     * <p>The bounds of a type variable depend only on its underlying TypeVariable, so the first
+     * initialized bounds of each TypeVariable are stored in the factory's cache and later
+     * initializations copy them rather than recreating them.
+     *
      * @param typeVar the type variable whose lower bound is being initialized
      */
     public static void initializeBounds(final AnnotatedTypeVariable typeVar) {
         final Set<AnnotationMirror> annos = saveAnnotations(typeVar);
 
+        final Map<TypeVariable, AnnotatedTypeVariable> templates =
+                typeVar.atypeFactory.typeVariableBoundsCache;
+        if (templates != null) {
+            final AnnotatedTypeVariable template = templates.get(typeVar.getUnderlyingType());
+            if (template != null) {
+                final AnnotatedTypeVariable copy = template.deepCopy();
+                typeVar.setLowerBoundField(copy.getLowerBoundField());
+                typeVar.setUpperBoundField(copy.getUpperBoundField());
+                restoreAnnotations(typeVar, annos);
+                return;
+            }
+        }
+
         InitializerVisitor visitor =
                 new InitializerVisitor(new TypeVariableStructure(null, typeVar));
         visitor.initializeLowerBound(typeVar);
@@ -62,6 +79,10 @@ public class BoundsInitializer {
         visitor2.initializeUpperBound(typeVar);
         visitor2.resolveTypeVarReferences(typeVar);
 
+        if (templates != null) {
+            templates.put(typeVar.getUnderlyingType(), typeVar.deepCopy());
+        }
+
         restoreAnnotations(typeVar, annos);
     }
 
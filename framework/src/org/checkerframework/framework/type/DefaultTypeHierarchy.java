@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.TypeElement;
@@ -31,6 +32,8 @@ import org.checkerframework.framework.util.AnnotatedTypes;
 import org.checkerframework.framework.util.AtmCombo;
 import org.checkerframework.framework.util.PluginUtil;
 import org.checkerframework.framework.util.TypeArgumentMapper;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.InternalUtils;
 import org.checkerframework.javacutil.Pair;
@@ -65,6 +68,20 @@ public class DefaultTypeHierarchy extends AbstractAtmComboVisitor<Boolean, Visit
     // cases.  This field identifies those cases.  See isContainedBy.
     protected final boolean covariantTypeArgs;
 
+    /** Size of the cache of subtype queries. */
+    private static final int SUBTYPE_CACHE_SIZE = 500;
+
+    /**
+     * Caches the results of top-level subtype queries in {@link #isSubtype(AnnotatedTypeMirror,
+     * AnnotatedTypeMirror, AnnotationMirror)}, or null if the atfDoNotCache option is given. Only
+     * queries about types built from declared, array, primitive, and null types are cached; see
+     * {@link SubtypeQuery}. Cleared for each compilation unit by {@link #clearCache()}.
+     */
+    private final Map<SubtypeQuery, Boolean> subtypeCache;
+
+    /** The number of subtype queries that were answered from or added to the cache. */
+    private int subtypeCacheHits = 0, subtypeCacheMisses = 0;
+
     //TODO: Incorporate feedback from David/Suzanne
     // IMPORTANT_NOTE:
     // For MultigraphQualifierHierarchies, we check the subtyping relationship of each annotation
@@ -146,6 +163,43 @@ public class DefaultTypeHierarchy extends AbstractAtmComboVisitor<Boolean, Visit
         this.ignoreRawTypes = ignoreRawTypes;
         this.invariantArrayComponents = invariantArrayComponents;
         this.covariantTypeArgs = covariantTypeArgs;
+
+        this.subtypeCache =
+                checker.hasOption("atfDoNotCache")
+                        ? null
+                        : CollectionUtils.<SubtypeQuery, Boolean>createLRUCache(
+                                SUBTYPE_CACHE_SIZE);
+    }
+
+    /**
+     * Clears the cache of subtype queries. Called by the type factory when it moves to the next
+     * compilation unit.
+     */
+    public void clearCache() {
+        if (subtypeCache != null) {
+            subtypeCache.clear();
+        }
+    }
+
+    /** Returns the number of subtype queries that were answered from the cache. */
+    public int getCacheHits() {
+        return subtypeCacheHits;
+    }
+
+    /** Returns the number of cacheable subtype queries that were not in the cache. */
+    public int getCacheMisses() {
+        return subtypeCacheMisses;
+    }
+
+    /** Returns a description of how well the cache of subtype queries performed. */
+    public String getCacheStatistics() {
+        int queries = subtypeCacheHits + subtypeCacheMisses;
+        return "subtype cache: "
+                + subtypeCacheHits
+                + " hits, "
+                + subtypeCacheMisses
+                + " misses"
+                + (queries == 0 ? "" : " (" + (100L * subtypeCacheHits / queries) + "% hits)");
     }
 
     /**
@@ -180,8 +234,95 @@ public class DefaultTypeHierarchy extends AbstractAtmComboVisitor<Boolean, Visit
             final AnnotatedTypeMirror subtype,
             final AnnotatedTypeMirror supertype,
             final AnnotationMirror top) {
+        if (subtypeCache == null
+                || !SubtypeQuery.isCacheable(subtype)
+                || !SubtypeQuery.isCacheable(supertype)) {
+            currentTop = top;
+            return isSubtypeWithNewHistory(subtype, supertype);
+        }
+
+        SubtypeQuery query = new SubtypeQuery(subtype, supertype, top);
+        Boolean result = subtypeCache.get(query);
+        if (result != null) {
+            subtypeCacheHits++;
+            return result;
+        }
+        subtypeCacheMisses++;
         currentTop = top;
-        return isSubtype(subtype, supertype, new VisitHistory());
+        result = isSubtypeWithNewHistory(subtype, supertype);
+        // The types may be modified later, so the cache keeps copies.
+        subtypeCache.put(
+                new SubtypeQuery(subtype.deepCopy(), supertype.deepCopy(), top), result);
+        return result;
+    }
+
+    /**
+     * An empty visit history that top-level subtype queries reuse, or null while a query uses it.
+     * Nested top-level queries, which are rare, use a new visit history.
+     */
+    private VisitHistory unusedVisitHistory = new VisitHistory();
+
+    /** Returns true if subtype {@literal <:} supertype, starting with an empty visit history. */
+    private boolean isSubtypeWithNewHistory(
+            final AnnotatedTypeMirror subtype, final AnnotatedTypeMirror supertype) {
+        VisitHistory visited = unusedVisitHistory;
+        unusedVisitHistory = null;
+        if (visited == null) {
+            visited = new VisitHistory();
+        }
+        try {
+            return isSubtype(subtype, supertype, visited);
+        } finally {
+            visited.clear();
+            unusedVisitHistory = visited;
+        }
+    }
+
+    /**
+     * A top-level subtype query, used as key of the cache of subtype queries. Two queries are equal
+     * if their types are equal according to {@link AtmCacheKeys}, and they are about the same
+     * hierarchy.
+     *
+     * <p>Only types made of non-raw declared types without enclosing types, arrays, primitives,
+     * and the null type are cached, for which these components determine the result. Type
+     * variables and wildcards are not cached; their subtyping depends on more state, such as
+     * whether a wildcard is an uninferred type argument.
+     */
+    private static final class SubtypeQuery {
+        private final AnnotatedTypeMirror subtype;
+        private final AnnotatedTypeMirror supertype;
+        private final AnnotationMirror top;
+        private final int hashCode;
+
+        SubtypeQuery(
+                AnnotatedTypeMirror subtype, AnnotatedTypeMirror supertype, AnnotationMirror top) {
+            this.subtype = subtype;
+            this.supertype = supertype;
+            this.top = top;
+            this.hashCode = 31 * AtmCacheKeys.hash(subtype) + AtmCacheKeys.hash(supertype);
+        }
+
+        /** Returns true if subtype queries involving {@code type} may be cached. */
+        static boolean isCacheable(AnnotatedTypeMirror type) {
+            return AtmCacheKeys.isCacheable(type, false);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SubtypeQuery)) {
+                return false;
+            }
+            SubtypeQuery other = (SubtypeQuery) o;
+            return hashCode == other.hashCode
+                    && AnnotationUtils.areSame(top, other.top)
+                    && AtmCacheKeys.areEqual(subtype, other.subtype)
+                    && AtmCacheKeys.areEqual(supertype, other.supertype);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
     }
 
     /**
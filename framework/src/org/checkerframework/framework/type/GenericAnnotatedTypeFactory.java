@@ -71,6 +71,10 @@ import org.checkerframework.framework.qual.MonotonicQualifier;
 import org.checkerframework.framework.qual.RelevantJavaTypes;
 import org.checkerframework.framework.qual.TypeUseLocation;
 import org.checkerframework.framework.qual.Unqualified;
+import org.checkerframework.framework.source.CheckerProfiler;
+import org.checkerframework.framework.source.CheckerProfiler.Phase;
+import org.checkerframework.framework.source.FlightRecorderEvents;
+import org.checkerframework.framework.source.FlightRecorderEvents.EventKind;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
 import org.checkerframework.framework.type.treeannotator.ImplicitsTreeAnnotator;
@@ -150,6 +154,12 @@ public abstract class GenericAnnotatedTypeFactory<
     /** An empty store. */
     private Store emptyStore;
 
+    /** Measures the phases of checking; null unless the profile option is given. */
+    private final CheckerProfiler profiler;
+
+    /** Emits events for flow analysis; null unless the flightRecorder option is given. */
+    private final FlightRecorderEvents events;
+
     /**
      * Creates a type factory for checking the given compilation unit with respect to the given
      * annotation.
@@ -163,6 +173,8 @@ public abstract class GenericAnnotatedTypeFactory<
         this.everUseFlow = useFlow;
         this.shouldDefaultTypeVarLocals = useFlow;
         this.useFlow = useFlow;
+        this.profiler = checker.getProfiler();
+        this.events = checker.getFlightRecorderEvents();
         this.analyses = new LinkedList<>();
         this.scannedClasses = new HashMap<>();
         this.flowResult = null;
@@ -754,6 +766,14 @@ public abstract class GenericAnnotatedTypeFactory<
     /**
      * Perform a org.checkerframework.dataflow analysis over a single class tree and its nested
      * classes.
+     *
+     * <p>The members are analyzed sequentially, in the order in which they appear, on the current
+     * thread. The analyses depend on each other: the analyses of field initializers and
+     * initializer blocks update the {@code initializationStore} and the values of fields that are
+     * passed into the analyses of the constructors and methods after them. They also cannot run
+     * concurrently because the transfer functions call back into this factory, whose caches,
+     * {@link #analyses} deque, and visitor state are not thread-safe, and into javac, which is not
+     * thread-safe either and may complete symbols lazily.
      */
     protected void performFlowAnalysis(ClassTree classTree) {
         if (flowResult == null) {
@@ -963,28 +983,79 @@ public abstract class GenericAnnotatedTypeFactory<
             boolean updateInitializationStore,
             boolean isStatic,
             Store lambdaStore) {
-        CFGBuilder builder = new CFCFGBuilder(checker, this);
-        ControlFlowGraph cfg = builder.run(root, processingEnv, ast);
-        FlowAnalysis newAnalysis = createFlowAnalysis(fieldValues);
-        TransferFunction transfer = newAnalysis.getTransferFunction();
-        if (emptyStore == null) {
-            emptyStore = newAnalysis.createEmptyStore(transfer.usesSequentialSemantics());
+        boolean profileMethod = profiler != null && ast.getKind() == UnderlyingAST.Kind.METHOD;
+        if (profileMethod) {
+            profiler.enterMethod(((CFGMethod) ast).getMethod());
         }
-        analyses.addFirst(newAnalysis);
-        if (lambdaStore != null) {
-            transfer.setFixedInitialStore(lambdaStore);
-        } else {
-            Store initStore = !isStatic ? initializationStore : initializationStaticStore;
-            if (isInitializationCode) {
-                if (initStore != null) {
-                    // we have already seen initialization code and analyzed it, and
-                    // the analysis ended with the store initStore.
-                    // use it to start the next analysis.
-                    transfer.setFixedInitialStore(initStore);
+        CFGBuilder builder = new CFCFGBuilder(checker, this);
+        ControlFlowGraph cfg;
+        try {
+            if (profiler != null) {
+                profiler.enter(Phase.CFG_CONSTRUCTION);
+            }
+            try {
+                Object event = events == null ? null : events.begin(EventKind.CFG_CONSTRUCTION);
+                cfg = builder.run(root, processingEnv, ast);
+                if (event != null) {
+                    events.commit(
+                            event,
+                            checker.getClass().getSimpleName(),
+                            getClassName(currentClass),
+                            getCodeName(ast),
+                            cfg.getBlockCount(),
+                            cfg.getNodeCount());
+                }
+            } finally {
+                if (profiler != null) {
+                    profiler.exit();
+                }
+            }
+
+            if (profiler != null) {
+                profiler.recordCfg(cfg);
+                profiler.enter(Phase.DATAFLOW);
+            }
+            try {
+                Object event = events == null ? null : events.begin(EventKind.FLOW_ANALYSIS);
+                FlowAnalysis newAnalysis = createFlowAnalysis(fieldValues);
+                TransferFunction transfer = newAnalysis.getTransferFunction();
+                if (emptyStore == null) {
+                    emptyStore = newAnalysis.createEmptyStore(transfer.usesSequentialSemantics());
+                }
+                analyses.addFirst(newAnalysis);
+                if (lambdaStore != null) {
+                    transfer.setFixedInitialStore(lambdaStore);
+                } else {
+                    Store initStore = !isStatic ? initializationStore : initializationStaticStore;
+                    if (isInitializationCode) {
+                        if (initStore != null) {
+                            // we have already seen initialization code and analyzed it, and
+                            // the analysis ended with the store initStore.
+                            // use it to start the next analysis.
+                            transfer.setFixedInitialStore(initStore);
+                        }
+                    }
+                }
+                analyses.getFirst().performAnalysis(cfg);
+                if (event != null) {
+                    events.commit(
+                            event,
+                            checker.getClass().getSimpleName(),
+                            getClassName(currentClass),
+                            getCodeName(ast),
+                            cfg.getBlockCount(),
+                            analyses.getFirst().getWorklistIterations());
+                }
+            } finally {
+                if (profiler != null) {
+                    profiler.exit();
                 }
             }
+        } finally {
+            if (profileMethod) {
+                profiler.exit();
+            }
         }
-        analyses.getFirst().performAnalysis(cfg);
         AnalysisResult<Value, Store> result = analyses.getFirst().getResult();
 
         // store result
@@ -1036,6 +1107,23 @@ public abstract class GenericAnnotatedTypeFactory<
         }
     }
 
+    /** Returns the binary name of classTree, for events. */
+    private String getClassName(ClassTree classTree) {
+        return elements.getBinaryName(TreeUtils.elementFromDeclaration(classTree)).toString();
+    }
+
+    /** Returns the signature of the method of ast, or the kind of its code, for events. */
+    private static String getCodeName(UnderlyingAST ast) {
+        switch (ast.getKind()) {
+            case METHOD:
+                return TreeUtils.elementFromDeclaration(((CFGMethod) ast).getMethod()).toString();
+            case LAMBDA:
+                return "(lambda)";
+            default:
+                return "(initializer)";
+        }
+    }
+
     /**
      * Handle the visualization of the CFG, by calling {@code visualizeCFG} on the first analysis.
      * This method gets invoked in {@code analyze} if on of the visualization options is provided.
@@ -1141,9 +1229,18 @@ public abstract class GenericAnnotatedTypeFactory<
                         + " root needs to be set when used on trees; factory: "
                         + this.getClass();
 
-        treeAnnotator.visit(tree, type);
-        typeAnnotator.visit(type, null);
-        defaults.annotate(tree, type);
+        if (profiler != null) {
+            profiler.enter(Phase.TREE_ANNOTATION);
+        }
+        try {
+            treeAnnotator.visit(tree, type);
+            typeAnnotator.visit(type, null);
+            defaults.annotate(tree, type);
+        } finally {
+            if (profiler != null) {
+                profiler.exit();
+            }
+        }
 
         if (iUseFlow) {
             Value as;
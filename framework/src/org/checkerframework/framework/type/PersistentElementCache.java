@@ -0,0 +1,625 @@
+package org.checkerframework.framework.type;
+
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeKind;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.type.visitor.AnnotatedTypeScanner;
+import org.checkerframework.framework.util.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.ElementUtils;
+
+/**
+ * A cache of the annotated types and declaration annotations of elements from bytecode that
+ * persists across compiler invocations. It is enabled with the {@code -AatfPersistentCache=dir}
+ * option and used by {@link AnnotatedTypeFactory#fromElement(Element)} and {@link
+ * AnnotatedTypeFactory#getDeclAnnotations(Element)} before they fall back to computing a result.
+ *
+ * <p>One cache file is kept per checker and configuration. Its name is derived from a key made of
+ * the checker class, the {@code -A} options, the contents of all stub files, and a fingerprint
+ * (path, size, and modification time) of every class path and boot class path entry. Any change to
+ * one of those selects a different file, so a stale entry is never used. The options are part of
+ * the key because they can change which qualifiers a checker supports, and an annotated type only
+ * keeps supported qualifiers; options in {@link #IGNORED_OPTIONS} are left out. Each file starts with a format version
+ * and the full key, which are checked on load.
+ *
+ * <p>An annotated type is stored as the list of primary annotations of its component types, in the
+ * order in which {@link AnnotatedTypeScanner} visits them, together with the kind of each
+ * component. A cached type is reconstructed by applying these annotations to the unannotated type
+ * of the element; if the structure differs, the entry is ignored. Only elements whose annotations
+ * have values of a primitive, {@code String}, or array type are cached.
+ *
+ * <p>New entries are written at the end of type processing, or when the JVM exits if the
+ * compilation issued errors.
+ */
+public class PersistentElementCache {
+
+    /** Identifies a cache file. */
+    private static final int MAGIC = 0xCFCAC4E1;
+
+    /** Version of the file format; must be incremented whenever the format changes. */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The options that do not influence the annotated types: they select where results or reports
+     * are written, or which compilation units are type-checked.
+     */
+    private static final List<String> IGNORED_OPTIONS =
+            Arrays.asList(
+                    "atfPersistentCache",
+                    "checkShard",
+                    "incrementalCheck",
+                    "profile",
+                    "resourceStats",
+                    "cfgviz",
+                    "flowdotdir",
+                    "verbosecfg");
+
+    /** The factory whose types are cached. */
+    private final AnnotatedTypeFactory atypeFactory;
+
+    /** The processing environment. */
+    private final ProcessingEnvironment processingEnv;
+
+    /** The directory that contains the cache files. */
+    private final File directory;
+
+    /** The digest of the contents of all stub files, updated by {@link #trackStub}. */
+    private final MessageDigest stubDigest;
+
+    /** The key of this configuration; null until {@link #load()} is called. */
+    private String key;
+
+    /** Encoded annotated types, keyed by {@link #elementKey(Element)}. */
+    private final Map<String, byte[]> types = new HashMap<>();
+
+    /** Encoded declaration annotations, keyed by {@link #elementKey(Element)}. */
+    private final Map<String, byte[]> declAnnos = new HashMap<>();
+
+    /** True if an entry was added since the cache was loaded. */
+    private boolean modified = false;
+
+    /** Number of cache hits, reported by {@link #toString()}. */
+    private int hits = 0;
+
+    /** Number of cache misses, reported by {@link #toString()}. */
+    private int misses = 0;
+
+    /**
+     * Creates a cache that stores its files in {@code directory}. The cache is empty until {@link
+     * #load()} is called.
+     *
+     * @param atypeFactory the factory whose types are cached
+     * @param directory the directory that contains the cache files
+     */
+    public PersistentElementCache(AnnotatedTypeFactory atypeFactory, File directory) {
+        this.atypeFactory = atypeFactory;
+        this.processingEnv = atypeFactory.getProcessingEnv();
+        this.directory = directory;
+        this.stubDigest = newDigest();
+    }
+
+    /**
+     * Returns a stream that reads {@code in} and adds the contents to the key of this cache. Every
+     * stub file must be read through such a stream before {@link #load()} is called.
+     *
+     * @param name the name of the stub file
+     * @param in the stream of the stub file
+     * @return a stream that reads {@code in}
+     */
+    public InputStream trackStub(String name, InputStream in) {
+        stubDigest.update(name.getBytes());
+        return new DigestInputStream(in, stubDigest);
+    }
+
+    /**
+     * Computes the key of this configuration and reads the entries of the matching cache file, if
+     * any. Must be called after all stub files have been read.
+     */
+    public void load() {
+        StringBuilder keyBuilder = new StringBuilder();
+        keyBuilder.append(atypeFactory.checker.getClass().getName());
+        keyBuilder.append('|').append(System.getProperty("java.version"));
+        Map<String, String> options = new TreeMap<>(processingEnv.getOptions());
+        options.keySet().removeAll(IGNORED_OPTIONS);
+        // Hashed, because options like -Astubs can be longer than the key may be.
+        keyBuilder.append('|').append(toHex(newDigest().digest(options.toString().getBytes())));
+        keyBuilder.append('|').append(toHex(stubDigest.digest()));
+        keyBuilder.append('|').append(classPathFingerprint());
+        key = keyBuilder.toString();
+
+        File file = getFile();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(key)) {
+                return;
+            }
+            readEntries(in, types);
+            readEntries(in, declAnnos);
+        } catch (IOException e) {
+            // A corrupt or truncated file is treated like a missing one.
+            types.clear();
+            declAnnos.clear();
+        }
+    }
+
+    /** Writes the entries of this cache to its file, if any entry was added. */
+    public void save() {
+        if (key == null || !modified) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File file = getFile();
+        // Every compilation writes its own temporary file and moves it into place atomically,
+        // so that concurrent compilations never read a partial file or write to the same one.
+        File tmp;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        } catch (IOException e) {
+            return;
+        }
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            writeEntries(out, types);
+            writeEntries(out, declAnnos);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        try {
+            try {
+                Files.move(
+                        tmp.toPath(),
+                        file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        modified = false;
+    }
+
+    /**
+     * Returns true if the annotated type and declaration annotations of {@code elt} may be stored
+     * in this cache.
+     *
+     * @param elt an element
+     * @return true if {@code elt} is from bytecode and is a type, method, constructor or field
+     */
+    public boolean isCacheable(Element elt) {
+        if (key == null) {
+            return false;
+        }
+        switch (elt.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+            case METHOD:
+            case CONSTRUCTOR:
+            case FIELD:
+            case ENUM_CONSTANT:
+                return ElementUtils.isElementFromByteCode(elt);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the cached annotated type of {@code elt}, or null if it is not in the cache.
+     *
+     * @param elt an element for which {@link #isCacheable(Element)} returns true
+     * @param type the unannotated type of {@code elt}, which is annotated by side effect
+     * @return {@code type} with the cached annotations, or null
+     */
+    public AnnotatedTypeMirror getType(Element elt, AnnotatedTypeMirror type) {
+        byte[] entry = types.get(elementKey(elt));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (type.getKind() == TypeKind.EXECUTABLE) {
+            ((AnnotatedExecutableType) type).setElement((ExecutableElement) elt);
+        }
+        List<AnnotatedTypeMirror> components = new ComponentCollector().collect(type);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            if (!in.readUTF().equals(type.getUnderlyingType().toString())
+                    || in.readInt() != components.size()) {
+                types.remove(elementKey(elt));
+                misses++;
+                return null;
+            }
+            List<Set<AnnotationMirror>> annotations = new ArrayList<>(components.size());
+            for (AnnotatedTypeMirror component : components) {
+                if (!in.readUTF().equals(component.getKind().name())) {
+                    types.remove(elementKey(elt));
+                    misses++;
+                    return null;
+                }
+                annotations.add(readAnnotations(in));
+            }
+            // Set the annotations only after all components were validated, so that a
+            // mismatch does not leave a partially annotated type behind.
+            for (int i = 0; i < components.size(); i++) {
+                components.get(i).setAnnotationsField(annotations.get(i));
+            }
+        } catch (IOException | UnsupportedValueException e) {
+            types.remove(elementKey(elt));
+            misses++;
+            return null;
+        }
+        hits++;
+        return type;
+    }
+
+    /**
+     * Stores the annotated type of {@code elt}.
+     *
+     * @param elt an element for which {@link #isCacheable(Element)} returns true
+     * @param type the annotated type of {@code elt}
+     */
+    public void putType(Element elt, AnnotatedTypeMirror type) {
+        List<AnnotatedTypeMirror> components = new ComponentCollector().collect(type);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(type.getUnderlyingType().toString());
+            out.writeInt(components.size());
+            for (AnnotatedTypeMirror component : components) {
+                out.writeUTF(component.getKind().name());
+                writeAnnotations(out, component.getAnnotations());
+            }
+        } catch (IOException | UnsupportedValueException e) {
+            return;
+        }
+        types.put(elementKey(elt), bytes.toByteArray());
+        modified = true;
+    }
+
+    /**
+     * Returns the cached declaration annotations of {@code elt}, or null if they are not in the
+     * cache.
+     *
+     * @param elt an element for which {@link #isCacheable(Element)} returns true
+     * @return the declaration annotations of {@code elt}, or null
+     */
+    public Set<AnnotationMirror> getDeclAnnotations(Element elt) {
+        byte[] entry = declAnnos.get(elementKey(elt));
+        if (entry == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            return readAnnotations(in);
+        } catch (IOException | UnsupportedValueException e) {
+            declAnnos.remove(elementKey(elt));
+            return null;
+        }
+    }
+
+    /**
+     * Stores the declaration annotations of {@code elt}.
+     *
+     * @param elt an element for which {@link #isCacheable(Element)} returns true
+     * @param annotations the declaration annotations of {@code elt}
+     */
+    public void putDeclAnnotations(Element elt, Collection<AnnotationMirror> annotations) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeAnnotations(out, annotations);
+        } catch (IOException | UnsupportedValueException e) {
+            return;
+        }
+        declAnnos.put(elementKey(elt), bytes.toByteArray());
+        modified = true;
+    }
+
+    @Override
+    public String toString() {
+        return "PersistentElementCache(" + getFile() + ", hits: " + hits + ", misses: " + misses + ")";
+    }
+
+    /** Returns the file that holds the entries for the current key. */
+    private File getFile() {
+        String checkerName = atypeFactory.checker.getClass().getSimpleName();
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(key).getBytes());
+        return new File(directory, checkerName + "-" + toHex(digest.digest()) + ".cache");
+    }
+
+    /**
+     * Returns a string that changes whenever an entry of the class path or boot class path of the
+     * current compilation changes.
+     */
+    private String classPathFingerprint() {
+        List<String> paths = new ArrayList<>();
+        Context context = ((JavacProcessingEnvironment) processingEnv).getContext();
+        Options options = Options.instance(context);
+        for (String option : new String[] {"-classpath", "-bootclasspath", "-Xbootclasspath/p:"}) {
+            String value = options.get(option);
+            if (value != null) {
+                paths.add(value);
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add(System.getProperty("java.class.path"));
+        }
+        paths.add(System.getProperty("sun.boot.class.path"));
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (String path : paths) {
+            if (path == null) {
+                continue;
+            }
+            for (String entry : path.split(File.pathSeparator)) {
+                fingerprint(new File(entry), fingerprint);
+            }
+        }
+        MessageDigest digest = newDigest();
+        digest.update(fingerprint.toString().getBytes());
+        return toHex(digest.digest());
+    }
+
+    /** Appends the path, size, and modification time of {@code file} to {@code fingerprint}. */
+    private static void fingerprint(File file, StringBuilder fingerprint) {
+        fingerprint.append(file.getPath()).append(';');
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    fingerprint(child, fingerprint);
+                }
+            }
+        } else {
+            fingerprint.append(file.length()).append(';').append(file.lastModified()).append(';');
+        }
+    }
+
+    /** Returns the key of {@code elt} in the maps of this cache. */
+    private static String elementKey(Element elt) {
+        return elt.getKind() + ":" + ElementUtils.getVerboseName(elt);
+    }
+
+    private static void readEntries(DataInputStream in, Map<String, byte[]> entries)
+            throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String entryKey = in.readUTF();
+            byte[] entry = new byte[in.readInt()];
+            in.readFully(entry);
+            entries.put(entryKey, entry);
+        }
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<String, byte[]> entries)
+            throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+    }
+
+    private void writeAnnotations(DataOutputStream out, Collection<AnnotationMirror> annotations)
+            throws IOException {
+        out.writeInt(annotations.size());
+        for (AnnotationMirror anno : annotations) {
+            out.writeUTF(AnnotationUtils.annotationName(anno));
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                    anno.getElementValues();
+            out.writeInt(values.size());
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+                    values.entrySet()) {
+                out.writeUTF(value.getKey().getSimpleName().toString());
+                writeValue(out, value.getValue().getValue());
+            }
+        }
+    }
+
+    private Set<AnnotationMirror> readAnnotations(DataInputStream in) throws IOException {
+        Set<AnnotationMirror> annotations = AnnotationUtils.createAnnotationSet();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            int valueCount = in.readInt();
+            if (valueCount == 0) {
+                AnnotationMirror anno =
+                        AnnotationUtils.fromName(processingEnv.getElementUtils(), name);
+                if (anno == null) {
+                    throw new UnsupportedValueException();
+                }
+                annotations.add(anno);
+                continue;
+            }
+            AnnotationBuilder builder = new AnnotationBuilder(processingEnv, name);
+            for (int j = 0; j < valueCount; j++) {
+                String elementName = in.readUTF();
+                Object value = readValue(in);
+                if (value instanceof List) {
+                    builder.setValue(elementName, (List<?>) value);
+                } else if (value instanceof String) {
+                    builder.setValue(elementName, (String) value);
+                } else if (value instanceof Boolean) {
+                    builder.setValue(elementName, (Boolean) value);
+                } else if (value instanceof Character) {
+                    builder.setValue(elementName, (Character) value);
+                } else if (value instanceof Double) {
+                    builder.setValue(elementName, (Double) value);
+                } else if (value instanceof Float) {
+                    builder.setValue(elementName, (Float) value);
+                } else if (value instanceof Integer) {
+                    builder.setValue(elementName, (Integer) value);
+                } else if (value instanceof Long) {
+                    builder.setValue(elementName, (Long) value);
+                } else {
+                    builder.setValue(elementName, (Short) value);
+                }
+            }
+            annotations.add(builder.build());
+        }
+        return annotations;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte('S');
+            out.writeUTF((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte('Z');
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte('C');
+            out.writeChar((Character) value);
+        } else if (value instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte('F');
+            out.writeFloat((Float) value);
+        } else if (value instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte('H');
+            out.writeShort((Short) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte('[');
+            out.writeInt(list.size());
+            for (Object element : list) {
+                Object elementValue = ((AnnotationValue) element).getValue();
+                if (elementValue instanceof List) {
+                    // Annotation values cannot be nested arrays.
+                    throw new UnsupportedValueException();
+                }
+                writeValue(out, elementValue);
+            }
+        } else {
+            // Enum constants, class literals, bytes, and nested annotations are not cached.
+            throw new UnsupportedValueException();
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case 'S':
+                return in.readUTF();
+            case 'Z':
+                return in.readBoolean();
+            case 'C':
+                return in.readChar();
+            case 'D':
+                return in.readDouble();
+            case 'F':
+                return in.readFloat();
+            case 'I':
+                return in.readInt();
+            case 'J':
+                return in.readLong();
+            case 'H':
+                return in.readShort();
+            case '[':
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Thrown if an annotation has a value that cannot be stored in the cache. */
+    private static class UnsupportedValueException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Collects the components of an annotated type in a deterministic order. Lazily initialized
+     * bounds are initialized along the way, so that a type and its reconstruction have the same
+     * structure.
+     */
+    private static class ComponentCollector extends AnnotatedTypeScanner<Void, Void> {
+        private final List<AnnotatedTypeMirror> components = new ArrayList<>();
+
+        List<AnnotatedTypeMirror> collect(AnnotatedTypeMirror type) {
+            components.clear();
+            visit(type);
+            return components;
+        }
+
+        @Override
+        protected Void scan(AnnotatedTypeMirror type, Void p) {
+            if (type != null) {
+                components.add(type);
+            }
+            return super.scan(type, p);
+        }
+    }
+}
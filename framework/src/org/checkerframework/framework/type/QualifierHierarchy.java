@@ -113,6 +113,22 @@ public abstract class QualifierHierarchy {
      */
     public abstract AnnotationMirror leastUpperBound(AnnotationMirror a1, AnnotationMirror a2);
 
+    /**
+     * Returns an upper bound of newQualifier and previousQualifier that the dataflow analysis uses
+     * at a loop header, when newQualifier flows to it along a back edge of the loop and
+     * previousQualifier is the qualifier there so far. A hierarchy with infinite ascending chains
+     * must override this method so that repeated widening reaches a fixed point after a finite
+     * number of steps. By default, it returns the least upper bound.
+     *
+     * @param newQualifier the qualifier that flows along the back edge
+     * @param previousQualifier the qualifier at the loop header so far
+     * @return an upper bound of the two qualifiers
+     */
+    public AnnotationMirror widenedUpperBound(
+            AnnotationMirror newQualifier, AnnotationMirror previousQualifier) {
+        return leastUpperBound(newQualifier, previousQualifier);
+    }
+
     /**
      * Returns the greatest lower bound for the qualifiers a1 and a2.
      *
@@ -71,9 +71,25 @@ public class StructuralEqualityComparer extends AbstractAtmComboVisitor<Boolean,
      * @return true if type1 and type2 are equal
      */
     public boolean areEqual(final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2) {
-        return AtmCombo.accept(type1, type2, new VisitHistory(), this);
+        VisitHistory visited = unusedVisitHistory;
+        unusedVisitHistory = null;
+        if (visited == null) {
+            visited = new VisitHistory();
+        }
+        try {
+            return AtmCombo.accept(type1, type2, visited, this);
+        } finally {
+            visited.clear();
+            unusedVisitHistory = visited;
+        }
     }
 
+    /**
+     * An empty visit history that {@link #areEqual(AnnotatedTypeMirror, AnnotatedTypeMirror)}
+     * reuses, or null while it is in use.
+     */
+    private VisitHistory unusedVisitHistory = new VisitHistory();
+
     /**
      * The same as areEqual(type1, type2) except now a visited is passed along in order to avoid
      * infinite recursion on recursive bounds. This method is only used internally to
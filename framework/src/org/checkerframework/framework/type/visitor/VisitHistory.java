@@ -1,10 +1,8 @@
 package org.checkerframework.framework.type.visitor;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
-import org.checkerframework.framework.util.PluginUtil;
 import org.checkerframework.javacutil.AnnotationUtils;
 
 /**
@@ -34,25 +32,65 @@ import org.checkerframework.javacutil.AnnotationUtils;
  *
  * When we encounter types with property 1, property 2 ensures we cannot stop recursively comparing
  * the bounds because the equals method will not return true when we encounter a copy of a bound we
- * have already explored. This class defines a "Visit" inner class which consists of a pair of
- * AnnotatedTypeMirrors. Its equalityCompare method compares AnnotatedTypeMirrors in a way that
- * identifies wildcards that have already been compared.
+ * have already explored. This class stores pairs of AnnotatedTypeMirrors and its equalityCompare
+ * method compares AnnotatedTypeMirrors in a way that identifies wildcards that have already been
+ * compared.
+ *
+ * <p>The pairs are kept in an open-addressing hash table, so that adding and looking up a pair
+ * does not allocate. {@link #clear()} keeps the table, so clients can reuse one VisitHistory for
+ * many visits.
  */
 public class VisitHistory {
 
-    private final Set<Visit> visited;
+    /** The initial number of slots of {@link #table}; must be a power of two. */
+    private static final int INITIAL_CAPACITY = 16;
 
-    public VisitHistory() {
-        this.visited = new HashSet<>();
-    }
+    /** The first types of the pairs, in the order in which they were added. */
+    private AnnotatedTypeMirror[] types1 = new AnnotatedTypeMirror[INITIAL_CAPACITY / 2];
+
+    /** The second types of the pairs, in the order in which they were added. */
+    private AnnotatedTypeMirror[] types2 = new AnnotatedTypeMirror[INITIAL_CAPACITY / 2];
+
+    /** The hash codes of the pairs, in the order in which they were added. */
+    private int[] hashes = new int[INITIAL_CAPACITY / 2];
+
+    /** The number of pairs. */
+    private int size = 0;
+
+    /**
+     * Open-addressing hash table with linear probing. A slot holds one plus the index of a pair,
+     * or 0 if it is empty. At most half of the slots are used.
+     */
+    private int[] table = new int[INITIAL_CAPACITY];
+
+    public VisitHistory() {}
 
     public void clear() {
-        visited.clear();
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(types1, 0, size, null);
+        Arrays.fill(types2, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
     }
 
     /** Add a visit for type1 and type2. */
     public void add(final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2) {
-        this.visited.add(new Visit(type1, type2));
+        final int hash = hash(type1, type2);
+        int slot = findSlot(type1, type2, hash);
+        if (table[slot] != 0) {
+            return;
+        }
+        if (size == types1.length) {
+            grow();
+            slot = findSlot(type1, type2, hash);
+        }
+        types1[size] = type1;
+        types2[size] = type2;
+        hashes[size] = hash;
+        size++;
+        table[slot] = size;
     }
 
     /**
@@ -62,85 +100,113 @@ public class VisitHistory {
      * @return true if an equivalent pair has already been added to the history
      */
     public boolean contains(final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2) {
-        return this.visited.contains(new Visit(type1, type2));
+        if (size == 0) {
+            return false;
+        }
+        return table[findSlot(type1, type2, hash(type1, type2))] != 0;
     }
 
-    @Override
-    public String toString() {
-        return "VisitHistory( " + PluginUtil.join(", ", visited) + " )";
+    /**
+     * Returns the slot of the table that holds a pair equivalent to (type1, type2), or the empty
+     * slot where such a pair belongs.
+     */
+    private int findSlot(
+            final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2, final int hash) {
+        final int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return slot;
+            }
+            int index = entry - 1;
+            if (hashes[index] == hash
+                    && equalityCompare(type1, types1[index])
+                    && equalityCompare(type2, types2[index])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Doubles the capacity of the table and of the arrays of pairs. */
+    private void grow() {
+        int capacity = types1.length * 2;
+        types1 = Arrays.copyOf(types1, capacity);
+        types2 = Arrays.copyOf(types2, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        table = new int[capacity * 2];
+        final int mask = table.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = spread(hashes[index]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+    }
+
+    private static int hash(final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2) {
+        return (type1 != null ? 31 * type1.hashCode() : 0)
+                + (type2 != null ? 31 * type2.hashCode() : 1);
+    }
+
+    /** Spreads the bits of a hash code, which are often multiples of 31, over the low bits. */
+    private static int spread(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
     }
 
     /**
-     * Visit represents a pair of types that have been added to the history. See class note for
-     * VisitHistory (at the top of this file)
+     * This is a replacement for AnnotatedTypeMirror.equals, read the class comment for
+     * VisitHistory
      */
-    private static class Visit {
-        public final AnnotatedTypeMirror type1;
-        public final AnnotatedTypeMirror type2;
-
-        private Visit(final AnnotatedTypeMirror type1, final AnnotatedTypeMirror type2) {
-            this.type1 = type1;
-            this.type2 = type2;
+    private static boolean equalityCompare(
+            final AnnotatedTypeMirror thisType, final AnnotatedTypeMirror thatType) {
+        if (thisType == thatType) {
+            return true;
         }
 
-        @Override
-        public int hashCode() {
-            return (type1 != null ? 31 * type1.hashCode() : 0)
-                    + (type2 != null ? 31 * type2.hashCode() : 1);
+        if (thisType == null || thatType == null) {
+            return false;
         }
 
-        @Override
-        public boolean equals(final Object oThat) {
-            if (oThat == null || !oThat.getClass().equals(this.getClass())) {
-                return false;
-            }
-            final Visit that = (Visit) oThat;
-            return equalityCompare(type1, that.type1) && equalityCompare(type2, that.type2);
+        if (!thisType.getClass().equals(thatType.getClass())) {
+            return false;
         }
 
-        /**
-         * This is a replacement for AnnotatedTypeMirror.equals, read the class comment for
-         * VisitHistory
-         */
-        private boolean equalityCompare(
-                final AnnotatedTypeMirror thisType, final AnnotatedTypeMirror thatType) {
-            if (thisType == null) {
-                return thatType == null;
+        if (thisType.getClass().equals(AnnotatedTypeMirror.AnnotatedWildcardType.class)) {
+            if (thisType.getUnderlyingType().equals(thatType.getUnderlyingType())) {
+                //TODO: Investigate WHY we get wildcards that are essentially recursive since I
+                //TODO: don't think we can write these wildcards. Perhaps it is related to our lack of
+                //TODO: capture conversion or inferring void methods
+                return true; // Handles the case of recursive wildcard types
             }
-
-            if (thatType == null) {
+            if (!AnnotationUtils.areSame(
+                    thisType.getAnnotations(), thatType.getAnnotations())) {
                 return false;
+            } else {
+                //TODO: EXPLAIN CASCADING .contains if we don't do it this way
+                final AnnotatedWildcardType thisWc = (AnnotatedWildcardType) thisType;
+                final AnnotatedWildcardType thatWc = (AnnotatedWildcardType) thatType;
+                return equalityCompare(thisWc.getExtendsBound(), thatWc.getExtendsBound())
+                        && equalityCompare(thisWc.getSuperBound(), thatWc.getSuperBound());
             }
+        }
 
-            if (!thisType.getClass().equals(thatType.getClass())) {
-                return false;
-            }
+        return thisType.equals(thatType);
+    }
 
-            if (thisType.getClass().equals(AnnotatedTypeMirror.AnnotatedWildcardType.class)) {
-                if (thisType.getUnderlyingType().equals(thatType.getUnderlyingType())) {
-                    //TODO: Investigate WHY we get wildcards that are essentially recursive since I
-                    //TODO: don't think we can write these wildcards. Perhaps it is related to our lack of
-                    //TODO: capture conversion or inferring void methods
-                    return true; // Handles the case of recursive wildcard types
-                }
-                if (!AnnotationUtils.areSame(
-                        thisType.getAnnotations(), thatType.getAnnotations())) {
-                    return false;
-                } else {
-                    //TODO: EXPLAIN CASCADING .contains if we don't do it this way
-                    final AnnotatedWildcardType thisWc = (AnnotatedWildcardType) thisType;
-                    final AnnotatedWildcardType thatWc = (AnnotatedWildcardType) thatType;
-                    return equalityCompare(thisWc.getExtendsBound(), thatWc.getExtendsBound())
-                            && equalityCompare(thisWc.getSuperBound(), thatWc.getSuperBound());
-                }
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("VisitHistory( ");
+        for (int index = 0; index < size; index++) {
+            if (index > 0) {
+                sb.append(", ");
             }
-
-            return thisType.equals(thatType);
-        }
-
-        @Override
-        public String toString() {
-            return "( " + type1 + " => " + type2 + " )";
+            sb.append("( ").append(types1[index]).append(" => ").append(types2[index]).append(" )");
         }
+        return sb.append(" )").toString();
     }
 }
@@ -25,6 +25,7 @@ import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import org.checkerframework.dataflow.qual.SideEffectFree;
+import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.InternalUtils;
 import org.checkerframework.javacutil.TypesUtils;
@@ -97,6 +98,9 @@ public class AnnotationBuilder {
     public AnnotationMirror build() {
         assertNotBuilt();
         wasBuilt = true;
+        if (elementValues.isEmpty()) {
+            return AnnotationUtils.canonicalAnnotation(annotationType);
+        }
         return new AnnotationMirror() {
 
             private String toStringVal;
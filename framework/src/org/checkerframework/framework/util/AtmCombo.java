@@ -51,19 +51,30 @@ enum AtmKind {
         this.atmClass = atmClass;
     }
 
+    /**
+     * The AtmKind of each AnnotatedTypeMirror subclass, or null for classes that have none. Looking
+     * up a class here does not allocate, unlike iterating over {@link #values()}.
+     */
+    private static final ClassValue<AtmKind> kindsByClass =
+            new ClassValue<AtmKind>() {
+                @Override
+                protected AtmKind computeValue(Class<?> argClass) {
+                    for (AtmKind atmKind : AtmKind.values()) {
+                        if (argClass.equals(atmKind.atmClass)) {
+                            return atmKind;
+                        }
+                    }
+                    return null;
+                }
+            };
+
     /** @return the AtmKind corresponding to the class of atm */
     public static AtmKind valueOf(final AnnotatedTypeMirror atm) {
-        final Class<?> argClass = atm.getClass();
-
-        for (AtmKind atmKind : AtmKind.values()) {
-            final Class<?> kindClass = atmKind.atmClass;
-            if (argClass.equals(kindClass)) {
-                return atmKind;
-            }
+        final AtmKind atmKind = kindsByClass.get(atm.getClass());
+        if (atmKind == null) {
+            ErrorReporter.errorAbort("Unhandled AnnotatedTypeMirror ( " + atm.getClass() + " )");
         }
-
-        ErrorReporter.errorAbort("Unhandled AnnotatedTypeMirror ( " + atm.getClass() + " )");
-        return null; // dead code
+        return atmKind;
     }
 }
 
@@ -0,0 +1,395 @@
+package org.checkerframework.framework.util;
+
+import com.sun.tools.javac.main.Main;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long-lived JVM that runs the compiler for {@link CheckerMain} when it is given the {@code
+ * -daemon} command-line argument. Starting a JVM and warming up the compiler often takes longer
+ * than checking the few files that changed in an edit-compile loop; the daemon pays that cost
+ * once.
+ *
+ * <p>The client side, {@link #compile}, looks for a daemon that was started with the same JVM
+ * arguments from the same working directory, starts one if there is none, sends it the compiler
+ * arguments over a loopback socket, and copies the compiler output to standard error, where javac
+ * prints it. Clients hold a file lock while they look for and start a daemon, so that concurrent
+ * builds share one daemon. The daemon runs one compilation at a time and exits after it has been
+ * idle for {@link #IDLE_TIMEOUT_MILLIS}, or for the number of milliseconds given by the {@link
+ * #IDLE_TIMEOUT_PROPERTY} system property in its JVM arguments. Each daemon appends a line to its
+ * {@link #getLogFile log file} when it starts.
+ *
+ * <p>Each compilation gets a fresh compiler context and, as in a normal javac run, loads the
+ * checkers in a fresh class loader, because the checkers keep state in static fields. Across
+ * compilations the daemon keeps the JVM, the compiler classes, and their compiled code warm. To
+ * also reuse the annotated types of classpath elements, use the {@code -AatfPersistentCache}
+ * option. The daemon sets the {@link #DAEMON_PROPERTY} system property, so that checkers write
+ * their reports at the end of each compilation instead of in JVM shutdown hooks. What the compiler
+ * and the checkers print to {@link System#out} and {@link System#err} during a compilation is sent
+ * to the client along with the compiler output.
+ */
+public class CheckerDaemon {
+
+    /** The daemon exits when it has not received a request for this long. */
+    public static final int IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+    /** The system property that overrides {@link #IDLE_TIMEOUT_MILLIS}, in milliseconds. */
+    public static final String IDLE_TIMEOUT_PROPERTY = "org.checkerframework.daemon.idleTimeout";
+
+    /** The system property that is "true" in the JVM of a daemon. */
+    public static final String DAEMON_PROPERTY = "org.checkerframework.daemon";
+
+    /** How long a client waits for a daemon it started to accept connections. */
+    private static final int STARTUP_TIMEOUT_MILLIS = 60 * 1000;
+
+    /** Tag of a response frame that contains compiler output. */
+    private static final int OUTPUT = 'O';
+
+    /** Tag of the response frame that contains the compiler's exit status. */
+    private static final int EXIT = 'X';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Runs the daemon. The only argument is the file to which the port and the access token of the
+     * daemon are written; the daemon deletes it when it exits.
+     */
+    public static void main(String[] args) throws IOException {
+        final File portFile = new File(args[0]);
+        System.setProperty(DAEMON_PROPERTY, "true");
+        final String token = Long.toHexString(new SecureRandom().nextLong());
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, IDLE_TIMEOUT_MILLIS));
+        writePortFile(portFile, server.getLocalPort() + " " + token);
+        System.out.println("Checker Framework daemon listening on port " + server.getLocalPort());
+        System.out.flush();
+        Runtime.getRuntime()
+                .addShutdownHook(
+                        new Thread() {
+                            @Override
+                            public void run() {
+                                portFile.delete();
+                            }
+                        });
+
+        try {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+                try {
+                    serve(socket, token);
+                } catch (IOException e) {
+                    // The client went away; wait for the next one.
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /** Reads one compilation request from socket and runs it. */
+    private static void serve(Socket socket, String token) throws IOException {
+        final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (!token.equals(readString(in))) {
+            return;
+        }
+        final String[] compilerArgs = new String[in.readInt()];
+        for (int i = 0; i < compilerArgs.length; i++) {
+            compilerArgs[i] = readString(in);
+        }
+
+        final PrintWriter log = new PrintWriter(new FrameWriter(out), true);
+        final PrintStream stream = new PrintStream(new LogOutputStream(log), true, "UTF-8");
+        final PrintStream systemOut = System.out;
+        final PrintStream systemErr = System.err;
+        System.setOut(stream);
+        System.setErr(stream);
+        final int exitStatus;
+        try {
+            exitStatus = new Main("javac", log).compile(compilerArgs).exitCode;
+        } finally {
+            stream.flush();
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+        }
+        log.flush();
+        out.writeByte(EXIT);
+        out.writeInt(exitStatus);
+        out.flush();
+    }
+
+    /**
+     * Runs the compiler in the daemon for the given JVM and its arguments, starting the daemon if
+     * necessary, and copies the compiler output to {@code err}.
+     *
+     * @param jvmArgs the command that starts a JVM for the compiler, without the main class
+     * @param classpath the class path that contains this class
+     * @param compilerArgs the arguments to the compiler
+     * @param err where to print the compiler output
+     * @return the exit status of the compiler
+     */
+    public static int compile(
+            List<String> jvmArgs, String classpath, List<String> compilerArgs, PrintStream err) {
+        final File portFile = getPortFile(jvmArgs);
+        try {
+            final Socket socket = connectOrStart(jvmArgs, classpath, portFile);
+            try {
+                return sendRequest(socket, portFile, compilerArgs, err);
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Exception using the Checker Framework daemon", e);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Exception using the Checker Framework daemon", e);
+        }
+    }
+
+    /**
+     * Returns the file that identifies the daemon for jvmArgs and the current working directory,
+     * which relative paths in the compiler arguments are resolved against. It exists while the
+     * daemon runs and contains its port and access token.
+     */
+    public static File getPortFile(List<String> jvmArgs) {
+        final String key =
+                PluginUtil.join("\0", jvmArgs) + "\0" + System.getProperty("user.dir");
+        return new File(
+                System.getProperty("java.io.tmpdir"),
+                "checker-daemon-"
+                        + System.getProperty("user.name")
+                        + "-"
+                        + Integer.toHexString(key.hashCode())
+                        + ".port");
+    }
+
+    /**
+     * Returns a socket connected to the daemon described by portFile, starting the daemon if there
+     * is none. A lock on a file next to portFile keeps concurrent clients from starting more than
+     * one daemon. File locks are held by the whole JVM, so clients in the same JVM are serialized
+     * by synchronizing on this class.
+     */
+    private static synchronized Socket connectOrStart(
+            List<String> jvmArgs, String classpath, File portFile)
+            throws IOException, InterruptedException {
+        try (RandomAccessFile lockFile = new RandomAccessFile(portFile.getPath() + ".lock", "rw")) {
+            // Closing the file releases the lock.
+            lockFile.getChannel().lock();
+            Socket socket = connect(portFile);
+            if (socket == null) {
+                startDaemon(jvmArgs, classpath, portFile);
+                socket = connect(portFile);
+                if (socket == null) {
+                    throw new RuntimeException(
+                            "Could not connect to the Checker Framework daemon; see "
+                                    + getLogFile(portFile));
+                }
+            }
+            return socket;
+        }
+    }
+
+    /** Returns the file to which the daemon with the given port file writes its output. */
+    public static File getLogFile(File portFile) {
+        return new File(portFile.getPath() + ".log");
+    }
+
+    /** Writes contents to portFile so that only the current user can read it. */
+    private static void writePortFile(File portFile, String contents) throws IOException {
+        final File tmp = new File(portFile.getPath() + ".tmp");
+        tmp.delete();
+        tmp.createNewFile();
+        tmp.setReadable(false, false);
+        tmp.setReadable(true, true);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF_8);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(portFile)) {
+            portFile.delete();
+            if (!tmp.renameTo(portFile)) {
+                throw new IOException("Could not create " + portFile);
+            }
+        }
+    }
+
+    /**
+     * Returns a socket connected to the daemon described by portFile, or null if there is no such
+     * daemon.
+     */
+    private static Socket connect(File portFile) {
+        try {
+            final List<String> lines = PluginUtil.readFile(portFile);
+            final String port = lines.get(0).split(" ")[0];
+            return new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Starts a daemon and waits until it has written portFile. */
+    private static void startDaemon(List<String> jvmArgs, String classpath, File portFile)
+            throws IOException, InterruptedException {
+        portFile.delete();
+        final List<String> command = new ArrayList<>(jvmArgs);
+        command.add("-classpath");
+        command.add(classpath);
+        command.add(CheckerDaemon.class.getName());
+        command.add(portFile.getPath());
+
+        final File logFile = getLogFile(portFile);
+        new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                .start();
+
+        final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!portFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static int sendRequest(
+            Socket socket, File portFile, List<String> compilerArgs, PrintStream err)
+            throws IOException {
+        final String token = PluginUtil.readFile(portFile).get(0).split(" ")[1];
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        writeString(out, token);
+        out.writeInt(compilerArgs.size());
+        for (String arg : compilerArgs) {
+            writeString(out, unquote(arg));
+        }
+        out.flush();
+
+        final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        while (true) {
+            final int tag = in.read();
+            if (tag == OUTPUT) {
+                err.print(readString(in));
+                err.flush();
+            } else if (tag == EXIT) {
+                return in.readInt();
+            } else {
+                throw new IOException("The Checker Framework daemon closed the connection");
+            }
+        }
+    }
+
+    /**
+     * Removes the quotes that {@link CheckerMain} adds around arguments that contain spaces, which
+     * are needed for a command line but not for the compiler's argument array.
+     */
+    private static String unquote(String arg) {
+        if (arg.length() >= 2 && arg.startsWith("\"") && arg.endsWith("\"")) {
+            return arg.substring(1, arg.length() - 1);
+        }
+        return arg;
+    }
+
+    /** Writes s without the 64K limit of {@link DataOutputStream#writeUTF}. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /** Sends what the compiler writes to the client, one frame per flush. */
+    private static class FrameWriter extends Writer {
+        private final DataOutputStream out;
+        private final StringBuilder buffer = new StringBuilder();
+
+        FrameWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.length() > 0) {
+                out.writeByte(OUTPUT);
+                writeString(out, buffer.toString());
+                buffer.setLength(0);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Sends what is written to {@link System#out} and {@link System#err} during a compilation to
+     * the compiler output, one frame per flush.
+     */
+    private static class LogOutputStream extends OutputStream {
+        private final PrintWriter log;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        LogOutputStream(PrintWriter log) {
+            this.log = log;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            if (buffer.size() > 0) {
+                log.write(new String(buffer.toByteArray(), UTF_8));
+                buffer.reset();
+            }
+            log.flush();
+        }
+    }
+}
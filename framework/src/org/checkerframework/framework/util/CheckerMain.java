@@ -33,6 +33,9 @@ import java.util.zip.ZipEntry;
  * To debug this class, use the {@code -AoutputArgsToFile=FILENAME} command-line argument or {@code
  * -AoutputArgsToFile=-} to output to standard out.
  *
+ * <p>With the {@code -daemon} command-line argument, the compiler runs in a long-lived JVM that is
+ * shared by later invocations with the same arguments; see {@link CheckerDaemon}.
+ *
  * <p>"To run the Checker Framework" really means to run java, where the program being run is a
  * special version of javac, and javac is passed a {@code -processor} command-line argument that
  * mentions a Checker Framework checker. There are 5 relevant classpaths: The classpath and
@@ -84,6 +87,12 @@ public class CheckerMain {
 
     private final List<File> argListFiles;
 
+    /** Whether to run the compiler in a {@link CheckerDaemon}. */
+    private final boolean useDaemon;
+
+    /** Command-line argument that makes CheckerMain run the compiler in a {@link CheckerDaemon}. */
+    public static final String DAEMON_OPT = "-daemon";
+
     /**
      * Construct all the relevant file locations and Java version given the path to this jar and a
      * set of directories in which to search for jars.
@@ -96,6 +105,7 @@ public class CheckerMain {
 
         replaceShorthandProcessor(args);
         argListFiles = collectArgFiles(args);
+        this.useDaemon = args.remove(DAEMON_OPT);
 
         this.javacJar =
                 extractFileArg(PluginUtil.JAVAC_PATH_OPT, new File(searchPath, "javac.jar"), args);
@@ -370,17 +380,7 @@ public class CheckerMain {
         List<String> args =
                 new ArrayList<String>(jvmOpts.size() + cpOpts.size() + toolOpts.size() + 7);
 
-        final String java = PluginUtil.getJavaCommand(System.getProperty("java.home"), System.out);
-        args.add(java);
-
-        // Prepend ("/p:") because our javac.jar doesn't have all classes
-        // required by the Java runtime to execute the compiler.
-        args.add("-Xbootclasspath/p:" + PluginUtil.join(File.pathSeparator, runtimeBootClasspath));
-        args.add("-ea");
-        // com.sun.tools needs to be enabled separately
-        args.add("-ea:com.sun.tools...");
-
-        args.addAll(jvmOpts);
+        args.addAll(getJvmArguments());
 
         addMainToArgs(args);
 
@@ -409,6 +409,24 @@ public class CheckerMain {
         return args;
     }
 
+    /** Return the command that starts the JVM that runs the compiler, without the main class. */
+    protected List<String> getJvmArguments() {
+        List<String> args = new ArrayList<String>(jvmOpts.size() + 4);
+
+        final String java = PluginUtil.getJavaCommand(System.getProperty("java.home"), System.out);
+        args.add(java);
+
+        // Prepend ("/p:") because our javac.jar doesn't have all classes
+        // required by the Java runtime to execute the compiler.
+        args.add("-Xbootclasspath/p:" + PluginUtil.join(File.pathSeparator, runtimeBootClasspath));
+        args.add("-ea");
+        // com.sun.tools needs to be enabled separately
+        args.add("-ea:com.sun.tools...");
+
+        args.addAll(jvmOpts);
+        return args;
+    }
+
     /**
      * Invoke the JSR308 Type Annotations Compiler with all relevant jars on its classpath or boot
      * classpath
@@ -427,6 +445,18 @@ public class CheckerMain {
             }
         }
 
+        if (useDaemon) {
+            List<String> jvmArgs = getJvmArguments();
+            List<String> mainArgs = new ArrayList<String>(1);
+            addMainToArgs(mainArgs);
+            // The daemon's class path must contain CheckerDaemon, like the processor path.
+            return CheckerDaemon.compile(
+                    jvmArgs,
+                    PluginUtil.join(File.pathSeparator, ppOpts),
+                    args.subList(jvmArgs.size() + mainArgs.size(), args.size()),
+                    System.err);
+        }
+
         // Actually invoke the compiler
         return ExecUtil.execute(args.toArray(new String[args.size()]), System.out, System.err);
     }
@@ -8,10 +8,14 @@ import org.checkerframework.checker.nullness.qual.PolyNull;
 */
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -174,6 +178,42 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
     /** @see MultiGraphQualifierHierarchy.MultiGraphFactory#polyQualifiers */
     protected final Map<AnnotationMirror, AnnotationMirror> polyQualifiers;
 
+    /**
+     * The qualifiers of supertypesMap that have no element values, indexed by a dense id. Queries
+     * about two such qualifiers are answered from the tables below, which are indexed by these
+     * ids, instead of by comparing annotation names.
+     */
+    private final AnnotationMirror[] qualifiersById;
+
+    /** Maps the name of each qualifier in {@link #qualifiersById} to its id. */
+    private final Map<String, Integer> idsByName;
+
+    /** For each id, the set of ids of its supertypes, as given by supertypesMap. */
+    private final BitSet[] supertypeIds;
+
+    /** For each id, the top of its hierarchy; entries are computed on first use. */
+    private final AnnotationMirror[] topsById;
+
+    /**
+     * The lub and glb of each pair of ids, as computed for the qualifiers of the pair. Entries are
+     * computed on first use; {@link #lubsComputed} and {@link #glbsComputed} record which ones
+     * are, at index {@code id1 * qualifiersById.length + id2}.
+     */
+    private final AnnotationMirror[] lubsById, glbsById;
+
+    private final BitSet lubsComputed = new BitSet(), glbsComputed = new BitSet();
+
+    /**
+     * Caches the id of the annotation mirrors passed to this hierarchy by identity, or -1 if a
+     * mirror has element values or is not in {@link #qualifiersById}. Most mirrors are one of a
+     * few instances, so this avoids computing their names. Cleared when it grows too large.
+     */
+    private final Map<AnnotationMirror, Integer> idCache =
+            new IdentityHashMap<AnnotationMirror, Integer>();
+
+    /** The size above which {@link #idCache} is cleared. */
+    private static final int ID_CACHE_SIZE = 1024;
+
     public MultiGraphQualifierHierarchy(MultiGraphFactory f) {
         this(f, (Object[]) null);
     }
@@ -207,6 +247,57 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
         this.supertypesMap = Collections.unmodifiableMap(fullMap);
         // System.out.println("MGH: " + this);
+
+        List<AnnotationMirror> qualifiers = new ArrayList<>();
+        this.idsByName = new HashMap<>();
+        for (AnnotationMirror qual : fullMap.keySet()) {
+            if (qual.getElementValues().isEmpty()) {
+                idsByName.put(AnnotationUtils.annotationName(qual), qualifiers.size());
+                qualifiers.add(qual);
+            }
+        }
+        int n = qualifiers.size();
+        this.qualifiersById = qualifiers.toArray(new AnnotationMirror[n]);
+        this.supertypeIds = new BitSet[n];
+        for (int id = 0; id < n; id++) {
+            BitSet supers = new BitSet(n);
+            for (AnnotationMirror sup : fullMap.get(qualifiersById[id])) {
+                // areSame only holds for supertypes without element values.
+                Integer supId = idsByName.get(AnnotationUtils.annotationName(sup));
+                if (supId != null && AnnotationUtils.areSame(sup, qualifiersById[supId])) {
+                    supers.set(supId);
+                }
+            }
+            supertypeIds[id] = supers;
+        }
+        this.topsById = new AnnotationMirror[n];
+        this.lubsById = new AnnotationMirror[n * n];
+        this.glbsById = new AnnotationMirror[n * n];
+    }
+
+    /**
+     * Returns the id of the given qualifier in {@link #qualifiersById}, or -1 if it has element
+     * values or is not in the hierarchy. Also returns -1 while the hierarchy is being constructed.
+     */
+    private int qualifierId(AnnotationMirror anno) {
+        if (anno == null || qualifiersById == null) {
+            return -1;
+        }
+        Integer id = idCache.get(anno);
+        if (id == null) {
+            id = -1;
+            if (anno.getElementValues().isEmpty()) {
+                Integer byName = idsByName.get(AnnotationUtils.annotationName(anno));
+                if (byName != null) {
+                    id = byName;
+                }
+            }
+            if (idCache.size() >= ID_CACHE_SIZE) {
+                idCache.clear();
+            }
+            idCache.put(anno, id);
+        }
+        return id;
     }
 
     /**
@@ -279,6 +370,17 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
     @Override
     public AnnotationMirror getTopAnnotation(AnnotationMirror start) {
+        int id = qualifierId(start);
+        if (id >= 0) {
+            if (topsById[id] == null) {
+                topsById[id] = findTopAnnotation(qualifiersById[id]);
+            }
+            return topsById[id];
+        }
+        return findTopAnnotation(start);
+    }
+
+    private AnnotationMirror findTopAnnotation(AnnotationMirror start) {
         for (AnnotationMirror top : tops) {
             if (AnnotationUtils.areSame(start, top) || isSubtype(start, top)) {
                 return top;
@@ -396,6 +498,27 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
     @Override
     public AnnotationMirror leastUpperBound(AnnotationMirror a1, AnnotationMirror a2) {
+        int id1 = qualifierId(a1);
+        int id2 = qualifierId(a2);
+        if (id1 >= 0 && id2 >= 0) {
+            int index = id1 * qualifiersById.length + id2;
+            if (!lubsComputed.get(index)) {
+                lubsById[index] = findLeastUpperBound(qualifiersById[id1], qualifiersById[id2]);
+                lubsComputed.set(index);
+            }
+            // Like findLeastUpperBound, return the arguments themselves if one is the lub.
+            AnnotationMirror lub = lubsById[index];
+            if (lub == qualifiersById[id2]) {
+                return a2;
+            } else if (lub == qualifiersById[id1]) {
+                return a1;
+            }
+            return lub;
+        }
+        return findLeastUpperBound(a1, a2);
+    }
+
+    private AnnotationMirror findLeastUpperBound(AnnotationMirror a1, AnnotationMirror a2) {
         if (!AnnotationUtils.areSameIgnoringValues(getTopAnnotation(a1), getTopAnnotation(a2))) {
             return null;
         } else if (isSubtype(a1, a2)) {
@@ -426,6 +549,23 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
     @Override
     public AnnotationMirror greatestLowerBound(AnnotationMirror a1, AnnotationMirror a2) {
+        int id1 = qualifierId(a1);
+        int id2 = qualifierId(a2);
+        if (id1 >= 0 && id2 >= 0) {
+            if (id1 == id2) {
+                return a1;
+            }
+            int index = id1 * qualifiersById.length + id2;
+            if (!glbsComputed.get(index)) {
+                glbsById[index] = findGreatestLowerBound(qualifiersById[id1], qualifiersById[id2]);
+                glbsComputed.set(index);
+            }
+            return glbsById[index];
+        }
+        return findGreatestLowerBound(a1, a2);
+    }
+
+    private AnnotationMirror findGreatestLowerBound(AnnotationMirror a1, AnnotationMirror a2) {
         if (AnnotationUtils.areSameIgnoringValues(a1, a2)) {
             return AnnotationUtils.areSame(a1, a2) ? a1 : getBottomAnnotation(a1);
         }
@@ -462,6 +602,12 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
      */
     @Override
     public boolean isSubtype(AnnotationMirror rhs, AnnotationMirror lhs) {
+        int rhsId = qualifierId(rhs);
+        int lhsId = qualifierId(lhs);
+        if (rhsId >= 0 && lhsId >= 0) {
+            return rhsId == lhsId || supertypeIds[rhsId].get(lhsId);
+        }
+
         checkAnnoInGraph(rhs);
         checkAnnoInGraph(lhs);
 
@@ -0,0 +1,527 @@
+package org.checkerframework.framework.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A hash map whose copies share structure with each other. The entries are kept in a hash array
+ * mapped trie whose nodes are never modified once they are shared, so {@link #copy()} takes
+ * constant time, and an update only copies the nodes on the path to the updated entry.
+ *
+ * <p>The map itself is mutable and implements the usual {@link Map} interface. Nodes that were
+ * created by this map since its last copy are updated in place, so a sequence of updates to a map
+ * that is not shared costs about as much as with a {@link java.util.HashMap}.
+ *
+ * <p>Two maps that were copied from each other can be compared cheaply with {@link
+ * #containsAllEntries(PersistentHashMap)}, which skips the subtrees they still share.
+ *
+ * <p>This class is not thread-safe. It permits null keys and values. {@link Map.Entry#setValue}
+ * is not supported.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    /** The number of hash bits used on each level of the trie. */
+    private static final int BITS = 5;
+
+    /** The mask to extract the bits of one level from a hash. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** The maximal depth of the trie: enough levels to consume all 32 bits of a hash. */
+    private static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+
+    /** The root of the trie, or null if the map is empty. */
+    private Node root;
+
+    /** The number of entries in the map. */
+    private int size;
+
+    /**
+     * The nodes whose owner is this token can be modified in place. All other nodes may be shared
+     * with another map. A new token is chosen whenever the map is copied.
+     */
+    private Object owner;
+
+    /** The value that was replaced or removed by the current call to put or remove. */
+    private Object oldValue;
+
+    /** Creates an empty map. */
+    public PersistentHashMap() {
+        this.owner = new Object();
+    }
+
+    /**
+     * Creates a map with the same entries as {@code map}. If {@code map} is a PersistentHashMap,
+     * this takes constant time and the two maps share their structure.
+     */
+    public PersistentHashMap(Map<? extends K, ? extends V> map) {
+        this();
+        if (map instanceof PersistentHashMap) {
+            PersistentHashMap<? extends K, ? extends V> other =
+                    (PersistentHashMap<? extends K, ? extends V>) map;
+            this.root = other.root;
+            this.size = other.size;
+            // The nodes are now shared, so neither map may modify them in place.
+            other.owner = new Object();
+        } else {
+            putAll(map);
+        }
+    }
+
+    /** Returns a copy of this map in constant time. */
+    public PersistentHashMap<K, V> copy() {
+        return new PersistentHashMap<>(this);
+    }
+
+    /** An entry of the map. Entries with equal hashes are kept in a linked list. */
+    private static final class Leaf implements Map.Entry<Object, Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+        /** The next entry with the same hash, or null. */
+        final Leaf next;
+
+        Leaf(int hash, Object key, Object value, Leaf next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * An inner node of the trie. Slot i holds the i-th set bit of {@code bitmap}; it is either a
+     * {@link Leaf} or a {@link Node}.
+     */
+    private static final class Node {
+        final Object owner;
+        int bitmap;
+        Object[] slots;
+
+        Node(Object owner, int bitmap, Object[] slots) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = find(key);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    /** Returns the entry for {@code key}, or null if there is none. */
+    private Leaf find(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[index(node.bitmap, bit)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                shift += BITS;
+            } else {
+                for (Leaf leaf = (Leaf) slot; leaf != null; leaf = leaf.next) {
+                    if (leaf.hash == hash && Objects.equals(leaf.key, key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int hash = hash(key);
+        oldValue = null;
+        if (root == null) {
+            root = new Node(owner, bit(hash, 0), new Object[] {new Leaf(hash, key, value, null)});
+            size++;
+        } else {
+            root = put(root, 0, hash, key, value);
+        }
+        V result = (V) oldValue;
+        oldValue = null;
+        return result;
+    }
+
+    private Node put(Node node, int shift, int hash, Object key, Object value) {
+        int bit = bit(hash, shift);
+        int idx = index(node.bitmap, bit);
+        if ((node.bitmap & bit) == 0) {
+            size++;
+            return insertSlot(node, bit, idx, new Leaf(hash, key, value, null));
+        }
+        Object slot = node.slots[idx];
+        Object newSlot;
+        if (slot instanceof Node) {
+            newSlot = put((Node) slot, shift + BITS, hash, key, value);
+        } else {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash == hash) {
+                newSlot = putInChain(leaf, hash, key, value);
+            } else {
+                size++;
+                newSlot = pair(shift + BITS, leaf, new Leaf(hash, key, value, null));
+            }
+        }
+        return newSlot == slot ? node : setSlot(node, idx, newSlot);
+    }
+
+    /** Puts the entry into a list of entries with the same hash; returns the new list. */
+    private Leaf putInChain(Leaf chain, int hash, Object key, Object value) {
+        for (Leaf leaf = chain; leaf != null; leaf = leaf.next) {
+            if (Objects.equals(leaf.key, key)) {
+                oldValue = leaf.value;
+                if (leaf.value == value) {
+                    return chain;
+                }
+                return new Leaf(hash, key, value, removeFromChain(chain, leaf));
+            }
+        }
+        size++;
+        return new Leaf(hash, key, value, chain);
+    }
+
+    /** Returns the list {@code chain} without {@code toRemove}, sharing the tail after it. */
+    private static Leaf removeFromChain(Leaf chain, Leaf toRemove) {
+        if (chain == toRemove) {
+            return chain.next;
+        }
+        return new Leaf(chain.hash, chain.key, chain.value, removeFromChain(chain.next, toRemove));
+    }
+
+    /** Returns a new node, at level {@code shift}, that holds two leaves with different hashes. */
+    private Node pair(int shift, Leaf a, Leaf b) {
+        int bitA = bit(a.hash, shift);
+        int bitB = bit(b.hash, shift);
+        if (bitA == bitB) {
+            return new Node(owner, bitA, new Object[] {pair(shift + BITS, a, b)});
+        }
+        int bitmap = bitA | bitB;
+        Object[] slots = index(bitmap, bitA) == 0 ? new Object[] {a, b} : new Object[] {b, a};
+        return new Node(owner, bitmap, slots);
+    }
+
+    private Node setSlot(Node node, int idx, Object slot) {
+        if (node.owner == owner) {
+            node.slots[idx] = slot;
+            return node;
+        }
+        Object[] slots = node.slots.clone();
+        slots[idx] = slot;
+        return new Node(owner, node.bitmap, slots);
+    }
+
+    private Node insertSlot(Node node, int bit, int idx, Object slot) {
+        Object[] slots = new Object[node.slots.length + 1];
+        System.arraycopy(node.slots, 0, slots, 0, idx);
+        slots[idx] = slot;
+        System.arraycopy(node.slots, idx, slots, idx + 1, node.slots.length - idx);
+        if (node.owner == owner) {
+            node.bitmap |= bit;
+            node.slots = slots;
+            return node;
+        }
+        return new Node(owner, node.bitmap | bit, slots);
+    }
+
+    /** Returns the node without the slot {@code idx}, or null if that was the only slot. */
+    private Node removeSlot(Node node, int bit, int idx) {
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, idx);
+        System.arraycopy(node.slots, idx + 1, slots, idx, slots.length - idx);
+        if (node.owner == owner) {
+            node.bitmap &= ~bit;
+            node.slots = slots;
+            return node;
+        }
+        return new Node(owner, node.bitmap & ~bit, slots);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (root == null) {
+            return null;
+        }
+        oldValue = null;
+        root = remove(root, 0, hash(key), key);
+        V result = (V) oldValue;
+        oldValue = null;
+        return result;
+    }
+
+    /** Removes the entry from the subtree; returns the new subtree, or null if it is empty. */
+    private Node remove(Node node, int shift, int hash, Object key) {
+        int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int idx = index(node.bitmap, bit);
+        Object slot = node.slots[idx];
+        Object newSlot;
+        if (slot instanceof Node) {
+            Node child = remove((Node) slot, shift + BITS, hash, key);
+            if (child != null && child.slots.length == 1 && child.slots[0] instanceof Leaf) {
+                // Keep the trie compact: a subtree with a single list of entries is replaced
+                // by that list.
+                newSlot = child.slots[0];
+            } else {
+                newSlot = child;
+            }
+        } else {
+            Leaf chain = (Leaf) slot;
+            Leaf found = null;
+            for (Leaf leaf = chain; leaf != null; leaf = leaf.next) {
+                if (leaf.hash == hash && Objects.equals(leaf.key, key)) {
+                    found = leaf;
+                    break;
+                }
+            }
+            if (found == null) {
+                return node;
+            }
+            oldValue = found.value;
+            size--;
+            newSlot = removeFromChain(chain, found);
+        }
+        if (newSlot == slot) {
+            return node;
+        }
+        return newSlot == null ? removeSlot(node, bit, idx) : setSlot(node, idx, newSlot);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Returns true if this map contains every entry of {@code other}, with a value that is equal
+     * according to the {@code equals} method of the value in this map. Subtrees that this map
+     * shares with {@code other} are skipped without looking at their entries.
+     */
+    public boolean containsAllEntries(PersistentHashMap<K, V> other) {
+        if (other.root == null || other.root == root) {
+            return true;
+        }
+        if (other.size > size) {
+            return false;
+        }
+        return containsAllEntries(root, other.root);
+    }
+
+    private boolean containsAllEntries(Node mine, Node theirs) {
+        int bitmap = theirs.bitmap;
+        for (int i = 0; i < theirs.slots.length; i++) {
+            int bit = Integer.lowestOneBit(bitmap);
+            bitmap &= ~bit;
+            Object theirSlot = theirs.slots[i];
+            Object mySlot =
+                    mine != null && (mine.bitmap & bit) != 0
+                            ? mine.slots[index(mine.bitmap, bit)]
+                            : null;
+            if (theirSlot == mySlot) {
+                continue;
+            }
+            if (theirSlot instanceof Node && mySlot instanceof Node) {
+                if (!containsAllEntries((Node) mySlot, (Node) theirSlot)) {
+                    return false;
+                }
+            } else if (!containsAllLeaves(theirSlot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if this map contains all entries of the given subtree of another map. */
+    private boolean containsAllLeaves(Object slot) {
+        if (slot instanceof Node) {
+            for (Object child : ((Node) slot).slots) {
+                if (!containsAllLeaves(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (Leaf leaf = (Leaf) slot; leaf != null; leaf = leaf.next) {
+            Leaf mine = find(leaf.key);
+            if (mine == null || !Objects.equals(mine.value, leaf.value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries of the trie. The iterator is a snapshot only with respect to its own
+     * {@link #remove()} and to changes of copies of the map: both modify copies of the nodes being
+     * iterated. Other changes to the map during iteration modify the nodes that the map owns in
+     * place, and the iterator may or may not see them.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        /** The nodes on the path to the current position; {@code nodes[0]} is the root. */
+        private final Node[] nodes = new Node[MAX_DEPTH + 1];
+        /** The index of the next slot to visit in each node of {@link #nodes}. */
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        /** The depth of the innermost node in {@link #nodes}, or -1 if all nodes are visited. */
+        private int depth;
+        /** The next entry to return, or null if there is none. */
+        private Leaf next;
+        /** The entry returned last, for {@link #remove()}. */
+        private Leaf last;
+
+        EntryIterator() {
+            if (root == null) {
+                depth = -1;
+            } else {
+                nodes[0] = root;
+                depth = 0;
+                advance();
+            }
+        }
+
+        /** Sets {@link #next} to the first entry of the next slot that holds entries. */
+        private void advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (positions[depth] == node.slots.length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = node.slots[positions[depth]++];
+                if (slot instanceof Node) {
+                    depth++;
+                    nodes[depth] = (Node) slot;
+                    positions[depth] = 0;
+                } else {
+                    next = (Leaf) slot;
+                    return;
+                }
+            }
+            next = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            if (next.next != null) {
+                next = next.next;
+            } else {
+                advance();
+            }
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            // Modify copies of the nodes, not the nodes being iterated.
+            owner = new Object();
+            PersistentHashMap.this.remove(last.key);
+            last = null;
+        }
+    }
+}
@@ -26,10 +26,12 @@ import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutab
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedPrimitiveType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedTypeVariable;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
+import org.checkerframework.framework.type.AtmCacheKeys;
 import org.checkerframework.framework.type.GeneralAnnotatedTypeFactory;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.TypeHierarchy;
 import org.checkerframework.framework.util.AnnotatedTypes;
+import org.checkerframework.framework.util.OptionConfiguration;
 import org.checkerframework.framework.util.PluginUtil;
 import org.checkerframework.framework.util.typeinference.constraint.A2F;
 import org.checkerframework.framework.util.typeinference.constraint.A2FReducer;
@@ -50,6 +52,8 @@ import org.checkerframework.framework.util.typeinference.solver.InferredValue;
 import org.checkerframework.framework.util.typeinference.solver.InferredValue.InferredType;
 import org.checkerframework.framework.util.typeinference.solver.SubtypesSolver;
 import org.checkerframework.framework.util.typeinference.solver.SupertypesSolver;
+import org.checkerframework.framework.util.typeinference.solver.UnionFindEqualitiesSolver;
+import org.checkerframework.javacutil.CollectionUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.Pair;
 import org.checkerframework.javacutil.TypesUtils;
@@ -93,11 +97,27 @@ import org.checkerframework.javacutil.TypesUtils;
  * </ul>
  */
 public class DefaultTypeArgumentInference implements TypeArgumentInference {
-    private final EqualitiesSolver equalitiesSolver = new EqualitiesSolver();
+    /** Created on first use; see {@link #createEqualitiesSolver}. */
+    private EqualitiesSolver equalitiesSolver;
     private final SupertypesSolver supertypesSolver = new SupertypesSolver();
     private final SubtypesSolver subtypesSolver = new SubtypesSolver();
     private final ConstraintMapBuilder constraintMapBuilder = new ConstraintMapBuilder();
 
+    /** Size of the cache of inferred type arguments. */
+    private static final int INFERENCE_CACHE_SIZE = 300;
+
+    /**
+     * Caches the type arguments inferred for an invocation, keyed by the method and the types that
+     * the inference depends on. Created on first use; see {@link #getInferenceCache}.
+     */
+    private Map<InferenceQuery, Map<TypeVariable, AnnotatedTypeMirror>> inferenceCache;
+
+    /** True if the cache of inferred type arguments is disabled by an option. */
+    private boolean inferenceCacheDisabled = false;
+
+    /** Statistics about the use of the inference cache. */
+    private int inferenceCacheHits = 0, inferenceCacheMisses = 0;
+
     @Override
     public Map<TypeVariable, AnnotatedTypeMirror> inferTypeArgs(
             AnnotatedTypeFactory typeFactory,
@@ -112,9 +132,36 @@ public class DefaultTypeArgumentInference implements TypeArgumentInference {
             return new HashMap<>();
         }
 
+        if (equalitiesSolver == null) {
+            equalitiesSolver = createEqualitiesSolver(typeFactory);
+        }
+
         final List<AnnotatedTypeMirror> argTypes = getArgumentTypes(expressionTree, typeFactory);
         final AnnotatedTypeMirror assignedTo = getAssignedTo(expressionTree, typeFactory);
 
+        Map<InferenceQuery, Map<TypeVariable, AnnotatedTypeMirror>> cache =
+                getInferenceCache(typeFactory);
+        List<AnnotatedTypeMirror> queryTypes = null;
+        if (cache != null) {
+            queryTypes =
+                    InferenceQuery.queryTypes(
+                            methodType,
+                            argTypes,
+                            assignedTo,
+                            assignedTo == null
+                                    ? getInvocationReceiver(typeFactory, expressionTree)
+                                    : null);
+        }
+        if (queryTypes != null) {
+            Map<TypeVariable, AnnotatedTypeMirror> cached =
+                    cache.get(new InferenceQuery(methodElem, queryTypes));
+            if (cached != null) {
+                inferenceCacheHits++;
+                return copyInferredArgs(cached);
+            }
+            inferenceCacheMisses++;
+        }
+
         final Set<TypeVariable> targets = TypeArgInferenceUtil.methodTypeToTargets(methodType);
         final Map<TypeVariable, AnnotatedTypeMirror> inferredArgs =
                 infer(
@@ -131,9 +178,146 @@ public class DefaultTypeArgumentInference implements TypeArgumentInference {
 
         handleUninferredTypeVariables(methodType, targets, inferredArgs);
 
+        if (queryTypes != null) {
+            // The types may be modified later, so the cache keeps copies.
+            List<AnnotatedTypeMirror> queryTypesCopy =
+                    new ArrayList<AnnotatedTypeMirror>(queryTypes.size());
+            for (AnnotatedTypeMirror type : queryTypes) {
+                queryTypesCopy.add(type == null ? null : type.deepCopy());
+            }
+            cache.put(
+                    new InferenceQuery(methodElem, queryTypesCopy),
+                    copyInferredArgs(inferredArgs));
+        }
         return inferredArgs;
     }
 
+    /**
+     * Creates the solver for equality constraints: a {@link UnionFindEqualitiesSolver} if the
+     * {@code -AinferenceUnionFind} option is passed, an {@link EqualitiesSolver} otherwise.
+     */
+    protected EqualitiesSolver createEqualitiesSolver(AnnotatedTypeFactory typeFactory) {
+        if (typeFactory.getContext().getChecker().hasOption("inferenceUnionFind")) {
+            return new UnionFindEqualitiesSolver();
+        }
+        return new EqualitiesSolver();
+    }
+
+    /**
+     * Returns the cache of inferred type arguments, creating it on first use, or null if caching
+     * is disabled by the {@code -AinferenceDoNotCache} or {@code -AatfDoNotCache} option.
+     */
+    private Map<InferenceQuery, Map<TypeVariable, AnnotatedTypeMirror>> getInferenceCache(
+            AnnotatedTypeFactory typeFactory) {
+        if (inferenceCache == null && !inferenceCacheDisabled) {
+            OptionConfiguration options = typeFactory.getContext().getChecker();
+            if (options.hasOption("inferenceDoNotCache") || options.hasOption("atfDoNotCache")) {
+                inferenceCacheDisabled = true;
+            } else {
+                inferenceCache =
+                        CollectionUtils
+                                .<InferenceQuery, Map<TypeVariable, AnnotatedTypeMirror>>
+                                        createLRUCache(INFERENCE_CACHE_SIZE);
+            }
+        }
+        return inferenceCache;
+    }
+
+    /** Returns the number of invocations whose type arguments were taken from the cache. */
+    public int getCacheHits() {
+        return inferenceCacheHits;
+    }
+
+    /** Returns the number of cacheable invocations whose type arguments were not in the cache. */
+    public int getCacheMisses() {
+        return inferenceCacheMisses;
+    }
+
+    /** Returns a description of how well the cache of inferred type arguments performed. */
+    public String getCacheStatistics() {
+        int queries = inferenceCacheHits + inferenceCacheMisses;
+        return "type argument inference cache: "
+                + inferenceCacheHits
+                + " hits, "
+                + inferenceCacheMisses
+                + " misses"
+                + (queries == 0 ? "" : " (" + (100L * inferenceCacheHits / queries) + "% hits)");
+    }
+
+    private static Map<TypeVariable, AnnotatedTypeMirror> copyInferredArgs(
+            Map<TypeVariable, AnnotatedTypeMirror> inferredArgs) {
+        Map<TypeVariable, AnnotatedTypeMirror> copy =
+                new HashMap<TypeVariable, AnnotatedTypeMirror>(inferredArgs.size());
+        for (Map.Entry<TypeVariable, AnnotatedTypeMirror> entry : inferredArgs.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().deepCopy());
+        }
+        return copy;
+    }
+
+    /**
+     * The inputs of an inference that are not derived from the method element alone: the annotated
+     * method type, the argument types, the assignment context and, if there is no assignment
+     * context, the receiver type used by {@link #createInvocationConstraints}. Types are compared
+     * by {@link AtmCacheKeys}. Type variables are compared by the identity of their underlying Java
+     * type, so that the type variables in a cached result are the ones of the method type being
+     * inferred.
+     */
+    private static final class InferenceQuery {
+        private final ExecutableElement methodElem;
+        private final List<AnnotatedTypeMirror> types;
+        private final int hashCode;
+
+        InferenceQuery(ExecutableElement methodElem, List<AnnotatedTypeMirror> types) {
+            this.methodElem = methodElem;
+            this.types = types;
+            int hash = methodElem.hashCode();
+            for (AnnotatedTypeMirror type : types) {
+                hash = 31 * hash + AtmCacheKeys.hash(type);
+            }
+            this.hashCode = hash;
+        }
+
+        /**
+         * Returns the types that identify an inference, or null if one of them cannot be compared
+         * structurally.
+         */
+        static List<AnnotatedTypeMirror> queryTypes(
+                AnnotatedExecutableType methodType,
+                List<AnnotatedTypeMirror> argTypes,
+                AnnotatedTypeMirror assignedTo,
+                AnnotatedTypeMirror invocationReceiver) {
+            List<AnnotatedTypeMirror> types = new ArrayList<AnnotatedTypeMirror>();
+            types.addAll(methodType.getTypeVariables());
+            types.addAll(methodType.getParameterTypes());
+            types.add(methodType.getReturnType());
+            types.add(assignedTo);
+            types.add(invocationReceiver);
+            types.addAll(argTypes);
+            for (AnnotatedTypeMirror type : types) {
+                if (!AtmCacheKeys.isCacheable(type, true)) {
+                    return null;
+                }
+            }
+            return types;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof InferenceQuery)) {
+                return false;
+            }
+            InferenceQuery other = (InferenceQuery) o;
+            return hashCode == other.hashCode
+                    && methodElem == other.methodElem
+                    && AtmCacheKeys.areEqual(types, other.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
      * If one of the inferredArgs are NullType, then re-run inference ignoring null method
      * arguments. Then lub the result of the second inference with the NullType and put the new
@@ -518,13 +702,7 @@ public class DefaultTypeArgumentInference implements TypeArgumentInference {
             final ExpressionTree expressionTree,
             final AnnotatedExecutableType methodType) {
         // Try to detect a receiver type
-        final TreePath path = typeFactory.getPath(expressionTree);
-        if (path == null) {
-            return Collections.emptySet();
-        }
-
-        final AnnotatedTypeMirror receiverType =
-                TypeArgInferenceUtil.assignedTo(typeFactory, path, true);
+        final AnnotatedTypeMirror receiverType = getInvocationReceiver(typeFactory, expressionTree);
         if (receiverType == null || receiverType.getKind() != TypeKind.DECLARED) {
             return Collections.emptySet();
         }
@@ -555,6 +733,19 @@ public class DefaultTypeArgumentInference implements TypeArgumentInference {
         return afConstraints;
     }
 
+    /**
+     * Returns the type of the receiver of the method invocation of which {@code expressionTree} is
+     * an argument, or null if there is none.
+     */
+    private AnnotatedTypeMirror getInvocationReceiver(
+            final AnnotatedTypeFactory typeFactory, final ExpressionTree expressionTree) {
+        final TreePath path = typeFactory.getPath(expressionTree);
+        if (path == null) {
+            return null;
+        }
+        return TypeArgInferenceUtil.assignedTo(typeFactory, path, true);
+    }
+
     /**
      * Step 2. Infer type arguments from the equality (TisU) and the supertype (TSuperU) constraints
      * of the methods arguments.
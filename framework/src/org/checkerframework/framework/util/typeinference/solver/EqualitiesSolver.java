@@ -45,8 +45,20 @@ public class EqualitiesSolver {
             Set<TypeVariable> targets,
             ConstraintMap constraintMap,
             AnnotatedTypeFactory typeFactory) {
-        final InferenceResult solution = new InferenceResult();
+        return solveEqualities(targets, constraintMap, typeFactory, new InferenceResult());
+    }
 
+    /**
+     * Like {@link #solveEqualities(Set, ConstraintMap, AnnotatedTypeFactory)}, but starts from a
+     * partial solution. Targets that are already in {@code solution} are not solved again.
+     *
+     * @param solution the partial solution, which is extended and returned
+     */
+    protected InferenceResult solveEqualities(
+            Set<TypeVariable> targets,
+            ConstraintMap constraintMap,
+            AnnotatedTypeFactory typeFactory,
+            final InferenceResult solution) {
         do {
             dirty = false;
             for (TypeVariable target : targets) {
@@ -257,7 +269,7 @@ public class EqualitiesSolver {
     }
 
     /** Creates a declaration AnnotatedTypeVariable for TypeVariable. */
-    private AnnotatedTypeVariable createAnnotatedTypeVar(
+    protected AnnotatedTypeVariable createAnnotatedTypeVar(
             final TypeVariable typeVariable, final AnnotatedTypeFactory typeFactory) {
         return (AnnotatedTypeVariable) typeFactory.getAnnotatedType(typeVariable.asElement());
     }
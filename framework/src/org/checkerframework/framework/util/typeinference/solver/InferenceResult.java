@@ -1,5 +1,6 @@
 package org.checkerframework.framework.util.typeinference.solver;
 
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -130,9 +131,25 @@ public class InferenceResult extends LinkedHashMap<TypeVariable, InferredValue>
     /** Performs a merge for a specific target, we keep only results that lead to a concrete type */
     protected InferredType mergeTarget(
             final TypeVariable target, final InferenceResult subordinate) {
+        return mergeTarget(target, subordinate, new HashSet<TypeVariable>());
+    }
+
+    /**
+     * Performs a merge for a specific target, following the chain of inferred targets at most
+     * once through each of {@code visited}: a cycle of targets that are equal to each other does
+     * not lead to a concrete type.
+     */
+    private InferredType mergeTarget(
+            final TypeVariable target,
+            final InferenceResult subordinate,
+            final Set<TypeVariable> visited) {
         final InferredValue inferred = this.get(target);
         if (inferred instanceof InferredTarget) {
-            InferredType newType = mergeTarget(((InferredTarget) inferred).target, subordinate);
+            if (!visited.add(target)) {
+                return null;
+            }
+            InferredType newType =
+                    mergeTarget(((InferredTarget) inferred).target, subordinate, visited);
 
             if (newType == null) {
                 final InferredValue subValue = subordinate.get(target);
@@ -0,0 +1,259 @@
+package org.checkerframework.framework.util.typeinference.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.type.TypeVariable;
+import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.util.typeinference.TypeArgInferenceUtil;
+import org.checkerframework.framework.util.typeinference.solver.InferredValue.InferredTarget;
+import org.checkerframework.framework.util.typeinference.solver.TargetConstraints.Equalities;
+
+/**
+ * An EqualitiesSolver that first groups the targets that are equal to each other in all qualifier
+ * hierarchies into equivalence classes, using union-find with path compression and union by rank.
+ *
+ * <p>The constraints of all targets in a class are moved, once, to one representative target,
+ * and every other target in the class is inferred to be the representative. Uses of the other
+ * targets in the remaining constraints are replaced by the representative. The {@link
+ * EqualitiesSolver} algorithm then only has to solve the representatives and the targets that
+ * are not equal to any other target, instead of discovering the equalities between targets one
+ * rewrite at a time.
+ *
+ * <p>The representative of a class is its last target in iteration order, which is the target
+ * that the other targets of a two-element class are rewritten to by {@link EqualitiesSolver}.
+ * Unlike {@link EqualitiesSolver}, which leaves the subtype constraints with each target, this
+ * also moves the subtype constraints to the representative: the targets of a class are equal, so
+ * the bounds of each of them bound the representative, and the subtypes solver then computes one
+ * greatest lower bound for the whole class instead of a possibly different one per target.
+ */
+public class UnionFindEqualitiesSolver extends EqualitiesSolver {
+
+    @Override
+    public InferenceResult solveEqualities(
+            Set<TypeVariable> targets,
+            ConstraintMap constraintMap,
+            AnnotatedTypeFactory typeFactory) {
+        final int hierarchies = typeFactory.getQualifierHierarchy().getTopAnnotations().size();
+        final List<TypeVariable> targetList = new ArrayList<>(targets);
+        final Map<TypeVariable, Integer> indices = new HashMap<>();
+        for (int i = 0; i < targetList.size(); i++) {
+            indices.put(targetList.get(i), i);
+        }
+
+        final int[] parents = new int[targetList.size()];
+        final int[] ranks = new int[targetList.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+
+        boolean merged = false;
+        for (int i = 0; i < targetList.size(); i++) {
+            final Equalities equalities =
+                    constraintMap.getConstraints(targetList.get(i)).equalities;
+            for (Entry<TypeVariable, Set<AnnotationMirror>> targetToHierarchies :
+                    equalities.targets.entrySet()) {
+                final Integer other = indices.get(targetToHierarchies.getKey());
+                if (other != null && targetToHierarchies.getValue().size() == hierarchies) {
+                    merged |= union(parents, ranks, i, other);
+                }
+            }
+        }
+
+        final InferenceResult solution = new InferenceResult();
+        if (merged) {
+            mergeClasses(targetList, parents, constraintMap, typeFactory, solution);
+        }
+        return solveEqualities(targets, constraintMap, typeFactory, solution);
+    }
+
+    /** Returns the root of the class of {@code i}, compressing the path to it. */
+    private static int find(int[] parents, int i) {
+        int root = i;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[i] != root) {
+            int next = parents[i];
+            parents[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+    /** Merges the classes of {@code i} and {@code j}; returns false if they were the same. */
+    private static boolean union(int[] parents, int[] ranks, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if (rootI == rootJ) {
+            return false;
+        }
+        if (ranks[rootI] < ranks[rootJ]) {
+            parents[rootI] = rootJ;
+        } else if (ranks[rootI] > ranks[rootJ]) {
+            parents[rootJ] = rootI;
+        } else {
+            parents[rootJ] = rootI;
+            ranks[rootI]++;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the constraints of every target that is not the representative of its class to the
+     * representative, records that the target is equal to the representative in {@code
+     * solution}, and replaces the target in the constraints of all other targets.
+     */
+    private void mergeClasses(
+            List<TypeVariable> targetList,
+            int[] parents,
+            ConstraintMap constraintMap,
+            AnnotatedTypeFactory typeFactory,
+            InferenceResult solution) {
+        final int[] representatives = new int[targetList.size()];
+        for (int i = 0; i < targetList.size(); i++) {
+            representatives[find(parents, i)] = i;
+        }
+
+        final Map<TypeVariable, TypeVariable> replacements = new HashMap<>();
+        final Map<TypeVariable, AnnotatedTypeMirror> substitutions = new HashMap<>();
+        for (int i = 0; i < targetList.size(); i++) {
+            final int representative = representatives[find(parents, i)];
+            if (representative != i) {
+                final TypeVariable rep = targetList.get(representative);
+                replacements.put(targetList.get(i), rep);
+                substitutions.put(targetList.get(i), createAnnotatedTypeVar(rep, typeFactory));
+            }
+        }
+
+        for (final TypeVariable target : targetList) {
+            final TypeVariable rep = replacements.get(target);
+            if (rep == null) {
+                continue;
+            }
+            final TargetConstraints record = constraintMap.getConstraints(target);
+            final TargetConstraints repRecord = constraintMap.getConstraints(rep);
+
+            for (Entry<AnnotatedTypeMirror, Set<AnnotationMirror>> entry :
+                    record.equalities.types.entrySet()) {
+                constraintMap.addTypeEqualities(rep, entry.getKey(), entry.getValue());
+            }
+            for (Entry<AnnotationMirror, AnnotationMirror> entry :
+                    record.equalities.primaries.entrySet()) {
+                if (!repRecord.equalities.primaries.containsKey(entry.getKey())) {
+                    repRecord.equalities.primaries.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Entry<TypeVariable, Set<AnnotationMirror>> entry :
+                    record.equalities.targets.entrySet()) {
+                constraintMap.addTargetEquality(rep, entry.getKey(), entry.getValue());
+            }
+
+            for (Entry<AnnotatedTypeMirror, Set<AnnotationMirror>> entry :
+                    record.supertypes.types.entrySet()) {
+                constraintMap.addTypeSupertype(rep, entry.getKey(), entry.getValue());
+            }
+            for (Entry<AnnotationMirror, Set<AnnotationMirror>> entry :
+                    record.supertypes.primaries.entrySet()) {
+                addAll(repRecord.supertypes.primaries, entry.getKey(), entry.getValue());
+            }
+            for (Entry<TypeVariable, Set<AnnotationMirror>> entry :
+                    record.supertypes.targets.entrySet()) {
+                constraintMap.addTargetSupertype(rep, entry.getKey(), entry.getValue());
+            }
+
+            for (Entry<AnnotatedTypeMirror, Set<AnnotationMirror>> entry :
+                    record.subtypes.types.entrySet()) {
+                addAll(repRecord.subtypes.types, entry.getKey(), entry.getValue());
+            }
+            for (Entry<AnnotationMirror, Set<AnnotationMirror>> entry :
+                    record.subtypes.primaries.entrySet()) {
+                addAll(repRecord.subtypes.primaries, entry.getKey(), entry.getValue());
+            }
+            for (Entry<TypeVariable, Set<AnnotationMirror>> entry :
+                    record.subtypes.targets.entrySet()) {
+                constraintMap.addTargetSubtype(rep, entry.getKey(), entry.getValue());
+            }
+
+            record.equalities.clear();
+            record.supertypes.clear();
+            record.subtypes.clear();
+            solution.put(
+                    target, new InferredTarget(rep, Collections.<AnnotationMirror>emptySet()));
+        }
+
+        for (final TypeVariable target : constraintMap.getTargets()) {
+            final TargetConstraints record = constraintMap.getConstraints(target);
+            replaceTargets(target, record.equalities.targets, replacements);
+            substitute(record.equalities.types, substitutions);
+            replaceTargets(target, record.supertypes.targets, replacements);
+            substitute(record.supertypes.types, substitutions);
+            replaceTargets(target, record.subtypes.targets, replacements);
+            substitute(record.subtypes.types, substitutions);
+        }
+    }
+
+    /** Adds {@code values} to the set that {@code map} maps {@code key} to. */
+    private static <K> void addAll(
+            Map<K, Set<AnnotationMirror>> map, K key, Set<AnnotationMirror> values) {
+        Set<AnnotationMirror> set = map.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<>();
+            map.put(key, set);
+        }
+        set.addAll(values);
+    }
+
+    /**
+     * Replaces each target in {@code targets} by its representative, merging the hierarchies of
+     * targets with the same representative, and drops {@code owner}, which would be a constraint
+     * between a target and itself.
+     */
+    private static void replaceTargets(
+            TypeVariable owner,
+            Map<TypeVariable, Set<AnnotationMirror>> targets,
+            Map<TypeVariable, TypeVariable> replacements) {
+        final Map<TypeVariable, Set<AnnotationMirror>> toIterate = new LinkedHashMap<>(targets);
+        targets.clear();
+        for (Entry<TypeVariable, Set<AnnotationMirror>> entry : toIterate.entrySet()) {
+            TypeVariable target = entry.getKey();
+            if (replacements.containsKey(target)) {
+                target = replacements.get(target);
+            }
+            if (target == owner) {
+                continue;
+            }
+            final Set<AnnotationMirror> hierarchies = targets.get(target);
+            if (hierarchies == null) {
+                targets.put(target, entry.getValue());
+            } else {
+                hierarchies.addAll(entry.getValue());
+            }
+        }
+    }
+
+    /** Replaces uses of the targets in the keys of {@code types} by their representatives. */
+    private static void substitute(
+            Map<AnnotatedTypeMirror, Set<AnnotationMirror>> types,
+            Map<TypeVariable, AnnotatedTypeMirror> substitutions) {
+        if (types.isEmpty()) {
+            return;
+        }
+        final Map<AnnotatedTypeMirror, Set<AnnotationMirror>> toIterate =
+                new LinkedHashMap<>(types);
+        types.clear();
+        for (Entry<AnnotatedTypeMirror, Set<AnnotationMirror>> entry : toIterate.entrySet()) {
+            types.put(
+                    TypeArgInferenceUtil.substitute(substitutions, entry.getKey()),
+                    entry.getValue());
+        }
+    }
+}
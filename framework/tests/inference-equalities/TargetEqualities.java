@@ -0,0 +1,38 @@
+import java.util.List;
+import java.util.Map;
+import tests.util.Odd;
+
+// Invocations in which the type arguments of a generic method are inferred
+// to be equal to each other, or to types that differ only in their qualifiers.
+class TargetEqualities {
+    <A, B, C> Map<A, C> threeParams(List<A> a, List<B> b, List<C> c) {
+        Map<A, A> allSame = threeParams(a, a, a);
+        Map<A, C> noneSame = threeParams(a, b, c);
+        Map<B, B> twoSame = threeParams(b, a, b);
+        threeParams(c, c, a);
+        return noneSame;
+    }
+
+    // The type arguments of the recursive invocations are inferred to be equal to each other
+    // in a cycle.
+    <A, B> List<A> swapped(Map<A, B> m, Map<B, A> n, List<A> l) {
+        List<A> same = swapped(m, n, l);
+        List<B> swapped = swapped(n, m, null);
+        return same;
+    }
+
+    <A> void typeVariables(List<A> a, List<@Odd A> oddA) {
+        Map<A, @Odd A> lastOdd = threeParams(a, a, oddA);
+        //:: error: (assignment.type.incompatible)
+        Map<@Odd A, @Odd A> allOdd = threeParams(a, a, oddA);
+        //:: error: (assignment.type.incompatible)
+        Map<A, A> noneOdd = threeParams(a, oddA, oddA);
+    }
+
+    void concrete(List<@Odd String> odd, List<String> plain) {
+        Map<@Odd String, @Odd String> allOdd = threeParams(odd, odd, odd);
+        Map<String, @Odd String> mixed = threeParams(plain, odd, odd);
+        //:: error: (assignment.type.incompatible)
+        Map<@Odd String, String> wrong = threeParams(plain, plain, plain);
+    }
+}
@@ -41,6 +41,15 @@ public class AnnotationBuilderTest {
         assertEquals(0, anno.getElementValues().size());
     }
 
+    @Test
+    public void annoWithoutValuesIsCanonical() {
+        AnnotationMirror built = new AnnotationBuilder(env, Encrypted.class).build();
+        AnnotationMirror fromClass =
+                AnnotationUtils.fromClass(env.getElementUtils(), Encrypted.class);
+        assertTrue(built == fromClass);
+        assertTrue(AnnotationUtils.canonicalAnnotation(built) == built);
+    }
+
     @Test
     public void createAnnoWithValues0() {
         AnnotationBuilder builder = new AnnotationBuilder(env, AnnoWithStringArg.class);
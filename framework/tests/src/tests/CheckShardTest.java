@@ -0,0 +1,90 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tests.util.CompilationDirectory;
+
+/**
+ * Tests that the shards 0/N to (N-1)/N of the {@code -AcheckShard} option together type-check
+ * every compilation unit exactly once.
+ */
+public class CheckShardTest {
+
+    /** The number of compilation units, each of which has exactly one error. */
+    private static final int UNITS = 7;
+
+    private CompilationDirectory directory;
+
+    private File[] sources;
+
+    @Before
+    public void writeSources() throws IOException {
+        directory = new CompilationDirectory("CheckShardTest");
+        sources = new File[UNITS];
+        for (int i = 0; i < UNITS; i++) {
+            sources[i] =
+                    directory.write(
+                            "src/p/Unit" + i + ".java",
+                            "package p;\n"
+                                    + "class Unit"
+                                    + i
+                                    + " {\n"
+                                    + "    @tests.util.Encrypted Object encrypted;\n"
+                                    + "    void m(Object o) {\n"
+                                    + "        encrypted = o;\n"
+                                    + "    }\n"
+                                    + "}\n");
+        }
+    }
+
+    @After
+    public void deleteDirectory() {
+        directory.delete();
+    }
+
+    @Test
+    public void shardsCheckEveryUnitOnce() throws IOException {
+        List<String> unsharded = compile(null);
+        Assert.assertEquals(UNITS, unsharded.size());
+
+        for (int count = 1; count <= UNITS + 1; count++) {
+            List<String> sharded = new ArrayList<>();
+            for (int index = 0; index < count; index++) {
+                sharded.addAll(compile(index + "/" + count));
+            }
+            Collections.sort(sharded);
+            Collections.sort(unsharded);
+            Assert.assertEquals("shards of " + count, unsharded, sharded);
+        }
+    }
+
+    /**
+     * Runs the Subtyping Checker on all sources, type-checking only the given shard unless it is
+     * null, and returns the errors.
+     */
+    private List<String> compile(String shard) throws IOException {
+        List<String> options =
+                new ArrayList<>(
+                        Arrays.asList(
+                                "-proc:only",
+                                "-classpath",
+                                System.getProperty("java.class.path"),
+                                "-processor",
+                                "org.checkerframework.common.subtyping.SubtypingChecker",
+                                "-Anomsgtext",
+                                "-Aquals=tests.util.Encrypted,"
+                                        + "org.checkerframework.framework.qual.Unqualified"));
+        if (shard != null) {
+            options.add("-AcheckShard=" + shard);
+        }
+        return CompilationDirectory.compile(options, sources);
+    }
+}
@@ -0,0 +1,239 @@
+package tests;
+
+import com.sun.tools.javac.main.Main;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.framework.util.CheckerDaemon;
+import org.checkerframework.framework.util.PluginUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tests.util.CompilationDirectory;
+
+/**
+ * Tests that the {@link CheckerDaemon} gives the same results as a compilation in the current JVM,
+ * rejects requests without its access token, and is shared by concurrent clients.
+ */
+public class CheckerDaemonTest {
+
+    /** How long a daemon of this test waits for the next request before it exits. */
+    private static final int IDLE_TIMEOUT_MILLIS = 3000;
+
+    /** How long to wait for a daemon of this test to exit. */
+    private static final int EXIT_TIMEOUT_MILLIS = 60 * 1000;
+
+    private CompilationDirectory directory;
+
+    /** The JVM arguments of the daemon, which are different for each test. */
+    private List<String> jvmArgs;
+
+    private File portFile;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = new CompilationDirectory("CheckerDaemonTest");
+        jvmArgs =
+                Arrays.asList(
+                        new File(System.getProperty("java.home"), "bin/java").getPath(),
+                        "-D" + CheckerDaemon.IDLE_TIMEOUT_PROPERTY + "=" + IDLE_TIMEOUT_MILLIS,
+                        "-Dtests.CheckerDaemonTest=" + directory.getFile("").getPath());
+        portFile = CheckerDaemon.getPortFile(jvmArgs);
+    }
+
+    /** Waits for the daemon of the test to exit and deletes its files. */
+    @After
+    public void stopDaemon() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + EXIT_TIMEOUT_MILLIS;
+        while (portFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse("The daemon did not exit", portFile.exists());
+        new File(portFile.getPath() + ".lock").delete();
+        CheckerDaemon.getLogFile(portFile).delete();
+        directory.delete();
+    }
+
+    @Test
+    public void requestsMatchInProcessCompilation() throws IOException {
+        List<String> withError = getArgs(writeSource("WithError", "o"));
+        List<String> withoutError = getArgs(writeSource("WithoutError", "null"));
+
+        Result expectedWithError = compileInProcess(withError);
+        Result expectedWithoutError = compileInProcess(withoutError);
+        Assert.assertEquals(1, expectedWithError.exitStatus);
+        Assert.assertEquals(0, expectedWithoutError.exitStatus);
+
+        Assert.assertEquals(expectedWithError, compileInDaemon(withError));
+        Assert.assertEquals(expectedWithoutError, compileInDaemon(withoutError));
+        Assert.assertEquals(1, getDaemonStarts());
+    }
+
+    @Test
+    public void standardStreamsAreSentToClient() throws IOException {
+        List<String> args = new ArrayList<>(getArgs(writeSource("WithoutError", "null")));
+        // The checker prints the statistics to System.out.
+        args.add(0, "-AresourceStats");
+        Result result = compileInDaemon(args);
+        Assert.assertEquals(0, result.exitStatus);
+        Assert.assertTrue(result.output, result.output.contains("Memory pool"));
+    }
+
+    @Test
+    public void requestWithWrongTokenIsRejected() throws IOException {
+        List<String> args = getArgs(writeSource("WithError", "o"));
+        Result expected = compileInDaemon(args);
+        Assert.assertEquals(1, expected.exitStatus);
+
+        String port = PluginUtil.readFile(portFile).get(0).split(" ")[0];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port))) {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            byte[] token = "wrong".getBytes("UTF-8");
+            out.writeInt(token.length);
+            out.write(token);
+            out.writeInt(0);
+            out.flush();
+            // The daemon closes the connection without running the compiler.
+            Assert.assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+        }
+
+        // The daemon still serves requests with the right token.
+        Assert.assertEquals(expected, compileInDaemon(args));
+        Assert.assertEquals(1, getDaemonStarts());
+    }
+
+    @Test
+    public void concurrentClientsShareDaemon() throws Exception {
+        final List<String> args = getArgs(writeSource("WithError", "o"));
+        final Result[] results = new Result[2];
+        Thread[] clients = new Thread[results.length];
+        for (int i = 0; i < clients.length; i++) {
+            final int client = i;
+            clients[i] =
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            results[client] = compileInDaemon(args);
+                        }
+                    };
+            clients[i].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        Result expected = compileInProcess(args);
+        Assert.assertEquals(expected, results[0]);
+        Assert.assertEquals(expected, results[1]);
+        Assert.assertEquals(1, getDaemonStarts());
+    }
+
+    /**
+     * Writes a class that assigns value to an {@code @Encrypted} field and returns its file. The
+     * class has an error unless value is null.
+     */
+    private File writeSource(String name, String value) throws IOException {
+        return directory.write(
+                "src/" + name + ".java",
+                "class "
+                        + name
+                        + " {\n"
+                        + "    @tests.util.Encrypted Object encrypted;\n"
+                        + "    void m(Object o) {\n"
+                        + "        encrypted = "
+                        + value
+                        + ";\n"
+                        + "    }\n"
+                        + "}\n");
+    }
+
+    /** Returns the compiler arguments that run the Subtyping Checker on source. */
+    private static List<String> getArgs(File source) {
+        return Arrays.asList(
+                "-proc:only",
+                "-processorpath",
+                System.getProperty("java.class.path"),
+                "-classpath",
+                System.getProperty("java.class.path"),
+                "-processor",
+                "org.checkerframework.common.subtyping.SubtypingChecker",
+                "-Anomsgtext",
+                "-Aquals=tests.util.Encrypted,org.checkerframework.framework.qual.Unqualified",
+                source.getPath());
+    }
+
+    private static Result compileInProcess(List<String> args) {
+        StringWriter output = new StringWriter();
+        PrintWriter log = new PrintWriter(output, true);
+        int exitStatus = new Main("javac", log).compile(args.toArray(new String[0])).exitCode;
+        log.flush();
+        return new Result(exitStatus, output.toString());
+    }
+
+    private Result compileInDaemon(List<String> args) {
+        // The daemon's class path must contain the compiler, as does the current JVM's.
+        String classpath =
+                System.getProperty("java.class.path")
+                        + File.pathSeparator
+                        + new File(System.getProperty("java.home"), "../lib/tools.jar").getPath();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(output, true);
+        int exitStatus = CheckerDaemon.compile(jvmArgs, classpath, args, err);
+        err.flush();
+        return new Result(exitStatus, output.toString());
+    }
+
+    /** Returns the number of daemons that were started for the test. */
+    private int getDaemonStarts() throws IOException {
+        int starts = 0;
+        for (String line : PluginUtil.readFile(CheckerDaemon.getLogFile(portFile))) {
+            if (line.startsWith("Checker Framework daemon listening on port ")) {
+                starts++;
+            }
+        }
+        return starts;
+    }
+
+    /** The exit status and the output of a compilation. */
+    private static class Result {
+        final int exitStatus;
+        final String output;
+
+        Result(int exitStatus, String output) {
+            this.exitStatus = exitStatus;
+            this.output = output;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Result)) {
+                return false;
+            }
+            Result other = (Result) obj;
+            return exitStatus == other.exitStatus && output.equals(other.output);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * exitStatus + output.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "exit status " + exitStatus + ":\n" + output;
+        }
+    }
+}
@@ -14,6 +14,6 @@ public class FlowTest extends CheckerFrameworkPerDirectoryTest {
 
     @Parameters
     public static String[] getTestDirs() {
-        return new String[] {"flow", "all-systems"};
+        return new String[] {"flow", "inference-equalities", "all-systems"};
     }
 }
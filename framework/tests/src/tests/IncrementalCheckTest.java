@@ -0,0 +1,159 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tests.util.CompilationDirectory;
+
+/**
+ * Tests that the {@code -AincrementalCheck} option skips a compilation unit only if nothing that
+ * its type-checking depends on has changed, including the defaults of its packages.
+ */
+public class IncrementalCheckTest {
+
+    /** Issues an error unless the parameter is {@code @Encrypted} by default. */
+    private static final String USE =
+            "class Use {\n"
+                    + "    @tests.util.Encrypted Object encrypted;\n"
+                    + "    void m(Object o) {\n"
+                    + "        encrypted = o;\n"
+                    + "    }\n"
+                    + "}\n";
+
+    /** The declaration annotation that makes {@code @Encrypted} the default in a package. */
+    private static final String ENCRYPTED_DEFAULT =
+            "@org.checkerframework.framework.qual.DefaultQualifier(tests.util.Encrypted.class)\n";
+
+    /** A class whose method returns an {@code @Encrypted} object. */
+    private static final String PROVIDER =
+            "package p;\n"
+                    + "class Provider {\n"
+                    + "    @tests.util.Encrypted Object get() {\n"
+                    + "        return null;\n"
+                    + "    }\n"
+                    + "}\n";
+
+    /** Issues an error unless {@code Provider.get} returns an {@code @Encrypted} object. */
+    private static final String CLIENT =
+            "package p;\n"
+                    + "class Client {\n"
+                    + "    @tests.util.Encrypted Object encrypted;\n"
+                    + "    void m(Provider provider) {\n"
+                    + "        encrypted = provider.get();\n"
+                    + "    }\n"
+                    + "}\n";
+
+    private CompilationDirectory directory;
+
+    private File recordDir;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = new CompilationDirectory("IncrementalCheckTest");
+        recordDir = directory.getFile("records");
+    }
+
+    @After
+    public void deleteDirectory() {
+        directory.delete();
+    }
+
+    @Test
+    public void unchangedUnitIsNotRechecked() throws IOException {
+        File use = directory.write("src/p/Use.java", "package p;\n" + USE);
+        List<String> diagnostics = compile(use);
+        Assert.assertEquals(1, diagnostics.size());
+        File record = CompilationDirectory.getOnlyFile(recordDir, ".rec");
+        Assert.assertTrue(record.setLastModified(1000L));
+
+        // The diagnostics are replayed and the record is not written again.
+        Assert.assertEquals(diagnostics, compile(use));
+        Assert.assertEquals(1000L, record.lastModified());
+    }
+
+    @Test
+    public void packageDefaultChangeRechecksUnit() throws IOException {
+        File packageInfo =
+                directory.write("src/p/package-info.java", ENCRYPTED_DEFAULT + "package p;\n");
+        File use = directory.write("src/p/Use.java", "package p;\n" + USE);
+        Assert.assertEquals(Collections.<String>emptyList(), compile(packageInfo, use));
+
+        directory.write("src/p/package-info.java", "package p;\n");
+        Assert.assertEquals(1, compile(packageInfo, use).size());
+    }
+
+    @Test
+    public void parentPackageDefaultRechecksUnit() throws IOException {
+        File use = directory.write("src/p/q/Use.java", "package p.q;\n" + USE);
+        Assert.assertEquals(1, compile(use).size());
+
+        // Package p did not exist in the first compilation.
+        File packageInfo =
+                directory.write("src/p/package-info.java", ENCRYPTED_DEFAULT + "package p;\n");
+        Assert.assertEquals(Collections.<String>emptyList(), compile(packageInfo, use));
+    }
+
+    @Test
+    public void signatureChangeRechecksClient() throws IOException {
+        File provider = directory.write("src/p/Provider.java", PROVIDER);
+        File client = directory.write("src/p/Client.java", CLIENT);
+        Assert.assertEquals(Collections.<String>emptyList(), compile(provider, client));
+
+        // The client is checked against the new return type of Provider.get.
+        directory.write(
+                "src/p/Provider.java", PROVIDER.replace("@tests.util.Encrypted Object", "Object"));
+        List<String> diagnostics = compile(provider, client);
+        Assert.assertEquals(1, diagnostics.size());
+        Assert.assertTrue(diagnostics.get(0), diagnostics.get(0).startsWith("Client.java:5:"));
+    }
+
+    @Test
+    public void bodyChangeDoesNotRecheckClient() throws IOException {
+        File provider = directory.write("src/p/Provider.java", PROVIDER);
+        File client = directory.write("src/p/Client.java", CLIENT);
+        Assert.assertEquals(Collections.<String>emptyList(), compile(provider, client));
+        List<File> records = CompilationDirectory.getFiles(recordDir, ".rec");
+        Assert.assertEquals(2, records.size());
+        for (File record : records) {
+            Assert.assertTrue(record.setLastModified(1000L));
+        }
+
+        // Only the record of the provider is written again.
+        directory.write(
+                "src/p/Provider.java",
+                PROVIDER.replace("return null;", "int i = 1;\n        return null;"));
+        Assert.assertEquals(Collections.<String>emptyList(), compile(provider, client));
+        int rewritten = 0;
+        for (File record : CompilationDirectory.getFiles(recordDir, ".rec")) {
+            if (record.lastModified() != 1000L) {
+                rewritten++;
+            }
+        }
+        Assert.assertEquals(1, rewritten);
+    }
+
+    /**
+     * Runs the Subtyping Checker with {@code -AincrementalCheck} on the given files and returns the
+     * errors.
+     */
+    private List<String> compile(File... files) throws IOException {
+        List<String> options =
+                Arrays.asList(
+                        "-proc:only",
+                        "-classpath",
+                        System.getProperty("java.class.path"),
+                        "-processor",
+                        "org.checkerframework.common.subtyping.SubtypingChecker",
+                        "-Anomsgtext",
+                        "-Aquals=tests.util.Encrypted,"
+                                + "org.checkerframework.framework.qual.Unqualified",
+                        "-AincrementalCheck=" + recordDir.getPath());
+        return CompilationDirectory.compile(options, files);
+    }
+}
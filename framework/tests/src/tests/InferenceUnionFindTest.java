@@ -0,0 +1,27 @@
+package tests;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the inference tests for equality constraints between type arguments with the union-find
+ * solver; {@link FlowTest} runs them with the default solver.
+ */
+public class InferenceUnionFindTest extends CheckerFrameworkPerDirectoryTest {
+
+    public InferenceUnionFindTest(List<File> testFiles) {
+        super(
+                testFiles,
+                tests.util.FlowTestChecker.class,
+                "flow",
+                "-Anomsgtext",
+                "-AinferenceUnionFind");
+    }
+
+    @Parameters
+    public static String[] getTestDirs() {
+        return new String[] {"inference-equalities"};
+    }
+}
@@ -0,0 +1,141 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tests.util.CompilationDirectory;
+
+/**
+ * Tests that {@link org.checkerframework.framework.type.PersistentElementCache} round-trips its
+ * entries through its file and selects a different file when the class path changes.
+ */
+public class PersistentElementCacheTest {
+
+    /**
+     * A compilation unit that uses library elements. It has no errors, because the cache is saved
+     * at the end of type processing, which is skipped after an error.
+     */
+    private static final String SOURCE =
+            "class CacheUser {\n"
+                    + "    void m(String s) {\n"
+                    + "        int length = s.length() + Integer.valueOf(1);\n"
+                    + "        StringBuilder builder = new StringBuilder(s).append(length);\n"
+                    + "    }\n"
+                    + "}\n";
+
+    private CompilationDirectory directory;
+
+    private File source;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = new CompilationDirectory("PersistentElementCacheTest");
+        source = directory.write("CacheUser.java", SOURCE);
+    }
+
+    @After
+    public void deleteDirectory() {
+        directory.delete();
+    }
+
+    @Test
+    public void entriesAreReadBack() throws IOException {
+        File cacheDir = directory.getFile("cache");
+        List<String> diagnostics = compile(cacheDir, null);
+        Assert.assertEquals(Collections.<String>emptyList(), diagnostics);
+        File cacheFile = getOnlyCacheFile(cacheDir);
+        long length = cacheFile.length();
+        Assert.assertTrue(cacheFile.setLastModified(1000L));
+
+        // Every element is found in the cache, so nothing is added and the file is not written.
+        Assert.assertEquals(diagnostics, compile(cacheDir, null));
+        Assert.assertEquals(cacheFile, getOnlyCacheFile(cacheDir));
+        Assert.assertEquals(1000L, cacheFile.lastModified());
+        Assert.assertEquals(length, cacheFile.length());
+    }
+
+    @Test
+    public void corruptFileIsReplaced() throws IOException {
+        File cacheDir = directory.getFile("cache");
+        List<String> diagnostics = compile(cacheDir, null);
+        File cacheFile = getOnlyCacheFile(cacheDir);
+        long length = cacheFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(length / 2);
+        }
+
+        Assert.assertEquals(diagnostics, compile(cacheDir, null));
+        Assert.assertEquals(length, getOnlyCacheFile(cacheDir).length());
+    }
+
+    @Test
+    public void classPathChangeSelectsNewFile() throws IOException {
+        File cacheDir = directory.getFile("cache");
+        File libDir = directory.getFile("lib");
+        directory.write("lib/Lib.class", "a");
+        List<String> diagnostics = compile(cacheDir, libDir);
+        File first = getOnlyCacheFile(cacheDir);
+
+        directory.write("lib/Lib.class", "ab");
+        Assert.assertEquals(diagnostics, compile(cacheDir, libDir));
+        List<File> files = getCacheFiles(cacheDir);
+        Assert.assertEquals(2, files.size());
+        Assert.assertTrue(files.contains(first));
+    }
+
+    @Test
+    public void optionChangeSelectsNewFile() throws IOException {
+        File cacheDir = directory.getFile("cache");
+        List<String> diagnostics = compile(cacheDir, null);
+        File first = getOnlyCacheFile(cacheDir);
+
+        // An option that only selects the compilation units to check shares the file.
+        Assert.assertEquals(diagnostics, compile(cacheDir, null, "-AcheckShard=0/1"));
+        Assert.assertEquals(first, getOnlyCacheFile(cacheDir));
+
+        Assert.assertEquals(diagnostics, compile(cacheDir, null, "-Anomsgtext"));
+        List<File> files = getCacheFiles(cacheDir);
+        Assert.assertEquals(2, files.size());
+        Assert.assertTrue(files.contains(first));
+    }
+
+    /**
+     * Runs the Constant Value Checker on {@link #SOURCE} with the given cache directory, an
+     * optional extra class path entry, and extra options, and returns the diagnostics.
+     */
+    private List<String> compile(File cacheDir, File extraClassPath, String... extraOptions)
+            throws IOException {
+        String classPath = System.getProperty("java.class.path");
+        if (extraClassPath != null) {
+            classPath += File.pathSeparator + extraClassPath.getPath();
+        }
+        List<String> options =
+                new ArrayList<>(
+                        Arrays.asList(
+                                "-proc:only",
+                                "-classpath",
+                                classPath,
+                                "-processor",
+                                "org.checkerframework.common.value.ValueChecker",
+                                "-AatfPersistentCache=" + cacheDir.getPath()));
+        options.addAll(Arrays.asList(extraOptions));
+        return CompilationDirectory.compile(options, source);
+    }
+
+    /** Returns the cache files in cacheDir; see {@link CompilationDirectory#getFiles}. */
+    private static List<File> getCacheFiles(File cacheDir) {
+        return CompilationDirectory.getFiles(cacheDir, ".cache");
+    }
+
+    private static File getOnlyCacheFile(File cacheDir) {
+        return CompilationDirectory.getOnlyFile(cacheDir, ".cache");
+    }
+}
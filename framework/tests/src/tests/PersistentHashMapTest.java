@@ -0,0 +1,132 @@
+package tests;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.checkerframework.framework.util.PersistentHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PersistentHashMapTest {
+
+    /** A key with a configurable hash code, to create collisions. */
+    private static class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return "Key" + id;
+        }
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        Random random = new Random(42);
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = new PersistentHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int id = random.nextInt(500);
+            // Few distinct hashes, so that there are collisions and deep tries.
+            Key key = new Key(id, id % 7 == 0 ? 7 : id * 0x9E3779B9);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assert.assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+        Assert.assertEquals(expected, map);
+        Assert.assertEquals(map, expected);
+        Assert.assertEquals(expected.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        PersistentHashMap<String, Integer> map = new PersistentHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, i);
+        }
+        PersistentHashMap<String, Integer> copy = map.copy();
+        copy.put("k1", -1);
+        copy.remove("k2");
+        copy.put("new", 0);
+        map.put("k3", -3);
+
+        Assert.assertEquals(Integer.valueOf(1), map.get("k1"));
+        Assert.assertEquals(Integer.valueOf(2), map.get("k2"));
+        Assert.assertFalse(map.containsKey("new"));
+        Assert.assertEquals(Integer.valueOf(-1), copy.get("k1"));
+        Assert.assertFalse(copy.containsKey("k2"));
+        Assert.assertEquals(Integer.valueOf(3), copy.get("k3"));
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(100, copy.size());
+    }
+
+    @Test
+    public void containsAllEntries() {
+        PersistentHashMap<String, Integer> map = new PersistentHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("k" + i, i);
+        }
+        PersistentHashMap<String, Integer> copy = map.copy();
+        Assert.assertTrue(map.containsAllEntries(copy));
+
+        copy.remove("k10");
+        Assert.assertTrue(map.containsAllEntries(copy));
+        Assert.assertFalse(copy.containsAllEntries(map));
+
+        copy.put("k20", 20);
+        Assert.assertTrue(map.containsAllEntries(copy));
+        copy.put("k20", -20);
+        Assert.assertFalse(map.containsAllEntries(copy));
+
+        // Equal entries in maps that share no structure.
+        PersistentHashMap<String, Integer> rebuilt = new PersistentHashMap<>();
+        for (int i = 999; i >= 0; i--) {
+            rebuilt.put("k" + i, i);
+        }
+        Assert.assertTrue(map.containsAllEntries(rebuilt));
+        Assert.assertTrue(rebuilt.containsAllEntries(map));
+    }
+
+    @Test
+    public void iteratorRemove() {
+        PersistentHashMap<String, Integer> map = new PersistentHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, i);
+        }
+        PersistentHashMap<String, Integer> copy = map.copy();
+        int seen = 0;
+        for (Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> e = it.next();
+            seen++;
+            if (e.getValue() % 2 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(100, seen);
+        Assert.assertEquals(50, map.size());
+        Assert.assertEquals(100, copy.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i % 2 != 0, map.containsKey("k" + i));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package tests.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+
+/**
+ * A temporary directory for tests that run the compiler more than once on source files that they
+ * write into it, for example to test files that the Checker Framework keeps between compilations.
+ * A test creates it before each test and deletes it after each test.
+ */
+public class CompilationDirectory {
+
+    /** The temporary directory. */
+    private final File root;
+
+    /** Creates a new empty temporary directory whose name starts with prefix. */
+    public CompilationDirectory(String prefix) throws IOException {
+        root = File.createTempFile(prefix, "");
+        Assert.assertTrue(root.delete() && root.mkdir());
+    }
+
+    /** Returns the file at path, relative to this directory. */
+    public File getFile(String path) {
+        return new File(root, path);
+    }
+
+    /** Writes contents to the file at path, relative to this directory, and returns the file. */
+    public File write(String path, String contents) throws IOException {
+        File file = getFile(path);
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes());
+        }
+        return file;
+    }
+
+    /** Deletes this directory and everything in it. */
+    public void delete() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Compiles files with the given options and returns the errors, each as "file:line: message",
+     * where file is the name of the source file without its directory.
+     */
+    public static List<String> compile(List<String> options, File... files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager =
+                compiler.getStandardFileManager(null, null, null)) {
+            compiler.getTask(
+                            null,
+                            fileManager,
+                            collector,
+                            options,
+                            null,
+                            fileManager.getJavaFileObjects(files))
+                    .call();
+        }
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : collector.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                String file =
+                        diagnostic.getSource() == null
+                                ? ""
+                                : new File(diagnostic.getSource().getName()).getName();
+                errors.add(
+                        file
+                                + ":"
+                                + diagnostic.getLineNumber()
+                                + ": "
+                                + diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the files in directory and its subdirectories whose names end with suffix, and
+     * checks that no temporary file, whose name ends with ".tmp", was left behind.
+     */
+    public static List<File> getFiles(File directory, String suffix) {
+        List<File> files = new ArrayList<>();
+        File[] children = directory.listFiles();
+        Assert.assertNotNull(directory.getPath(), children);
+        for (File child : children) {
+            Assert.assertFalse(child.getName(), child.getName().endsWith(".tmp"));
+            if (child.isDirectory()) {
+                files.addAll(getFiles(child, suffix));
+            } else if (child.getName().endsWith(suffix)) {
+                files.add(child);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the only file in directory and its subdirectories whose name ends with suffix; see
+     * {@link #getFiles}.
+     */
+    public static File getOnlyFile(File directory, String suffix) {
+        List<File> files = getFiles(directory, suffix);
+        Assert.assertEquals(files.toString(), 1, files.size());
+        return files.get(0);
+    }
+}
@@ -111,6 +111,14 @@ class Binaries {
         @IntVal(0) int g = 2 / 3;
         @IntVal(0) int h = (Integer.MAX_VALUE - 1) / Integer.MAX_VALUE;
         @IntVal(0) long l = (Long.MAX_VALUE - 1) / Long.MAX_VALUE;
+
+        // Division by zero throws an exception, so it has no value.
+        int zero = 0;
+        if (true) {
+            zero = 2;
+        }
+        @IntVal(2) int m = 4 / zero;
+        @IntVal(0) int n = 4 % zero;
     }
 
     public void remainder() {
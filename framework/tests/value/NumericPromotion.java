@@ -0,0 +1,63 @@
+import org.checkerframework.common.value.qual.*;
+
+// Operations whose operands are converted to a common type first, and an operand whose written
+// values do not fit in its type.
+class NumericPromotion {
+
+    void intFloatComparison() {
+        int i = 16777217;
+        float f = 16777216f;
+        // i is converted to float, which rounds it to 16777216.
+        @BoolVal(true) boolean equal = i == f;
+        @BoolVal(false) boolean greater = i > f;
+
+        double d = 16777216.0;
+        @BoolVal(false) boolean equalDouble = i == d;
+    }
+
+    void nanComparison() {
+        double zero = 0.0;
+        double nan = zero / zero;
+        @BoolVal(false) boolean equal = nan == nan;
+        @BoolVal(true) boolean notEqual = nan != nan;
+        @BoolVal(false) boolean less = nan < 1.0;
+        @BoolVal(false) boolean greaterEq = nan >= 1.0;
+
+        float floatZero = 0.0f;
+        float floatNan = floatZero / floatZero;
+        @BoolVal(false) boolean lessEq = floatNan <= 1;
+    }
+
+    void longFloatArithmetic() {
+        long l = 16777217L;
+        float f = 0.0f;
+        // l is converted to float, which rounds it to 16777216.
+        @DoubleVal(16777216.0) float sum = l + f;
+        @BoolVal(true) boolean equal = l == 16777216f;
+
+        double d = 0.0;
+        @DoubleVal(16777217.0) double doubleSum = l + d;
+    }
+
+    void writtenValueOutsideInt(@IntVal(4294967297L) int i) {
+        // The value is truncated to an int: 1.
+        @IntVal(2) int sum = i + 1;
+        @IntVal(2L) long longSum = i + 1L;
+        @BoolVal(true) boolean equal = i == 1L;
+        @DoubleVal(1.0) double doubleValue = i * 1.0;
+    }
+
+    void writtenValueOutsideByte(@IntVal(257) byte b) {
+        // The value is truncated to a byte: 1.
+        @IntVal(2) int sum = b + 1;
+        @BoolVal(true) boolean equal = b == 1;
+    }
+
+    void shortDivisionByZero() {
+        short zero = 0;
+        if (true) {
+            zero = 2;
+        }
+        @IntVal(2) int quotient = 4 / zero;
+    }
+}
@@ -0,0 +1,94 @@
+import org.checkerframework.common.value.qual.*;
+
+class Ranges {
+
+    void manyValues(int x) {
+        int a = 0;
+        if (x == 1) {
+            a = 10;
+        } else if (x == 2) {
+            a = 20;
+        } else if (x == 3) {
+            a = 30;
+        } else if (x == 4) {
+            a = 40;
+        } else if (x == 5) {
+            a = 50;
+        } else if (x == 6) {
+            a = 60;
+        } else if (x == 7) {
+            a = 70;
+        } else if (x == 8) {
+            a = 80;
+        } else if (x == 9) {
+            a = 90;
+        } else if (x == 10) {
+            a = 100;
+        }
+        // More than 10 values become a range rather than @UnknownVal.
+        @IntRange(from = 0, to = 100) int b = a;
+        //:: error: (assignment.type.incompatible)
+        @IntRange(from = 10, to = 100) int c = a;
+
+        @IntRange(from = 5, to = 105) int d = a + 5;
+        @IntRange(from = -200, to = 0) int e = a * -2;
+        @IntRange(from = 0, to = 33) int f = a / 3;
+        @IntRange(from = 0, to = 6) int g = a % 7;
+        @IntRange(from = -100, to = 0) int h = -a;
+        @BoolVal(true) boolean small = a < 1000;
+    }
+
+    void loop() {
+        int i = 0;
+        while (i < 100) {
+            @IntRange(from = 0, to = 99) int j = i;
+            i = i + 1;
+        }
+        @IntRange(from = 100) int k = i;
+        //:: error: (assignment.type.incompatible)
+        @IntRange(from = 0, to = 100) int l = i;
+    }
+
+    void unknownBound(int n) {
+        for (int i = 0; i < n; i++) {
+            // i < n, so i + 1 does not overflow.
+            @IntRange(from = 0, to = 2147483646) int j = i;
+        }
+        int sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum = sum + i;
+        }
+    }
+
+    void refinement(@IntRange(from = 0, to = 1000) int x) {
+        if (x > 500) {
+            @IntRange(from = 501, to = 1000) int y = x;
+        } else {
+            @IntRange(from = 0, to = 500) int z = x;
+        }
+        if (x <= 3) {
+            @IntVal({0, 1, 2, 3}) int w = x;
+        }
+    }
+
+    void overflow(@IntRange(from = 0, to = 2147483647) int x) {
+        // x + 1 might overflow, so it could be any int.
+        //:: error: (assignment.type.incompatible)
+        @IntRange(from = 1) int y = x + 1;
+        @IntRange(from = 1, to = 2147483648L) long z = x + 1L;
+    }
+
+    void casts(@IntRange(from = 0, to = 1000) int x) {
+        @IntRange(from = 0, to = 1000) long a = (long) x;
+        //:: warning: (cast.unsafe)
+        @IntRange(from = -128, to = 127) byte b = (byte) x;
+    }
+
+    void subtyping(@IntRange(from = 0, to = 10) int x, @IntVal({3, 4}) int y) {
+        @IntRange(from = -5, to = 20) int a = x;
+        @IntRange(from = 0, to = 10) int b = y;
+        @UnknownVal int c = x;
+        //:: error: (assignment.type.incompatible)
+        @IntVal({3, 4}) int d = x;
+    }
+}
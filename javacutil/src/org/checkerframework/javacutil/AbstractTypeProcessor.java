@@ -44,7 +44,8 @@ import javax.lang.model.util.ElementFilter;
  *       is guaranteed to be type-checked Java code and all the tree type and symbol information is
  *       resolved.
  *   <li>Finally, the tools calls the {@link #typeProcessingOver() typeProcessingOver} method on the
- *       {@code Processor}.
+ *       {@code Processor}, and then its {@link #typeProcessingEnd() typeProcessingEnd} method,
+ *       which is also called if errors were raised.
  * </ol>
  *
  * <p>The tool is permitted to ask type processors to process a class once it is analyzed before the
@@ -77,7 +78,13 @@ public abstract class AbstractTypeProcessor extends AbstractProcessor {
      * Method {@link #typeProcessingOver()} must be invoked exactly once, after the last invocation
      * of {@link #typeProcess(TypeElement, TreePath)}.
      */
-    private static boolean hasInvokedTypeProcessingOver = false;
+    private boolean hasInvokedTypeProcessingOver = false;
+
+    /**
+     * Method {@link #typeProcessingEnd()} must be invoked at most once, after the last invocation
+     * of {@link #typeProcess(TypeElement, TreePath)}.
+     */
+    private boolean hasInvokedTypeProcessingEnd = false;
 
     /** The TaskListener registered for completion of attribution. */
     private final AttributionTaskListener listener = new AttributionTaskListener();
@@ -144,6 +151,17 @@ public abstract class AbstractTypeProcessor extends AbstractProcessor {
      */
     public void typeProcessingOver() {}
 
+    /**
+     * A method to be called once all the classes are processed, whether or not an error is
+     * reported. If {@link #typeProcessingOver()} is invoked, it is invoked first.
+     *
+     * <p>Subclasses may override this method to write reports or release resources that would
+     * otherwise have to wait for the end of the JVM.
+     *
+     * <p>If the tool stops before it has analyzed all the classes, this method is not invoked.
+     */
+    public void typeProcessingEnd() {}
+
     /** A task listener that invokes the processor whenever a class is fully analyzed. */
     private final class AttributionTaskListener implements TaskListener {
 
@@ -160,10 +178,7 @@ public abstract class AbstractTypeProcessor extends AbstractProcessor {
 
             Log log = Log.instance(((JavacProcessingEnvironment) processingEnv).getContext());
 
-            if (!hasInvokedTypeProcessingOver && elements.isEmpty() && log.nerrors == 0) {
-                typeProcessingOver();
-                hasInvokedTypeProcessingOver = true;
-            }
+            invokeTypeProcessingOver(log);
 
             if (e.getTypeElement() == null) {
                 throw new AssertionError("event task without a type element");
@@ -181,10 +196,25 @@ public abstract class AbstractTypeProcessor extends AbstractProcessor {
 
             typeProcess(elem, p);
 
-            if (!hasInvokedTypeProcessingOver && elements.isEmpty() && log.nerrors == 0) {
+            invokeTypeProcessingOver(log);
+        }
+
+        /**
+         * Invokes {@link #typeProcessingOver()} and {@link #typeProcessingEnd()} if all the classes
+         * have been processed and they have not been invoked yet.
+         */
+        private void invokeTypeProcessingOver(Log log) {
+            if (!elements.isEmpty()) {
+                return;
+            }
+            if (!hasInvokedTypeProcessingOver && log.nerrors == 0) {
                 typeProcessingOver();
                 hasInvokedTypeProcessingOver = true;
             }
+            if (!hasInvokedTypeProcessingEnd) {
+                typeProcessingEnd();
+                hasInvokedTypeProcessingEnd = true;
+            }
         }
 
         @Override
@@ -28,6 +28,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Name;
@@ -47,6 +48,7 @@ public class AnnotationUtils {
     // TODO: hack to clear out static state.
     public static void clear() {
         annotationsFromNames.clear();
+        canonicalAnnotations.clear();
         annotationMirrorNames.clear();
         annotationMirrorSimpleNames.clear();
         annotationClassNames.clear();
@@ -56,9 +58,20 @@ public class AnnotationUtils {
     // Factory Methods to create instances of AnnotationMirror
     // **********************************************************************
 
-    /** Caching for annotation creation. */
-    private static final Map<CharSequence, AnnotationMirror> annotationsFromNames =
-            new HashMap<CharSequence, AnnotationMirror>();
+    /**
+     * The canonical instances of annotations without element values, by fully-qualified name.
+     * {@link #fromName}, {@link #canonicalAnnotation}, and the AnnotationBuilder return these
+     * instances, so that equal annotations are usually identical and can be compared by identity.
+     */
+    private static final Map<String, AnnotationMirror> annotationsFromNames =
+            new HashMap<String, AnnotationMirror>();
+
+    /**
+     * The canonical instances of {@link #annotationsFromNames}, by annotation type element. Unlike
+     * a name, the element can be looked up without computing a string.
+     */
+    private static final Map<Element, AnnotationMirror> canonicalAnnotations =
+            new HashMap<Element, AnnotationMirror>();
 
     private static final int ANNOTATION_CACHE_SIZE = 500;
 
@@ -92,8 +105,11 @@ public class AnnotationUtils {
      * @return an {@link AnnotationMirror} of type {@code} name
      */
     public static AnnotationMirror fromName(Elements elements, CharSequence name) {
-        if (annotationsFromNames.containsKey(name)) {
-            return annotationsFromNames.get(name);
+        // The map is cleared when a compilation starts, so it never holds annotations of an
+        // earlier compilation in the same JVM.
+        AnnotationMirror result = annotationsFromNames.get(name.toString());
+        if (result != null) {
+            return result;
         }
         final DeclaredType annoType = typeFromName(elements, name);
         if (annoType == null) {
@@ -103,30 +119,70 @@ public class AnnotationUtils {
             ErrorReporter.errorAbort(annoType + " is not an annotation");
             return null; // dead code
         }
-        AnnotationMirror result =
-                new AnnotationMirror() {
-                    String toString = "@" + annoType;
+        return canonicalAnnotation(annoType);
+    }
 
-                    @Override
-                    public DeclaredType getAnnotationType() {
-                        return annoType;
-                    }
+    /**
+     * Returns the canonical instance of the given annotation if it has no element values, and the
+     * annotation itself otherwise. Both are the same according to {@link #areSame}.
+     *
+     * @param anno an annotation
+     * @return an annotation that is the same as {@code anno}
+     */
+    public static AnnotationMirror canonicalAnnotation(AnnotationMirror anno) {
+        if (anno instanceof CanonicalAnnotationMirror || !anno.getElementValues().isEmpty()) {
+            return anno;
+        }
+        return canonicalAnnotation(anno.getAnnotationType());
+    }
 
-                    @Override
-                    public Map<? extends ExecutableElement, ? extends AnnotationValue>
-                            getElementValues() {
-                        return Collections.emptyMap();
-                    }
-                    /*@SideEffectFree*/
-                    @Override
-                    public String toString() {
-                        return toString;
-                    }
-                };
-        annotationsFromNames.put(name, result);
+    /**
+     * Returns the canonical instance of the annotation of the given type without element values.
+     *
+     * @param annoType the type of an annotation
+     * @return the canonical annotation of type {@code annoType}
+     */
+    public static AnnotationMirror canonicalAnnotation(DeclaredType annoType) {
+        AnnotationMirror result = canonicalAnnotations.get(annoType.asElement());
+        if (result == null) {
+            /*@Interned*/ String name =
+                    ((TypeElement) annoType.asElement()).getQualifiedName().toString().intern();
+            result = new CanonicalAnnotationMirror(annoType, name);
+            canonicalAnnotations.put(annoType.asElement(), result);
+            annotationsFromNames.put(name, result);
+        }
         return result;
     }
 
+    /** The canonical instance of an annotation without element values. */
+    private static final class CanonicalAnnotationMirror implements AnnotationMirror {
+        private final DeclaredType annoType;
+        private final /*@Interned*/ String name;
+        private final String toString;
+
+        CanonicalAnnotationMirror(DeclaredType annoType, /*@Interned*/ String name) {
+            this.annoType = annoType;
+            this.name = name;
+            this.toString = "@" + annoType;
+        }
+
+        @Override
+        public DeclaredType getAnnotationType() {
+            return annoType;
+        }
+
+        @Override
+        public Map<? extends ExecutableElement, ? extends AnnotationValue> getElementValues() {
+            return Collections.emptyMap();
+        }
+
+        /*@SideEffectFree*/
+        @Override
+        public String toString() {
+            return toString;
+        }
+    }
+
     /**
      * Creates an {@link AnnotationMirror} given by a particular annotation class.
      *
@@ -163,6 +219,9 @@ public class AnnotationUtils {
 
     /** @return the fully-qualified name of an annotation as a String */
     public static final /*@Interned*/ String annotationName(AnnotationMirror annotation) {
+        if (annotation instanceof CanonicalAnnotationMirror) {
+            return ((CanonicalAnnotationMirror) annotation).name;
+        }
         if (annotationMirrorNames.containsKey(annotation)) {
             return annotationMirrorNames.get(annotation);
         }
@@ -199,6 +258,9 @@ public class AnnotationUtils {
      */
     public static boolean areSame(
             /*@Nullable*/ AnnotationMirror a1, /*@Nullable*/ AnnotationMirror a2) {
+        if (a1 == a2) {
+            return true;
+        }
         if (a1 != null && a2 != null) {
             if (annotationName(a1) != annotationName(a2)) {
                 return false;
@@ -221,7 +283,7 @@ public class AnnotationUtils {
      * @return true iff a1 and a2 have the same annotation type
      */
     public static boolean areSameIgnoringValues(AnnotationMirror a1, AnnotationMirror a2) {
-        if (a1 != null && a2 != null) {
+        if (a1 != a2 && a1 != null && a2 != null) {
             return annotationName(a1) == annotationName(a2);
         }
         return a1 == a2;
@@ -341,6 +403,9 @@ public class AnnotationUtils {
             new Comparator<AnnotationMirror>() {
                 @Override
                 public int compare(AnnotationMirror a1, AnnotationMirror a2) {
+                    if (a1 == a2) {
+                        return 0;
+                    }
                     String n1 = a1.toString();
                     String n2 = a2.toString();
 
@@ -8,6 +8,9 @@ import org.checkerframework.stubparser.ast.visitor.VoidVisitor;
 public class IndexUnit extends Node {
     List<CompilationUnit> compilationUnits;
 
+    public IndexUnit() {
+    }
+
     public IndexUnit(List<CompilationUnit> compilationUnits) {
         this.compilationUnits = compilationUnits;
     }